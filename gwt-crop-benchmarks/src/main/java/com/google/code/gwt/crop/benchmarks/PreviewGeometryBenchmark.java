@@ -0,0 +1,90 @@
+package com.google.code.gwt.crop.benchmarks;
+
+import com.google.code.gwt.crop.client.common.Dimension;
+import com.google.code.gwt.crop.client.common.PreviewGeometry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <p>Measures the geometry part of <code>GWTCropperPreview.updatePreview</code> and
+ * <code>GWTConstrainedCropperPreview.updatePreview</code>, that runs together with every
+ * selection change.</p>
+ *
+ * @author ilja.hamalainen@gmail.com (Ilja Hämäläinen)
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PreviewGeometryBenchmark {
+
+    private static final int SELECTIONS = 256;
+
+    private static final int CANVAS_WIDTH = 1920;
+    private static final int CANVAS_HEIGHT = 1080;
+
+    private final PreviewGeometry geometry = new PreviewGeometry();
+    private final int[] x = new int[SELECTIONS];
+    private final int[] y = new int[SELECTIONS];
+    private final int[] width = new int[SELECTIONS];
+    private final int[] height = new int[SELECTIONS];
+
+    @Setup
+    public void setUp() {
+        for (int i = 0; i < SELECTIONS; i++) {
+            width[i] = 30 + (i * 37) % 900;
+            height[i] = 30 + (i * 53) % 700;
+            x[i] = (i * 71) % (CANVAS_WIDTH - width[i]);
+            y[i] = (i * 29) % (CANVAS_HEIGHT - height[i]);
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(SELECTIONS)
+    public double fixedWidth() {
+        double sum = 0;
+        for (int i = 0; i < SELECTIONS; i++) {
+            geometry.fitFixedSide(Dimension.WIDTH, 150, false, CANVAS_WIDTH, CANVAS_HEIGHT,
+                    width[i], height[i], x[i], y[i]);
+            sum += geometry.getImageLeft() + geometry.getContainerHeight();
+        }
+        return sum;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(SELECTIONS)
+    public double fixedHeight() {
+        double sum = 0;
+        for (int i = 0; i < SELECTIONS; i++) {
+            geometry.fitFixedSide(Dimension.HEIGHT, 150, false, CANVAS_WIDTH, CANVAS_HEIGHT,
+                    width[i], height[i], x[i], y[i]);
+            sum += geometry.getImageTop() + geometry.getContainerWidth();
+        }
+        return sum;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(SELECTIONS)
+    public double constrained() {
+        double sum = 0;
+        for (int i = 0; i < SELECTIONS; i++) {
+            geometry.fitConstrained(200, 120, CANVAS_WIDTH, CANVAS_HEIGHT,
+                    width[i], height[i], x[i], y[i]);
+            sum += geometry.getImageLeft() + geometry.getContainerWidth();
+        }
+        return sum;
+    }
+}
@@ -0,0 +1,111 @@
+package com.google.code.gwt.crop.benchmarks;
+
+import com.google.code.gwt.crop.client.Constants;
+import com.google.code.gwt.crop.client.common.SelectionModel;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <p>Measures one dragging step of the {@link SelectionModel}, i.e. the geometry part
+ * of <code>GWTCropper.provideDragging</code>, that runs for every mouse/touch move.</p>
+ *
+ * <p>Every invocation replays a recorded-like cursor path around the dragged corner,
+ * so the resizing, aspect ratio compensation and clamping branches are all taken.</p>
+ *
+ * @author ilja.hamalainen@gmail.com (Ilja Hämäläinen)
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SelectionModelBenchmark {
+
+    private static final int PATH_LENGTH = 256;
+
+    private static final int CANVAS_WIDTH = 1920;
+    private static final int CANVAS_HEIGHT = 1080;
+
+    private static final int X = 300;
+    private static final int Y = 200;
+    private static final int WIDTH = 400;
+    private static final int HEIGHT = 300;
+
+    @Param({"TOP_LEFT", "TOP_RIGHT", "BOTTOM_LEFT", "BOTTOM_RIGHT"})
+    public String corner;
+
+    @Param({"0", "1.5"})
+    public double aspectRatio;
+
+    private final SelectionModel selection = new SelectionModel();
+    private final int[] pathX = new int[PATH_LENGTH];
+    private final int[] pathY = new int[PATH_LENGTH];
+    private byte action;
+
+    @Setup
+    public void setUp() {
+
+        selection.setCanvasSize(CANVAS_WIDTH, CANVAS_HEIGHT);
+        selection.setMinimalSize(10, 10);
+        selection.setAspectRatio(aspectRatio);
+
+        int cornerX;
+        int cornerY;
+
+        if ("TOP_LEFT".equals(corner)) {
+            action = Constants.DRAG_TOP_LEFT_CORNER;
+            cornerX = X;
+            cornerY = Y;
+        } else if ("TOP_RIGHT".equals(corner)) {
+            action = Constants.DRAG_TOP_RIGHT_CORNER;
+            cornerX = X + WIDTH;
+            cornerY = Y;
+        } else if ("BOTTOM_LEFT".equals(corner)) {
+            action = Constants.DRAG_BOTTOM_LEFT_CORNER;
+            cornerX = X;
+            cornerY = Y + HEIGHT;
+        } else {
+            action = Constants.DRAG_BOTTOM_RIGHT_CORNER;
+            cornerX = X + WIDTH;
+            cornerY = Y + HEIGHT;
+        }
+
+        // deterministic zigzag around the corner, sometimes far enough to hit the canvas borders
+        for (int i = 0; i < PATH_LENGTH; i++) {
+            pathX[i] = clamp(cornerX + ((i * 37) % 641) - 320, CANVAS_WIDTH);
+            pathY[i] = clamp(cornerY + ((i * 53) % 481) - 240, CANVAS_HEIGHT);
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(PATH_LENGTH)
+    public int drag() {
+
+        final SelectionModel s = this.selection;
+        s.setSelection(X, Y, WIDTH, HEIGHT);
+        s.reset();
+
+        for (int i = 0; i < PATH_LENGTH; i++) {
+            s.drag(action, pathX[i], pathY[i]);
+        }
+
+        return s.getX() + s.getY() + s.getWidth() + s.getHeight();
+    }
+
+    private static int clamp(int value, int max) {
+        return value < 0 ? 0 : (value > max ? max : value);
+    }
+}
@@ -0,0 +1,374 @@
+package com.google.code.gwt.crop.server;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.ImageOutputStream;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * <p>Crops images on the server side with the coordinates, that were selected in GWTCropper.</p>
+ *
+ * <p>Only the requested region is decoded ({@link ImageReadParam#setSourceRegion(Rectangle)}),
+ * optionally with subsampling, so the whole original image is never loaded into a
+ * <code>BufferedImage</code>. The engine is safe to use from many threads.</p>
+ *
+ * <p>Several regions of one image (for example avatar, banner and thumbnail) could be cropped with
+ * {@link #cropAll(InputStream, List, String)}: the image is opened once and all regions are decoded
+ * with the same reader, while encoding of the results runs in parallel on the executor given to the
+ * constructor.</p>
+ *
+ * <p>Images, that are too large for the heap even as a selected region, could be cropped with
+ * {@link #cropStreaming(InputStream, CropRequest, String, OutputStream, int)}: the region is
+ * decoded in horizontal strips while the writer encodes it.</p>
+ *
+ * <p>Usage example (in a servlet):
+ * <pre>
+ * CropRequest request = new CropRequest(x, y, width, height);
+ * new CropEngine().crop(uploadedStream, request, "jpeg", response.getOutputStream());
+ * </pre>
+ * </p>
+ *
+ * @author ilja.hamalainen@gmail.com (Ilja Hämäläinen)
+ * @since 0.5.6
+ */
+public class CropEngine {
+
+    /**
+     * Default strip height (in rows of the result) for the streaming cropping
+     */
+    public static final int DEFAULT_STRIP_HEIGHT = 256;
+
+    private final ExecutorService executor;
+
+    /**
+     * Creates the engine, that does all the work in the calling thread.
+     */
+    public CropEngine() {
+        this(null);
+    }
+
+    /**
+     * Creates the engine, that encodes batch results on the given executor.
+     * The executor is not shut down by the engine.
+     *
+     * @param executor executor for encoding; <code>null</code> means the calling thread
+     */
+    public CropEngine(ExecutorService executor) {
+        this.executor = executor;
+    }
+
+    /**
+     * <p>Crops several regions of one image and encodes each of them in the given format.</p>
+     *
+     * <p>Regions are decoded one by one with the single image reader (readers are not thread-safe),
+     * and every decoded region is passed to the executor for encoding right away, so decoding of the
+     * next region overlaps with encoding of the previous ones.</p>
+     *
+     * @param input source image
+     * @param requests areas to crop
+     * @param formatName output format name, for example "jpeg" or "png"
+     * @return encoded results in the same order as the requests
+     * @throws IOException if the image can't be read or any result can't be encoded
+     */
+    public List<byte[]> cropAll(InputStream input, List<CropRequest> requests, final String formatName) throws IOException {
+
+        final List<Future<byte[]>> futures = new ArrayList<Future<byte[]>>(requests.size());
+        final List<byte[]> results = new ArrayList<byte[]>(requests.size());
+
+        final ImageInputStream iis = ImageIO.createImageInputStream(input);
+        try {
+            final ImageReader reader = createReader(iis, false);
+            try {
+                for (CropRequest request : requests) {
+                    final BufferedImage image = this.crop(reader, request);
+
+                    if (null == this.executor) {
+                        results.add(encode(image, formatName));
+                    } else {
+                        futures.add(this.executor.submit(new Callable<byte[]>() {
+                            public byte[] call() throws IOException {
+                                return encode(image, formatName);
+                            }
+                        }));
+                    }
+                }
+            } finally {
+                reader.dispose();
+            }
+        } catch (IOException e) {
+            cancel(futures);
+            throw e;
+        } catch (RuntimeException e) {
+            cancel(futures);
+            throw e;
+        } finally {
+            if (null != iis) iis.close();
+        }
+
+        for (Future<byte[]> future : futures) {
+            results.add(getResult(future, futures));
+        }
+        return results;
+    }
+
+    /**
+     * Crops the image and writes the result in the given format.
+     *
+     * @param input source image
+     * @param request area to crop
+     * @param formatName output format name, for example "jpeg" or "png"
+     * @param output stream for the result
+     * @throws IOException if the image can't be read or the format is not supported
+     */
+    public void crop(InputStream input, CropRequest request, String formatName, OutputStream output) throws IOException {
+
+        final BufferedImage result;
+        final ImageInputStream iis = ImageIO.createImageInputStream(input);
+        try {
+            result = this.crop(iis, request);
+        } finally {
+            if (null != iis) iis.close();
+        }
+
+        if (!ImageIO.write(flattenFor(result, formatName), formatName, output)) {
+            throw new IOException("There is no image writer for the format " + formatName);
+        }
+    }
+
+    /**
+     * Crops the image in strips of {@link #DEFAULT_STRIP_HEIGHT} rows.
+     *
+     * @see #cropStreaming(InputStream, CropRequest, String, OutputStream, int)
+     */
+    public void cropStreaming(InputStream input, CropRequest request, String formatName, OutputStream output)
+            throws IOException {
+        this.cropStreaming(input, request, formatName, output, DEFAULT_STRIP_HEIGHT);
+    }
+
+    /**
+     * <p>Crops the image without decoding the whole region at once. The region is read in horizontal
+     * strips, that are decoded only when the image writer asks for their rows, and only one strip is
+     * kept in memory.</p>
+     *
+     * <p>Writers, that encode row by row (PNG, GIF, BMP), need only the memory of one strip, so
+     * the peak memory depends on the strip height and the region width. The standard JPEG writer
+     * collects the whole region before encoding, so for JPEG the memory depends on the size of the
+     * selection (still not on the size of the original image).</p>
+     *
+     * <p>Every strip is read with its own source region, so readers of formats without random access
+     * to the rows (like JPEG) decode the preceding rows again for every strip. Taller strips mean less
+     * decoding and more memory.</p>
+     *
+     * @param input source image
+     * @param request area to crop
+     * @param formatName output format name, for example "png"
+     * @param output stream for the result
+     * @param stripHeight strip height in rows of the result
+     * @throws IOException if the image can't be read or the format is not supported
+     */
+    public void cropStreaming(InputStream input, CropRequest request, String formatName, OutputStream output,
+                              int stripHeight) throws IOException {
+
+        final Iterator<ImageWriter> writers = ImageIO.getImageWritersByFormatName(formatName);
+        if (!writers.hasNext()) {
+            throw new IOException("There is no image writer for the format " + formatName);
+        }
+
+        final ImageWriter writer = writers.next();
+        final ImageInputStream iis = ImageIO.createImageInputStream(input);
+        try {
+            // strips are read one after another, so the stream should allow to seek back
+            final ImageReader reader = createReader(iis, false);
+            try {
+                final Rectangle region = getSourceRegion(request, reader.getWidth(0), reader.getHeight(0));
+                final StripedImage image = new StripedImage(reader, region, request.getSubsampling(), stripHeight,
+                        hasNoAlpha(formatName));
+
+                final ImageOutputStream ios = ImageIO.createImageOutputStream(output);
+                try {
+                    writer.setOutput(ios);
+                    writer.write(image);
+                } catch (StripedImage.StripReadException e) {
+                    throw e.getCause();
+                } finally {
+                    ios.close();
+                }
+            } finally {
+                reader.dispose();
+            }
+        } finally {
+            writer.dispose();
+            if (null != iis) iis.close();
+        }
+    }
+
+    /**
+     * Crops the image.
+     *
+     * @param input source image
+     * @param request area to crop
+     * @return decoded area of the image
+     * @throws IOException if the image can't be read
+     */
+    public BufferedImage crop(ImageInputStream input, CropRequest request) throws IOException {
+
+        final ImageReader reader = createReader(input, true);
+        try {
+            return this.crop(reader, request);
+        } finally {
+            reader.dispose();
+        }
+    }
+
+    /**
+     * Crops the image with the reader, whose input is already set. The reader is not disposed.
+     *
+     * @param reader reader of the source image
+     * @param request area to crop
+     * @return decoded area of the image
+     * @throws IOException if the image can't be read
+     */
+    public BufferedImage crop(ImageReader reader, CropRequest request) throws IOException {
+        final Rectangle region = getSourceRegion(request, reader.getWidth(0), reader.getHeight(0));
+        return reader.read(0, createReadParam(reader, region, request.getSubsampling()));
+    }
+
+    /**
+     * Creates the reader for the image and sets its input.
+     *
+     * @param input source image
+     * @param isSeekForwardOnly <code>true</code> if the image will be read only once
+     * @return reader, that should be disposed by the caller
+     * @throws IOException if there is no reader for this image
+     */
+    static ImageReader createReader(ImageInputStream input, boolean isSeekForwardOnly) throws IOException {
+
+        if (null == input) {
+            throw new IOException("Can't open the image stream");
+        }
+
+        final Iterator<ImageReader> readers = ImageIO.getImageReaders(input);
+        if (!readers.hasNext()) {
+            throw new IOException("There is no image reader for this image format");
+        }
+
+        final ImageReader reader = readers.next();
+        reader.setInput(input, isSeekForwardOnly, true);
+        return reader;
+    }
+
+    /**
+     * Creates read parameters for the region
+     */
+    static ImageReadParam createReadParam(ImageReader reader, Rectangle region, int subsampling) {
+        final ImageReadParam param = reader.getDefaultReadParam();
+        param.setSourceRegion(region);
+        if (subsampling > 1) {
+            param.setSourceSubsampling(subsampling, subsampling, 0, 0);
+        }
+        return param;
+    }
+
+    /**
+     * Returns the requested area, limited by the image bounds. Coordinates, that come from the browser,
+     * could be slightly out of the image because of rounding.
+     *
+     * @param request area to crop
+     * @param imageWidth original image width
+     * @param imageHeight original image height
+     * @return region within the image
+     * @throws IllegalArgumentException if the request is completely out of the image
+     */
+    static Rectangle getSourceRegion(CropRequest request, int imageWidth, int imageHeight) {
+
+        final Rectangle region = new Rectangle(request.getX(), request.getY(), request.getWidth(), request.getHeight())
+                .intersection(new Rectangle(0, 0, imageWidth, imageHeight));
+
+        if (region.isEmpty()) {
+            throw new IllegalArgumentException(request + " is out of the image " + imageWidth + "x" + imageHeight);
+        }
+        return region;
+    }
+
+    /**
+     * Draws the image with the alpha channel on the white background, if it is written as JPEG:
+     * JPEG has no transparency, and the writers either fail or write the alpha as a color channel.
+     *
+     * @param image decoded image
+     * @param formatName output format name
+     * @return the image itself, if it could be written as is
+     */
+    static BufferedImage flattenFor(BufferedImage image, String formatName) {
+        return (hasNoAlpha(formatName) && image.getColorModel().hasAlpha()) ? flatten(image) : image;
+    }
+
+    /**
+     * @param formatName output format name
+     * @return <code>true</code> if the format can't keep the transparency
+     */
+    static boolean hasNoAlpha(String formatName) {
+        return "jpg".equalsIgnoreCase(formatName) || "jpeg".equalsIgnoreCase(formatName);
+    }
+
+    /**
+     * Draws the image on the white background
+     */
+    static BufferedImage flatten(BufferedImage image) {
+        final BufferedImage result = new BufferedImage(image.getWidth(), image.getHeight(), BufferedImage.TYPE_INT_RGB);
+        final Graphics2D g = result.createGraphics();
+        g.drawImage(image, 0, 0, Color.WHITE, null);
+        g.dispose();
+        return result;
+    }
+
+    /**
+     * Encodes the image in the given format
+     */
+    static byte[] encode(BufferedImage image, String formatName) throws IOException {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        if (!ImageIO.write(flattenFor(image, formatName), formatName, out)) {
+            throw new IOException("There is no image writer for the format " + formatName);
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * Waits for the result of the encoding. If it is failed, all the other tasks are cancelled.
+     */
+    private static byte[] getResult(Future<byte[]> future, List<Future<byte[]>> all) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            cancel(all);
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for the cropped image", e);
+        } catch (ExecutionException e) {
+            cancel(all);
+            if (e.getCause() instanceof IOException) throw (IOException) e.getCause();
+            throw new IOException("Can't encode the cropped image", e.getCause());
+        }
+    }
+
+    private static void cancel(List<Future<byte[]>> futures) {
+        for (Future<byte[]> future : futures) {
+            future.cancel(true);
+        }
+    }
+}
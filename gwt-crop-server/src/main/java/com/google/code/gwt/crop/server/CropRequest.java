@@ -0,0 +1,116 @@
+package com.google.code.gwt.crop.server;
+
+/**
+ * <p>Area of the original image to crop. Coordinates are the same as returned by
+ * <code>GWTCropper.getSelectionXCoordinate()</code>, <code>getSelectionYCoordinate()</code>,
+ * <code>getSelectionWidth()</code> and <code>getSelectionHeight()</code>, i.e. in pixels
+ * of the original image.</p>
+ *
+ * <p>Optionally, the maximal size of the result could be specified. Then the engine reads
+ * only every n-th pixel of the area (subsampling), so the big selection is never decoded
+ * in full resolution.</p>
+ *
+ * <p>Usage example:
+ * <pre>
+ * CropRequest request = new CropRequest(x, y, width, height);
+ * CropRequest thumbnail = new CropRequest(x, y, width, height, 200, 200);
+ * </pre>
+ * </p>
+ *
+ * @author ilja.hamalainen@gmail.com (Ilja Hämäläinen)
+ * @since 0.5.6
+ */
+public class CropRequest {
+
+    private final int x;
+    private final int y;
+    private final int width;
+    private final int height;
+
+    private final int maxWidth;
+    private final int maxHeight;
+
+    /**
+     * Crop request without limits of the result size.
+     *
+     * @param x selection X coordinate
+     * @param y selection Y coordinate
+     * @param width selection width
+     * @param height selection height
+     */
+    public CropRequest(int x, int y, int width, int height) {
+        this(x, y, width, height, 0, 0);
+    }
+
+    /**
+     * Crop request, whose result should fit the given size.
+     *
+     * @param x selection X coordinate
+     * @param y selection Y coordinate
+     * @param width selection width
+     * @param height selection height
+     * @param maxWidth maximal width of the result, 0 means no limit
+     * @param maxHeight maximal height of the result, 0 means no limit
+     */
+    public CropRequest(int x, int y, int width, int height, int maxWidth, int maxHeight) {
+        if (width <= 0 || height <= 0) {
+            throw new IllegalArgumentException("Selection should have positive size, but was " + width + "x" + height);
+        }
+        if (maxWidth < 0 || maxHeight < 0) {
+            throw new IllegalArgumentException("Maximal size can't be negative");
+        }
+
+        this.x = x;
+        this.y = y;
+        this.width = width;
+        this.height = height;
+        this.maxWidth = maxWidth;
+        this.maxHeight = maxHeight;
+    }
+
+    public int getX() {
+        return x;
+    }
+
+    public int getY() {
+        return y;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public int getMaxWidth() {
+        return maxWidth;
+    }
+
+    public int getMaxHeight() {
+        return maxHeight;
+    }
+
+    /**
+     * Returns the subsampling step, that is needed to fit the selection into maximal size.
+     *
+     * @return 1 if the whole area should be read, n if every n-th pixel is enough
+     */
+    public int getSubsampling() {
+        int step = 1;
+        if (maxWidth > 0) step = Math.max(step, ceilDiv(width, maxWidth));
+        if (maxHeight > 0) step = Math.max(step, ceilDiv(height, maxHeight));
+        return step;
+    }
+
+    @Override
+    public String toString() {
+        return "CropRequest{" + x + ", " + y + ", " + width + "x" + height
+                + (maxWidth > 0 || maxHeight > 0 ? ", max " + maxWidth + "x" + maxHeight : "") + "}";
+    }
+
+    private static int ceilDiv(int a, int b) {
+        return (a + b - 1) / b;
+    }
+}
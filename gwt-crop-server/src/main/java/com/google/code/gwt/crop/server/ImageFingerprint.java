@@ -0,0 +1,246 @@
+package com.google.code.gwt.crop.server;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * <p>Fingerprint of the image pixels, that doesn't change when only the metadata of the file is edited.</p>
+ *
+ * <p>The compressed data is hashed without decoding: JPEG files without the <code>APP1</code> (EXIF, XMP),
+ * <code>APP13</code> (IPTC) and <code>COM</code> segments, PNG files with only the critical chunks and the chunks,
+ * that change the colors (<code>tRNS</code>, <code>gAMA</code>, <code>cHRM</code>, <code>sRGB</code>,
+ * <code>iCCP</code>). The segments, that change the decoded colors, are kept: <code>APP0</code> (JFIF),
+ * <code>APP2</code> (ICC profile) and <code>APP14</code> (Adobe color transform). Files of other formats are
+ * hashed as a whole.</p>
+ *
+ * @author ilja.hamalainen@gmail.com (Ilja Hämäläinen)
+ */
+final class ImageFingerprint {
+
+    private static final int BUFFER_SIZE = 8192;
+
+    private static final byte[] PNG_SIGNATURE = {(byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1A, '\n'};
+
+    // JPEG markers
+    private static final int SOS = 0xDA;
+    private static final int EOI = 0xD9;
+    private static final int APP1 = 0xE1;
+    private static final int APP13 = 0xED;
+    private static final int COM = 0xFE;
+
+    // PNG chunks, that are not critical, but change the pixels or their colors
+    private static final String[] PNG_COLOR_CHUNKS = {"tRNS", "gAMA", "cHRM", "sRGB", "iCCP"};
+
+    private ImageFingerprint() {
+    }
+
+    /**
+     * @param file image file
+     * @return hex encoded SHA-256 of the pixel data
+     * @throws IOException if the file can't be read or it is truncated
+     */
+    static String of(File file) throws IOException {
+
+        final MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not supported", e);
+        }
+
+        final DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), BUFFER_SIZE));
+        try {
+            final byte[] header = new byte[PNG_SIGNATURE.length];
+            in.mark(header.length);
+            final int read = readFully(in, header);
+
+            if (read == header.length && startsWith(header, PNG_SIGNATURE)) {
+                digestPng(in, digest);
+            } else if (read >= 2 && (header[0] & 0xFF) == 0xFF && (header[1] & 0xFF) == 0xD8) {
+                in.reset();
+                in.skipBytes(2);
+                digestJpeg(in, digest);
+            } else {
+                in.reset();
+                copy(in, digest, Long.MAX_VALUE);
+            }
+        } finally {
+            in.close();
+        }
+        return toHex(digest.digest());
+    }
+
+    private static void digestPng(DataInputStream in, MessageDigest digest) throws IOException {
+
+        final byte[] type = new byte[4];
+        while (true) {
+            final long length = in.readInt() & 0xFFFFFFFFL;
+            in.readFully(type);
+
+            // critical chunks have an uppercase first letter
+            final boolean isCritical = (type[0] & 0x20) == 0;
+            if (isCritical || isColorChunk(type)) {
+                digest.update(type);
+                copy(in, digest, length);
+            } else {
+                skipFully(in, length);
+            }
+            skipFully(in, 4); // CRC
+
+            if (type[0] == 'I' && type[1] == 'E' && type[2] == 'N' && type[3] == 'D') return;
+        }
+    }
+
+    private static void digestJpeg(DataInputStream in, MessageDigest digest) throws IOException {
+
+        int marker = nextMarker(in);
+        while (marker != EOI) {
+
+            // restart and TEM markers have no length
+            if ((marker >= 0xD0 && marker <= 0xD7) || marker == 0x01) {
+                digest.update((byte) marker);
+                marker = nextMarker(in);
+                continue;
+            }
+
+            final int length = in.readUnsignedShort();
+            if (marker == APP1 || marker == APP13 || marker == COM) {
+                skipFully(in, length - 2);
+                marker = nextMarker(in);
+                continue;
+            }
+
+            digest.update((byte) marker);
+            digest.update((byte) (length >> 8));
+            digest.update((byte) length);
+            copy(in, digest, length - 2);
+
+            marker = (marker == SOS) ? digestScan(in, digest) : nextMarker(in);
+        }
+    }
+
+    /**
+     * Hashes the entropy coded data, that follows the scan header.
+     *
+     * @return marker, that ends the scan
+     */
+    private static int digestScan(InputStream in, MessageDigest digest) throws IOException {
+
+        final byte[] buffer = new byte[BUFFER_SIZE];
+        int count = 0;
+        while (true) {
+            int b = readByte(in);
+            if (b == 0xFF) {
+                int next;
+                do {
+                    next = readByte(in);
+                } while (next == 0xFF);
+
+                // stuffed zero and restart markers belong to the scan
+                if (next != 0 && (next < 0xD0 || next > 0xD7)) {
+                    digest.update(buffer, 0, count);
+                    return next;
+                }
+                if (count + 2 > buffer.length) {
+                    digest.update(buffer, 0, count);
+                    count = 0;
+                }
+                buffer[count++] = (byte) b;
+                buffer[count++] = (byte) next;
+            } else {
+                if (count == buffer.length) {
+                    digest.update(buffer, 0, count);
+                    count = 0;
+                }
+                buffer[count++] = (byte) b;
+            }
+        }
+    }
+
+    private static boolean isColorChunk(byte[] type) {
+        for (String chunk : PNG_COLOR_CHUNKS) {
+            if (type[0] == chunk.charAt(0) && type[1] == chunk.charAt(1)
+                    && type[2] == chunk.charAt(2) && type[3] == chunk.charAt(3)) return true;
+        }
+        return false;
+    }
+
+    private static int nextMarker(InputStream in) throws IOException {
+        if (readByte(in) != 0xFF) {
+            throw new IOException("Broken JPEG: marker expected");
+        }
+        int marker;
+        do {
+            marker = readByte(in);
+        } while (marker == 0xFF);
+        return marker;
+    }
+
+    private static int readByte(InputStream in) throws IOException {
+        final int b = in.read();
+        if (b < 0) throw new EOFException("Image is truncated");
+        return b;
+    }
+
+    private static int readFully(InputStream in, byte[] buffer) throws IOException {
+        int total = 0;
+        while (total < buffer.length) {
+            final int n = in.read(buffer, total, buffer.length - total);
+            if (n < 0) break;
+            total += n;
+        }
+        return total;
+    }
+
+    /**
+     * Passes the next <code>length</code> bytes (or all the rest with <code>Long.MAX_VALUE</code>) to the digest
+     */
+    private static void copy(InputStream in, MessageDigest digest, long length) throws IOException {
+        final byte[] buffer = new byte[BUFFER_SIZE];
+        long left = length;
+        while (left > 0) {
+            final int n = in.read(buffer, 0, (int) Math.min(buffer.length, left));
+            if (n < 0) {
+                if (length == Long.MAX_VALUE) return;
+                throw new EOFException("Image is truncated");
+            }
+            digest.update(buffer, 0, n);
+            left -= n;
+        }
+    }
+
+    private static void skipFully(InputStream in, long length) throws IOException {
+        long left = length;
+        while (left > 0) {
+            final long n = in.skip(left);
+            if (n <= 0) {
+                readByte(in);
+                left--;
+            } else {
+                left -= n;
+            }
+        }
+    }
+
+    private static boolean startsWith(byte[] bytes, byte[] prefix) {
+        for (int i = 0; i < prefix.length; i++) {
+            if (bytes[i] != prefix[i]) return false;
+        }
+        return true;
+    }
+
+    private static String toHex(byte[] bytes) {
+        final StringBuilder sb = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            sb.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,173 @@
+package com.google.code.gwt.crop.server;
+
+import com.google.code.gwt.crop.client.common.SmartCrop;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * <p>Suggests the crop area of an image: the most detailed window of the given aspect ratio, found by the same
+ * {@link SmartCrop} engine, that computes the automatic initial selection of GWTCropper in the browser.</p>
+ *
+ * <p>The image is decoded with subsampling to about {@link #DEFAULT_SAMPLE_SIZE} px, so even the huge images
+ * are never loaded in full resolution. The suggested areas are in pixels of the original image, so they could be
+ * passed to {@link CropEngine} or to <code>GWTCropper.setInitialSelection(...)</code> as they are.</p>
+ *
+ * <p>Batches of images are analyzed in parallel on the executor given to the constructor, one image per task.</p>
+ *
+ * <p>Usage example:
+ * <pre>
+ * List&lt;CropRequest&gt; areas = new SmartCropper(executor).suggestAll(files, 16.0 / 9);
+ * </pre>
+ * </p>
+ *
+ * @author ilja.hamalainen@gmail.com (Ilja Hämäläinen)
+ * @since 0.5.6
+ */
+public class SmartCropper {
+
+    /**
+     * Default longer side of the analyzed image in px
+     */
+    public static final int DEFAULT_SAMPLE_SIZE = 256;
+
+    private final ExecutorService executor;
+    private final int sampleSize;
+
+    /**
+     * Creates the cropper, that does all the work in the calling thread.
+     */
+    public SmartCropper() {
+        this(null);
+    }
+
+    /**
+     * Creates the cropper, that analyzes the batches on the given executor.
+     * The executor is not shut down by the cropper.
+     *
+     * @param executor executor for the batches; <code>null</code> means the calling thread
+     */
+    public SmartCropper(ExecutorService executor) {
+        this(executor, DEFAULT_SAMPLE_SIZE);
+    }
+
+    /**
+     * @param executor executor for the batches; <code>null</code> means the calling thread
+     * @param sampleSize longer side of the analyzed image in px; bigger samples are slower and more precise
+     */
+    public SmartCropper(ExecutorService executor, int sampleSize) {
+        if (sampleSize <= 0) {
+            throw new IllegalArgumentException("Sample size should be positive, but was " + sampleSize);
+        }
+        this.executor = executor;
+        this.sampleSize = sampleSize;
+    }
+
+    /**
+     * Suggests the crop areas for several images.
+     *
+     * @param images source images
+     * @param aspectRatio width/height of the areas; 0 means the proportion of every image
+     * @return areas in the same order as the images
+     * @throws IOException if any image can't be read
+     */
+    public List<CropRequest> suggestAll(List<File> images, final double aspectRatio) throws IOException {
+
+        final List<CropRequest> results = new ArrayList<CropRequest>(images.size());
+        if (null == this.executor) {
+            for (File image : images) {
+                results.add(this.suggest(image, aspectRatio));
+            }
+            return results;
+        }
+
+        final List<Callable<CropRequest>> tasks = new ArrayList<Callable<CropRequest>>(images.size());
+        for (final File image : images) {
+            tasks.add(new Callable<CropRequest>() {
+                public CropRequest call() throws IOException {
+                    return suggest(image, aspectRatio);
+                }
+            });
+        }
+
+        try {
+            for (Future<CropRequest> future : this.executor.invokeAll(tasks)) {
+                results.add(future.get());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while analyzing the images", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) throw (IOException) e.getCause();
+            throw new IOException("Can't analyze the image", e.getCause());
+        }
+        return results;
+    }
+
+    /**
+     * Suggests the crop area for the image.
+     *
+     * @param image source image
+     * @param aspectRatio width/height of the area; 0 means the proportion of the image
+     * @return area in pixels of the original image
+     * @throws IOException if the image can't be read
+     */
+    public CropRequest suggest(File image, double aspectRatio) throws IOException {
+
+        final ImageInputStream iis = ImageIO.createImageInputStream(image);
+        try {
+            final ImageReader reader = CropEngine.createReader(iis, true);
+            try {
+                return this.suggest(reader, aspectRatio);
+            } finally {
+                reader.dispose();
+            }
+        } finally {
+            if (null != iis) iis.close();
+        }
+    }
+
+    /**
+     * Suggests the crop area with the reader, whose input is already set. The reader is not disposed.
+     *
+     * @param reader reader of the source image
+     * @param aspectRatio width/height of the area; 0 means the proportion of the image
+     * @return area in pixels of the original image
+     * @throws IOException if the image can't be read
+     */
+    public CropRequest suggest(ImageReader reader, double aspectRatio) throws IOException {
+
+        final int width = reader.getWidth(0);
+        final int height = reader.getHeight(0);
+        final int subsampling = Math.max(1, (Math.max(width, height) + this.sampleSize - 1) / this.sampleSize);
+
+        final BufferedImage sample = reader.read(0,
+                CropEngine.createReadParam(reader, new Rectangle(0, 0, width, height), subsampling));
+        final int sampleWidth = sample.getWidth();
+        final int sampleHeight = sample.getHeight();
+
+        final SmartCrop smartCrop = new SmartCrop();
+        smartCrop.setPixels(sample.getRGB(0, 0, sampleWidth, sampleHeight, null, 0, sampleWidth), sampleWidth, sampleHeight);
+        smartCrop.find(aspectRatio > 0 ? aspectRatio : (double) width / height);
+
+        // window in the sample is scaled back, the last sample pixels cover the rest of the image
+        final double scaleX = (double) width / sampleWidth;
+        final double scaleY = (double) height / sampleHeight;
+        final int x = (int) (smartCrop.getX() * scaleX);
+        final int y = (int) (smartCrop.getY() * scaleY);
+        final int w = Math.max(1, Math.min(width - x, (int) Math.round(smartCrop.getWidth() * scaleX)));
+        final int h = Math.max(1, Math.min(height - y, (int) Math.round(smartCrop.getHeight() * scaleY)));
+        return new CropRequest(x, y, w, h);
+    }
+}
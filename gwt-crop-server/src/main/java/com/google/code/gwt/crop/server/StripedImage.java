@@ -0,0 +1,247 @@
+package com.google.code.gwt.crop.server;
+
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.ImageTypeSpecifier;
+import java.awt.Point;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.awt.image.ColorModel;
+import java.awt.image.Raster;
+import java.awt.image.RenderedImage;
+import java.awt.image.SampleModel;
+import java.awt.image.WritableRaster;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.Vector;
+
+/**
+ * <p>Cropped area of an image, that is decoded lazily in horizontal strips.</p>
+ *
+ * <p>The image consists of tiles as wide as the area and <code>stripHeight</code> rows high.
+ * A strip is decoded from the source only when an image writer asks for its pixels, and only
+ * the last decoded strip is kept in memory. Writers, that pull the pixels row by row
+ * (like the PNG writer), never hold more than one strip.</p>
+ *
+ * <p>For the formats without transparency (JPEG) the strips with the alpha channel are drawn on the white
+ * background, so the writer gets opaque RGB pixels.</p>
+ *
+ * <p>Not thread-safe: the image reader is used on the calling thread.</p>
+ *
+ * @author ilja.hamalainen@gmail.com (Ilja Hämäläinen)
+ */
+class StripedImage implements RenderedImage {
+
+    private final ImageReader reader;
+    private final Rectangle region;
+    private final int subsampling;
+    private final int stripHeight;
+
+    // size of the result (region after subsampling)
+    private final int width;
+    private final int height;
+
+    // type, that the reader decodes, and type of the strips, that differs if the alpha is flattened
+    private final ImageTypeSpecifier readType;
+    private final ImageTypeSpecifier type;
+    private final boolean isFlattened;
+    private final SampleModel sampleModel;
+
+    private int cachedStrip = -1;
+    private Raster cachedRaster;
+
+    /**
+     * @param reader reader of the source image, its input should allow to seek back
+     * @param region area of the source image
+     * @param subsampling read every n-th pixel of the area
+     * @param stripHeight strip height in rows of the result
+     * @param isOpaque <code>true</code> if the alpha channel should be drawn on the white background
+     * @throws IOException if the image type can't be read
+     */
+    StripedImage(ImageReader reader, Rectangle region, int subsampling, int stripHeight, boolean isOpaque)
+            throws IOException {
+
+        if (stripHeight <= 0) {
+            throw new IllegalArgumentException("Strip height should be positive, but was " + stripHeight);
+        }
+
+        this.reader = reader;
+        this.region = region;
+        this.subsampling = subsampling;
+        this.stripHeight = stripHeight;
+        this.width = ceilDiv(region.width, subsampling);
+        this.height = ceilDiv(region.height, subsampling);
+
+        final Iterator<ImageTypeSpecifier> types = reader.getImageTypes(0);
+        if (!types.hasNext()) {
+            throw new IOException("Image type is not supported by " + reader.getFormatName() + " reader");
+        }
+        this.readType = types.next();
+        this.isFlattened = isOpaque && this.readType.getColorModel().hasAlpha();
+        this.type = this.isFlattened
+                ? ImageTypeSpecifier.createFromBufferedImageType(BufferedImage.TYPE_INT_RGB) : this.readType;
+        this.sampleModel = this.type.getSampleModel(this.width, stripHeight);
+    }
+
+    /**
+     * Decodes the strip, or returns it from the cache, if this strip was requested last time.
+     *
+     * @param index strip index
+     * @return raster of the strip in coordinates of this image
+     */
+    Raster getStrip(int index) {
+
+        if (index == this.cachedStrip) {
+            return this.cachedRaster;
+        }
+
+        final int top = index * this.stripHeight;
+        final int rows = Math.min(this.stripHeight, this.height - top);
+
+        final int sourceTop = this.region.y + top * this.subsampling;
+        final int sourceRows = Math.min(rows * this.subsampling, this.region.y + this.region.height - sourceTop);
+        final Rectangle sourceRegion = new Rectangle(this.region.x, sourceTop, this.region.width, sourceRows);
+
+        final ImageReadParam param = CropEngine.createReadParam(this.reader, sourceRegion, this.subsampling);
+        param.setDestinationType(this.readType);
+
+        // the previous strip is released before the next one is decoded, so only one strip is in memory
+        this.cachedRaster = null;
+        this.cachedStrip = -1;
+
+        BufferedImage strip;
+        try {
+            strip = this.reader.read(0, param);
+            if (this.isFlattened) strip = CropEngine.flatten(strip);
+        } catch (IOException e) {
+            // RenderedImage methods can't throw checked exceptions, CropEngine unwraps it back
+            throw new StripReadException(e);
+        }
+
+        this.cachedRaster = strip.getRaster().createTranslatedChild(0, top);
+        this.cachedStrip = index;
+        return this.cachedRaster;
+    }
+
+    // --------- RenderedImage ------------
+
+    public Vector<RenderedImage> getSources() {
+        return null;
+    }
+
+    public Object getProperty(String name) {
+        return java.awt.Image.UndefinedProperty;
+    }
+
+    public String[] getPropertyNames() {
+        return null;
+    }
+
+    public ColorModel getColorModel() {
+        return this.type.getColorModel();
+    }
+
+    public SampleModel getSampleModel() {
+        return this.sampleModel;
+    }
+
+    public int getWidth() {
+        return this.width;
+    }
+
+    public int getHeight() {
+        return this.height;
+    }
+
+    public int getMinX() {
+        return 0;
+    }
+
+    public int getMinY() {
+        return 0;
+    }
+
+    public int getNumXTiles() {
+        return 1;
+    }
+
+    public int getNumYTiles() {
+        return ceilDiv(this.height, this.stripHeight);
+    }
+
+    public int getMinTileX() {
+        return 0;
+    }
+
+    public int getMinTileY() {
+        return 0;
+    }
+
+    public int getTileWidth() {
+        return this.width;
+    }
+
+    public int getTileHeight() {
+        return this.stripHeight;
+    }
+
+    public int getTileGridXOffset() {
+        return 0;
+    }
+
+    public int getTileGridYOffset() {
+        return 0;
+    }
+
+    public Raster getTile(int tileX, int tileY) {
+        return this.getStrip(tileY);
+    }
+
+    public Raster getData() {
+        return this.getData(new Rectangle(0, 0, this.width, this.height));
+    }
+
+    public Raster getData(Rectangle rect) {
+        final WritableRaster raster = Raster.createWritableRaster(
+                this.sampleModel.createCompatibleSampleModel(rect.width, rect.height), new Point(rect.x, rect.y));
+        return this.copyData(raster);
+    }
+
+    public WritableRaster copyData(WritableRaster raster) {
+
+        final WritableRaster target = (null != raster) ? raster : Raster.createWritableRaster(
+                this.sampleModel.createCompatibleSampleModel(this.width, this.height), null);
+
+        final Rectangle bounds = target.getBounds().intersection(new Rectangle(0, 0, this.width, this.height));
+        if (bounds.isEmpty()) return target;
+
+        final int first = bounds.y / this.stripHeight;
+        final int last = (bounds.y + bounds.height - 1) / this.stripHeight;
+
+        for (int i = first; i <= last; i++) {
+            final Raster strip = this.getStrip(i);
+            final Rectangle r = strip.getBounds().intersection(bounds);
+            target.setRect(strip.createChild(r.x, r.y, r.width, r.height, r.x, r.y, null));
+        }
+        return target;
+    }
+
+    private static int ceilDiv(int a, int b) {
+        return (a + b - 1) / b;
+    }
+
+    /**
+     * Carries the {@link IOException} of the reader through the image writer
+     */
+    static class StripReadException extends RuntimeException {
+
+        StripReadException(IOException cause) {
+            super(cause);
+        }
+
+        @Override
+        public IOException getCause() {
+            return (IOException) super.getCause();
+        }
+    }
+}
@@ -0,0 +1,622 @@
+package com.google.code.gwt.crop.server;
+
+import com.google.code.gwt.crop.client.common.TileGrid;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * <p>Cuts an image into the pyramid of tiles, that is shown by the zoomable GWTCropper
+ * (<code>GWTCropper.createTiled(...)</code>).</p>
+ *
+ * <p>Two layouts are written, the same as the client side <code>TileSource</code> reads:
+ * <ul>
+ * <li>{@link Layout#DZI}: <code>name.dzi</code> descriptor and <code>name_files/{level}/{column}_{row}.{format}</code>
+ * tiles for all the levels, for <code>TileSource.dzi("name_files/", format, tileSize, overlap)</code>;</li>
+ * <li>{@link Layout#ZXY}: <code>name/{z}/{x}/{y}.{format}</code> tiles without overlap, starting from the level,
+ * that fits into a single tile, for <code>TileSource.template("name/{z}/{x}/{y}.png", tileSize)</code>.</li>
+ * </ul>
+ * </p>
+ *
+ * <p>The whole image is never decoded at once, and it is decoded only once. The source is read in horizontal
+ * strips of <code>stripTiles</code> tile rows of the full resolution level. Every level gives its rows to the
+ * next smaller one, that averages every 2x2 block into one pixel, so the fine details don't turn into
+ * the aliasing patterns of the point sampling. A level keeps only the rows of its unfinished tile row, so
+ * the memory is about two strips of the full resolution and a tile row of every level. Tiles are encoded
+ * in parallel on a {@link ForkJoinPool}, while the next strip is decoded. Levels, that are smaller than one
+ * tile, are averaged in memory from the single tile level. As with
+ * {@link CropEngine#cropStreaming(InputStream, CropRequest, String, OutputStream, int)}, readers without random
+ * access to the rows (JPEG, PNG) decode the preceding rows again for every strip, so taller strips mean less
+ * decoding and more memory.</p>
+ *
+ * <p>Next to the tiles a <code>pyramid.properties</code> file keeps the fingerprint of the source pixels
+ * and the parameters. If they are the same on the next call, nothing is generated: editing only the metadata
+ * of the source (EXIF, XMP, comments, PNG text chunks) doesn't rebuild the pyramid.</p>
+ *
+ * <p>Usage example:
+ * <pre>
+ * TilePyramidGenerator generator = new TilePyramidGenerator();
+ * TilePyramidGenerator.Result result = generator.generate(new File("huge.jpg"), new File("tiles"), "huge");
+ * </pre>
+ * </p>
+ *
+ * @author ilja.hamalainen@gmail.com (Ilja Hämäläinen)
+ * @since 0.5.6
+ */
+public class TilePyramidGenerator {
+
+    /**
+     * Layout of the tiles on the disk
+     */
+    public enum Layout {
+
+        /**
+         * Deep Zoom: <code>name.dzi</code> and <code>name_files/{level}/{column}_{row}.{format}</code>
+         */
+        DZI,
+
+        /**
+         * <code>name/{z}/{x}/{y}.{format}</code>, where <code>{z}</code> is 0 for the single tile level
+         */
+        ZXY
+    }
+
+    /**
+     * Default tile size, tiles with the overlap are 256 px
+     */
+    public static final int DEFAULT_TILE_SIZE = 254;
+
+    public static final int DEFAULT_OVERLAP = 1;
+
+    /**
+     * Default strip height in tile rows
+     */
+    public static final int DEFAULT_STRIP_TILES = 4;
+
+    /**
+     * Name of the file with the fingerprint and parameters of the generated pyramid
+     */
+    public static final String MANIFEST = "pyramid.properties";
+
+    private final ForkJoinPool pool;
+
+    private int tileSize = DEFAULT_TILE_SIZE;
+    private int overlap = DEFAULT_OVERLAP;
+    private int stripTiles = DEFAULT_STRIP_TILES;
+    private String formatName = "jpg";
+    private Layout layout = Layout.DZI;
+
+    /**
+     * Creates the generator, that starts a new pool for every pyramid.
+     */
+    public TilePyramidGenerator() {
+        this(null);
+    }
+
+    /**
+     * Creates the generator, that builds the pyramids on the given pool. The pool is not shut down
+     * by the generator.
+     *
+     * @param pool pool for the levels and tiles; <code>null</code> means a new pool for every pyramid
+     */
+    public TilePyramidGenerator(ForkJoinPool pool) {
+        this.pool = pool;
+    }
+
+    /**
+     * @param tileSize tile size in px without the overlap
+     */
+    public void setTileSize(int tileSize) {
+        if (tileSize <= 0) {
+            throw new IllegalArgumentException("Tile size should be positive, but was " + tileSize);
+        }
+        this.tileSize = tileSize;
+    }
+
+    /**
+     * @param overlap overlap of the neighbouring tiles in px, used only in the {@link Layout#DZI} layout
+     */
+    public void setOverlap(int overlap) {
+        if (overlap < 0) {
+            throw new IllegalArgumentException("Overlap can't be negative, but was " + overlap);
+        }
+        this.overlap = overlap;
+    }
+
+    /**
+     * @param stripTiles strip height in tile rows, the source is decoded by the strips of this height
+     */
+    public void setStripTiles(int stripTiles) {
+        if (stripTiles <= 0) {
+            throw new IllegalArgumentException("Strip height should be positive, but was " + stripTiles);
+        }
+        this.stripTiles = stripTiles;
+    }
+
+    /**
+     * @param formatName tile format, that is also the file extension, for example "jpg" or "png"
+     */
+    public void setFormatName(String formatName) {
+        this.formatName = formatName;
+    }
+
+    public void setLayout(Layout layout) {
+        this.layout = layout;
+    }
+
+    /**
+     * Builds the pyramid, unless the tiles for the same pixels and parameters are already there.
+     *
+     * @param source source image
+     * @param directory output folder
+     * @param name name of the pyramid, that is used for the descriptor and the tiles folder; not blank
+     * @return geometry of the pyramid
+     * @throws IOException if the image can't be read or the tiles can't be written
+     */
+    public Result generate(File source, File directory, String name) throws IOException {
+
+        // the tiles folder is deleted before the generation, it should never be the output folder itself
+        if (null == name || name.trim().isEmpty()) {
+            throw new IllegalArgumentException("Name of the pyramid should not be blank, but was '" + name + "'");
+        }
+
+        if (!ImageIO.getImageWritersByFormatName(this.formatName).hasNext()) {
+            throw new IOException("There is no image writer for the format " + this.formatName);
+        }
+
+        final int overlap = (this.layout == Layout.DZI) ? this.overlap : 0;
+        final File tiles = new File(directory, (this.layout == Layout.DZI) ? name + "_files" : name);
+        final File descriptor = new File(directory, name + ".dzi");
+        final File manifestFile = new File(tiles, MANIFEST);
+        final String fingerprint = ImageFingerprint.of(source);
+
+        final Properties manifest = readManifest(manifestFile);
+        if (null != manifest && this.isUpToDate(manifest, fingerprint, overlap)) {
+            final TileGrid grid = new TileGrid(Integer.parseInt(manifest.getProperty("width")),
+                    Integer.parseInt(manifest.getProperty("height")), this.tileSize, overlap);
+            if (this.layout == Layout.DZI && !descriptor.exists()) this.writeDescriptor(descriptor, grid);
+            return new Result(grid, false);
+        }
+
+        // the manifest goes first, so the pyramid is not taken as complete if the generation fails
+        if (manifestFile.exists() && !manifestFile.delete()) {
+            throw new IOException("Can't delete " + manifestFile);
+        }
+        deleteRecursively(tiles);
+
+        final TileGrid grid = this.readGrid(source, overlap);
+        this.build(source, tiles, grid);
+
+        if (this.layout == Layout.DZI) this.writeDescriptor(descriptor, grid);
+        this.writeManifest(manifestFile, grid, fingerprint);
+        return new Result(grid, true);
+    }
+
+    private boolean isUpToDate(Properties manifest, String fingerprint, int overlap) {
+        return fingerprint.equals(manifest.getProperty("fingerprint"))
+                && String.valueOf(this.tileSize).equals(manifest.getProperty("tileSize"))
+                && String.valueOf(overlap).equals(manifest.getProperty("overlap"))
+                && this.formatName.equals(manifest.getProperty("format"))
+                && this.layout.name().equals(manifest.getProperty("layout"));
+    }
+
+    private TileGrid readGrid(File source, int overlap) throws IOException {
+        final ImageInputStream iis = ImageIO.createImageInputStream(source);
+        try {
+            final ImageReader reader = CropEngine.createReader(iis, true);
+            try {
+                return new TileGrid(reader.getWidth(0), reader.getHeight(0), this.tileSize, overlap);
+            } finally {
+                reader.dispose();
+            }
+        } finally {
+            if (null != iis) iis.close();
+        }
+    }
+
+    private void build(final File source, final File tiles, final TileGrid grid) throws IOException {
+
+        // folders are created before the tiles are written in parallel
+        for (int level = grid.getMaxLevel(); level >= grid.getSingleTileLevel(); level--) {
+            for (int column = 0; column < grid.getColumns(level); column++) {
+                mkdirs(getTileFile(tiles, grid, level, column, 0).getParentFile());
+            }
+        }
+
+        // the chain of the levels, from the full resolution down to the single tile level
+        LevelBuilder builder = null;
+        for (int level = grid.getSingleTileLevel(); level <= grid.getMaxLevel(); level++) {
+            builder = new LevelBuilder(tiles, grid, level, builder);
+        }
+        final LevelBuilder top = builder;
+
+        final ForkJoinPool pool = (null != this.pool) ? this.pool : new ForkJoinPool();
+        try {
+            pool.invoke(new RecursiveAction() {
+
+                @Override
+                protected void compute() {
+                    try {
+                        decode(source, grid, top);
+                    } catch (IOException e) {
+                        throw new TileException(e);
+                    }
+                }
+            });
+        } catch (TileException e) {
+            throw e.getCause();
+        } finally {
+            if (pool != this.pool) pool.shutdown();
+        }
+    }
+
+    /**
+     * Decodes the source once in strips and passes them to the full resolution level. Tiles of a strip
+     * are encoded in parallel, while the next strip is decoded.
+     */
+    private void decode(File source, TileGrid grid, LevelBuilder top) throws IOException {
+
+        final int stripHeight = this.stripTiles * this.tileSize;
+        final ImageInputStream iis = ImageIO.createImageInputStream(source);
+        try {
+            final ImageReader reader = CropEngine.createReader(iis, false);
+            try {
+                List<ForkJoinTask<?>> previous = new ArrayList<ForkJoinTask<?>>();
+                for (int y = 0; y < grid.getHeight(); y += stripHeight) {
+
+                    final Rectangle region = new Rectangle(0, y, grid.getWidth(),
+                            Math.min(stripHeight, grid.getHeight() - y));
+                    final BufferedImage strip = reader.read(0, CropEngine.createReadParam(reader, region, 1));
+
+                    final List<ForkJoinTask<?>> tasks = new ArrayList<ForkJoinTask<?>>();
+                    top.add(strip, y + region.height == grid.getHeight(), tasks);
+                    for (ForkJoinTask<?> task : tasks) {
+                        task.fork();
+                    }
+
+                    // only the tiles of two strips are kept in memory
+                    join(previous);
+                    previous = tasks;
+                }
+                join(previous);
+            } finally {
+                reader.dispose();
+            }
+        } finally {
+            if (null != iis) iis.close();
+        }
+    }
+
+    private static void join(List<ForkJoinTask<?>> tasks) {
+        for (ForkJoinTask<?> task : tasks) {
+            task.join();
+        }
+    }
+
+    /**
+     * Returns the tile file in the chosen layout
+     */
+    private File getTileFile(File tiles, TileGrid grid, int level, int column, int row) {
+        if (this.layout == Layout.DZI) {
+            return new File(tiles, level + File.separator + column + "_" + row + "." + this.formatName);
+        }
+        return new File(tiles, (level - grid.getSingleTileLevel()) + File.separator + column
+                + File.separator + row + "." + this.formatName);
+    }
+
+    private void writeTile(BufferedImage image, File file) throws IOException {
+        if (!ImageIO.write(CropEngine.flattenFor(image, this.formatName), this.formatName, file)) {
+            throw new IOException("There is no image writer for the format " + this.formatName);
+        }
+    }
+
+    private void writeDescriptor(File file, TileGrid grid) throws IOException {
+        final Writer writer = new OutputStreamWriter(new FileOutputStream(file), "UTF-8");
+        try {
+            writer.write("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"
+                    + "<Image xmlns=\"http://schemas.microsoft.com/deepzoom/2008\" TileSize=\"" + grid.getTileSize()
+                    + "\" Overlap=\"" + grid.getOverlap() + "\" Format=\"" + this.formatName + "\">\n"
+                    + "    <Size Width=\"" + grid.getWidth() + "\" Height=\"" + grid.getHeight() + "\"/>\n"
+                    + "</Image>\n");
+        } finally {
+            writer.close();
+        }
+    }
+
+    private void writeManifest(File file, TileGrid grid, String fingerprint) throws IOException {
+
+        final Properties manifest = new Properties();
+        manifest.setProperty("fingerprint", fingerprint);
+        manifest.setProperty("width", String.valueOf(grid.getWidth()));
+        manifest.setProperty("height", String.valueOf(grid.getHeight()));
+        manifest.setProperty("tileSize", String.valueOf(grid.getTileSize()));
+        manifest.setProperty("overlap", String.valueOf(grid.getOverlap()));
+        manifest.setProperty("format", this.formatName);
+        manifest.setProperty("layout", this.layout.name());
+
+        final OutputStream out = new FileOutputStream(file);
+        try {
+            manifest.store(out, "GWT Cropper tile pyramid");
+        } finally {
+            out.close();
+        }
+    }
+
+    private static Properties readManifest(File file) throws IOException {
+        if (!file.isFile()) return null;
+
+        final Properties manifest = new Properties();
+        final InputStream in = new FileInputStream(file);
+        try {
+            manifest.load(in);
+        } finally {
+            in.close();
+        }
+        return manifest;
+    }
+
+    private static void mkdirs(File dir) throws IOException {
+        if (!dir.mkdirs() && !dir.isDirectory()) {
+            throw new IOException("Can't create " + dir);
+        }
+    }
+
+    private static void deleteRecursively(File file) throws IOException {
+        final File[] children = file.listFiles();
+        if (null != children) {
+            for (File child : children) {
+                deleteRecursively(child);
+            }
+        }
+        if (file.exists() && !file.delete()) {
+            throw new IOException("Can't delete " + file);
+        }
+    }
+
+    /**
+     * <p>Scales the image down twice: every pixel is the average of a 2x2 block, the last blocks of the odd sizes
+     * are smaller.</p>
+     *
+     * <p>Colors are weighted by the alpha, so the color of the transparent pixels doesn't bleed into their
+     * neighbours.</p>
+     */
+    private static BufferedImage averageByTwo(BufferedImage image) {
+
+        final int sourceWidth = image.getWidth();
+        final int sourceHeight = image.getHeight();
+        final int width = (sourceWidth + 1) / 2;
+        final int height = (sourceHeight + 1) / 2;
+        final boolean hasAlpha = image.getColorModel().hasAlpha();
+
+        final BufferedImage result = new BufferedImage(width, height,
+                hasAlpha ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB);
+        final int[] rows = new int[sourceWidth * 2];
+        final int[] line = new int[width];
+
+        for (int y = 0; y < height; y++) {
+            final int count = Math.min(2, sourceHeight - y * 2);
+            image.getRGB(0, y * 2, sourceWidth, count, rows, 0, sourceWidth);
+
+            for (int x = 0; x < width; x++) {
+                int pixels = 0, alpha = 0, red = 0, green = 0, blue = 0;
+                for (int dy = 0; dy < count; dy++) {
+                    for (int dx = 0; dx < 2 && x * 2 + dx < sourceWidth; dx++) {
+                        final int p = rows[dy * sourceWidth + x * 2 + dx];
+                        final int a = hasAlpha ? p >>> 24 : 0xFF;
+                        pixels++;
+                        alpha += a;
+                        red += ((p >> 16) & 0xFF) * a;
+                        green += ((p >> 8) & 0xFF) * a;
+                        blue += (p & 0xFF) * a;
+                    }
+                }
+                line[x] = (alpha == 0) ? 0 : ((alpha + pixels / 2) / pixels) << 24
+                        | ((red + alpha / 2) / alpha) << 16 | ((green + alpha / 2) / alpha) << 8 | (blue + alpha / 2) / alpha;
+            }
+            result.setRGB(0, y, width, 1, line, 0, width);
+        }
+        return result;
+    }
+
+    /**
+     * Appends the rows to the kept rows of the image; the result is a new image, so the tiles of the previous
+     * one could still be encoded.
+     *
+     * @param image previous image, or <code>null</code>
+     * @param from first row of the previous image, that should be kept
+     * @param rows rows to append
+     */
+    private static BufferedImage append(BufferedImage image, int from, BufferedImage rows) {
+
+        final int kept = (null != image) ? image.getHeight() - from : 0;
+        final int width = rows.getWidth();
+        final boolean hasAlpha = rows.getColorModel().hasAlpha() || (null != image && image.getColorModel().hasAlpha());
+
+        final BufferedImage result = new BufferedImage(width, kept + rows.getHeight(),
+                hasAlpha ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB);
+        final int[] line = new int[width];
+        for (int y = 0; y < kept; y++) {
+            result.setRGB(0, y, width, 1, image.getRGB(0, from + y, width, 1, line, 0, width), 0, width);
+        }
+        for (int y = 0; y < rows.getHeight(); y++) {
+            result.setRGB(0, kept + y, width, 1, rows.getRGB(0, y, width, 1, line, 0, width), 0, width);
+        }
+        return result;
+    }
+
+    /**
+     * <p>Builds one level from its rows, that come from the top to the bottom in chunks of any height.</p>
+     *
+     * <p>Tile rows are given to the encoder as soon as they are complete, and the rows, that are complete
+     * in pairs, are averaged and passed to the next smaller level. Only the rows of the unfinished tile row
+     * (with the overlap) and the unpaired row are kept between the chunks. The single tile level keeps
+     * its whole image, that also produces all the smaller levels of the Deep Zoom layout.</p>
+     */
+    private class LevelBuilder {
+
+        private final File tiles;
+        private final TileGrid grid;
+        private final int level;
+        private final LevelBuilder smaller;
+
+        // kept rows of the level, that start from the row rowsTop
+        private BufferedImage rows;
+        private int rowsTop = 0;
+
+        private int nextTileRow = 0;
+        private int passedRows = 0;
+
+        LevelBuilder(File tiles, TileGrid grid, int level, LevelBuilder smaller) {
+            this.tiles = tiles;
+            this.grid = grid;
+            this.level = level;
+            this.smaller = smaller;
+        }
+
+        /**
+         * @param chunk next rows of the level, <code>null</code> if there are no more rows
+         * @param isLast <code>true</code> if these are the last rows
+         * @param tasks receives the tasks, that encode the complete tiles
+         */
+        void add(BufferedImage chunk, boolean isLast, List<ForkJoinTask<?>> tasks) throws IOException {
+
+            if (null != chunk) {
+                final int keepFrom = Math.min(this.passedRows,
+                        (this.nextTileRow < this.grid.getRows(this.level))
+                                ? this.grid.getTileY(this.level, this.nextTileRow) : Integer.MAX_VALUE);
+                final int from = Math.max(0, keepFrom - this.rowsTop);
+                this.rows = append(this.rows, Math.min(from, null != this.rows ? this.rows.getHeight() : 0), chunk);
+                this.rowsTop += from;
+            }
+            if (null == this.rows) return;
+
+            final int bottom = this.rowsTop + this.rows.getHeight();
+            while (this.nextTileRow < this.grid.getRows(this.level)) {
+                final int top = this.grid.getTileY(this.level, this.nextTileRow);
+                final int height = this.grid.getTileHeight(this.level, this.nextTileRow);
+                if (top + height > bottom) break;
+
+                this.addTiles(this.rows.getSubimage(0, top - this.rowsTop, this.rows.getWidth(), height),
+                        this.nextTileRow, tasks);
+                this.nextTileRow++;
+            }
+
+            if (null != this.smaller) {
+                // rows are averaged in pairs, the last unpaired row waits for the next chunk
+                final int end = isLast ? bottom : this.passedRows + ((bottom - this.passedRows) & ~1);
+                final BufferedImage averaged = (end > this.passedRows) ? averageByTwo(this.rows.getSubimage(0,
+                        this.passedRows - this.rowsTop, this.rows.getWidth(), end - this.passedRows)) : null;
+                this.passedRows = end;
+                if (null != averaged || isLast) this.smaller.add(averaged, isLast, tasks);
+            } else {
+                this.passedRows = bottom;
+                if (isLast && this.level == this.grid.getSingleTileLevel() && layout == Layout.DZI) {
+                    this.addSmallerLevels(this.rows, tasks);
+                }
+            }
+
+            if (isLast) this.rows = null;
+        }
+
+        private void addTiles(final BufferedImage tileRow, int row, List<ForkJoinTask<?>> tasks) {
+            for (int column = 0; column < this.grid.getColumns(this.level); column++) {
+                final int x = this.grid.getTileX(this.level, column);
+                final int width = this.grid.getTileWidth(this.level, column);
+                final File file = getTileFile(this.tiles, this.grid, this.level, column, row);
+
+                tasks.add(new RecursiveAction() {
+
+                    @Override
+                    protected void compute() {
+                        try {
+                            writeTile(tileRow.getSubimage(x, 0, width, tileRow.getHeight()), file);
+                        } catch (IOException e) {
+                            throw new TileException(e);
+                        }
+                    }
+                });
+            }
+        }
+
+        private void addSmallerLevels(final BufferedImage image, List<ForkJoinTask<?>> tasks) {
+            tasks.add(new RecursiveAction() {
+
+                @Override
+                protected void compute() {
+                    try {
+                        BufferedImage levelImage = image;
+                        for (int level = LevelBuilder.this.level - 1; level >= 0; level--) {
+                            levelImage = averageByTwo(levelImage);
+                            final File file = getTileFile(tiles, grid, level, 0, 0);
+                            mkdirs(file.getParentFile());
+                            writeTile(levelImage, file);
+                        }
+                    } catch (IOException e) {
+                        throw new TileException(e);
+                    }
+                }
+            });
+        }
+    }
+
+    /**
+     * Carries the {@link IOException} of a task through the pool
+     */
+    private static class TileException extends RuntimeException {
+
+        TileException(IOException cause) {
+            super(cause);
+        }
+
+        @Override
+        public IOException getCause() {
+            return (IOException) super.getCause();
+        }
+    }
+
+    /**
+     * Generated pyramid
+     */
+    public static class Result {
+
+        private final TileGrid grid;
+        private final boolean isRegenerated;
+
+        Result(TileGrid grid, boolean isRegenerated) {
+            this.grid = grid;
+            this.isRegenerated = isRegenerated;
+        }
+
+        /**
+         * @return geometry of the pyramid, its width and height are the arguments of
+         * <code>GWTCropper.createTiled(...)</code>
+         */
+        public TileGrid getGrid() {
+            return this.grid;
+        }
+
+        /**
+         * @return <code>false</code> if the tiles for the same pixels and parameters were already there
+         */
+        public boolean isRegenerated() {
+            return this.isRegenerated;
+        }
+    }
+}
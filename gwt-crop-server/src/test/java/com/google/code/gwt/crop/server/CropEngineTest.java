@@ -0,0 +1,283 @@
+package com.google.code.gwt.crop.server;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.imageio.ImageIO;
+import javax.imageio.stream.ImageInputStream;
+import java.awt.Color;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Tests for the server side cropping
+ */
+public class CropEngineTest {
+
+    private byte[] png;
+
+    /**
+     * 200x100 image, left half is red and right half is blue
+     */
+    @Before
+    public void setUp() throws IOException {
+        png = TestImages.twoColorPng(200, 100);
+    }
+
+    @Test
+    public void should_crop_requested_area() throws IOException {
+
+        // when
+        BufferedImage result = crop(new CropRequest(90, 10, 20, 30));
+
+        // then
+        assertEquals(20, result.getWidth());
+        assertEquals(30, result.getHeight());
+        assertEquals(Color.RED.getRGB(), result.getRGB(0, 0));
+        assertEquals(Color.BLUE.getRGB(), result.getRGB(19, 29));
+    }
+
+    @Test
+    public void should_limit_area_with_image_bounds() throws IOException {
+
+        // when selection is slightly out of the image because of rounding
+        BufferedImage result = crop(new CropRequest(150, 60, 51, 41));
+
+        // then
+        assertEquals(50, result.getWidth());
+        assertEquals(40, result.getHeight());
+    }
+
+    @Test
+    public void should_subsample_to_maximal_size() throws IOException {
+
+        // when
+        BufferedImage result = crop(new CropRequest(0, 0, 200, 100, 50, 50));
+
+        // then every 4th pixel is read
+        assertEquals(50, result.getWidth());
+        assertEquals(25, result.getHeight());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void should_reject_area_out_of_image() throws IOException {
+        crop(new CropRequest(300, 0, 10, 10));
+    }
+
+    @Test
+    public void should_write_result_in_requested_format() throws IOException {
+
+        // when
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        new CropEngine().crop(new ByteArrayInputStream(png), new CropRequest(10, 10, 40, 20), "png", out);
+
+        // then
+        BufferedImage result = ImageIO.read(new ByteArrayInputStream(out.toByteArray()));
+        assertEquals(40, result.getWidth());
+        assertEquals(20, result.getHeight());
+    }
+
+    @Test
+    public void should_write_transparent_image_as_jpeg_on_white() throws IOException {
+
+        // given
+        byte[] transparent = TestImages.transparentPng(200, 100);
+
+        // when
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        new CropEngine().crop(new ByteArrayInputStream(transparent), new CropRequest(0, 0, 200, 100), "jpeg", out);
+
+        // then
+        BufferedImage result = ImageIO.read(new ByteArrayInputStream(out.toByteArray()));
+        assertEquals(3, result.getColorModel().getNumComponents());
+        assertColor(Color.WHITE, result.getRGB(20, 50));
+        assertColor(Color.BLUE, result.getRGB(180, 50));
+    }
+
+    @Test
+    public void should_stream_transparent_image_as_jpeg_on_white() throws IOException {
+
+        // given
+        byte[] transparent = TestImages.transparentPng(200, 100);
+
+        // when
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        new CropEngine().cropStreaming(new ByteArrayInputStream(transparent), new CropRequest(0, 0, 200, 100),
+                "jpeg", out, 16);
+
+        // then
+        BufferedImage result = ImageIO.read(new ByteArrayInputStream(out.toByteArray()));
+        assertEquals(3, result.getColorModel().getNumComponents());
+        assertColor(Color.WHITE, result.getRGB(20, 50));
+        assertColor(Color.BLUE, result.getRGB(180, 95));
+    }
+
+    @Test
+    public void should_crop_several_areas_in_parallel() throws IOException {
+
+        // given
+        RecordingExecutor executor = new RecordingExecutor(2);
+        byte[] jpeg = TestImages.twoColorJpeg(200, 100);
+
+        try {
+            // when
+            List<byte[]> results = new CropEngine(executor).cropAll(new ByteArrayInputStream(jpeg), Arrays.asList(
+                    new CropRequest(0, 0, 50, 50),
+                    new CropRequest(100, 20, 100, 80),
+                    new CropRequest(0, 0, 200, 100, 20, 20)), "png");
+
+            // then results are in the order of requests
+            assertEquals(3, results.size());
+            assertSize(results.get(0), 50, 50);
+            assertSize(results.get(1), 100, 80);
+            assertSize(results.get(2), 20, 10);
+
+            // and the encoding overlapped
+            assertEquals(2, executor.getMaxInFlight());
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void should_crop_several_areas_in_calling_thread() throws IOException {
+
+        // when
+        List<byte[]> results = new CropEngine().cropAll(new ByteArrayInputStream(png), Arrays.asList(
+                new CropRequest(10, 10, 30, 30),
+                new CropRequest(150, 0, 50, 100)), "png");
+
+        // then
+        assertEquals(2, results.size());
+        assertSize(results.get(0), 30, 30);
+        assertSize(results.get(1), 50, 100);
+    }
+
+    @Test
+    public void should_crop_in_strips_same_as_whole_area() throws IOException {
+
+        // given
+        png = TestImages.gradientPng(200, 100);
+        CropRequest request = new CropRequest(90, 10, 20, 30);
+
+        // when strip height doesn't divide the area height
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        new CropEngine().cropStreaming(new ByteArrayInputStream(png), request, "png", out, 7);
+
+        // then
+        BufferedImage result = ImageIO.read(new ByteArrayInputStream(out.toByteArray()));
+        assertSamePixels(crop(request), result);
+    }
+
+    @Test
+    public void should_subsample_in_strips() throws IOException {
+
+        // given
+        png = TestImages.gradientPng(200, 100);
+        CropRequest request = new CropRequest(3, 5, 190, 90, 50, 50);
+
+        // when
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        new CropEngine().cropStreaming(new ByteArrayInputStream(png), request, "png", out, 4);
+
+        // then
+        BufferedImage result = ImageIO.read(new ByteArrayInputStream(out.toByteArray()));
+        assertSamePixels(crop(request), result);
+    }
+
+    @Test(expected = IOException.class)
+    public void should_report_broken_image_while_streaming() throws IOException {
+
+        // given image is cut right after the header
+        byte[] broken = Arrays.copyOf(png, 40);
+
+        // when
+        new CropEngine().cropStreaming(new ByteArrayInputStream(broken), new CropRequest(0, 0, 50, 50),
+                "png", new ByteArrayOutputStream(), 8);
+    }
+
+    /**
+     * Compares the colors with the tolerance of the lossy compression
+     */
+    private static void assertColor(Color expected, int rgb) {
+        Color actual = new Color(rgb);
+        assertEquals(expected.getRed(), actual.getRed(), 8);
+        assertEquals(expected.getGreen(), actual.getGreen(), 8);
+        assertEquals(expected.getBlue(), actual.getBlue(), 8);
+    }
+
+    private BufferedImage crop(CropRequest request) throws IOException {
+        ImageInputStream iis = ImageIO.createImageInputStream(new ByteArrayInputStream(png));
+        try {
+            return new CropEngine().crop(iis, request);
+        } finally {
+            iis.close();
+        }
+    }
+
+    private static void assertSize(byte[] encoded, int width, int height) throws IOException {
+        BufferedImage image = ImageIO.read(new ByteArrayInputStream(encoded));
+        assertEquals("width", width, image.getWidth());
+        assertEquals("height", height, image.getHeight());
+    }
+
+    private static void assertSamePixels(BufferedImage expected, BufferedImage actual) {
+        assertEquals("width", expected.getWidth(), actual.getWidth());
+        assertEquals("height", expected.getHeight(), actual.getHeight());
+        for (int y = 0; y < expected.getHeight(); y++) {
+            for (int x = 0; x < expected.getWidth(); x++) {
+                assertEquals("pixel " + x + "," + y, expected.getRGB(x, y), actual.getRGB(x, y));
+            }
+        }
+    }
+
+    /**
+     * Executor, that records the maximal number of the tasks running at once. The first tasks wait
+     * for each other, so they overlap, if the engine submits them without waiting for the results.
+     */
+    private static class RecordingExecutor extends ThreadPoolExecutor {
+
+        private final CountDownLatch started;
+        private final AtomicInteger inFlight = new AtomicInteger();
+        private final AtomicInteger maxInFlight = new AtomicInteger();
+
+        RecordingExecutor(int threads) {
+            super(threads, threads, 0, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<Runnable>());
+            this.started = new CountDownLatch(threads);
+        }
+
+        @Override
+        protected void beforeExecute(Thread t, Runnable r) {
+            int running = this.inFlight.incrementAndGet();
+            while (running > this.maxInFlight.get()) {
+                this.maxInFlight.compareAndSet(this.maxInFlight.get(), running);
+            }
+            this.started.countDown();
+            try {
+                this.started.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        @Override
+        protected void afterExecute(Runnable r, Throwable t) {
+            this.inFlight.decrementAndGet();
+        }
+
+        int getMaxInFlight() {
+            return this.maxInFlight.get();
+        }
+    }
+}
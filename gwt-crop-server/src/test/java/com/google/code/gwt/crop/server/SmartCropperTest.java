@@ -0,0 +1,81 @@
+package com.google.code.gwt.crop.server;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for the suggested crop areas
+ */
+public class SmartCropperTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void should_suggest_detailed_area_in_original_pixels() throws IOException {
+
+        // given 1200x600 image, that is analyzed as 240x120
+        File image = write("big.png", TestImages.checkeredSquarePng(1200, 600, 800, 200, 240));
+
+        // when
+        CropRequest area = new SmartCropper(null, 240).suggest(image, 1);
+
+        // then
+        assertEquals(area.getWidth(), area.getHeight(), 5);
+        assertContains(area, 800, 200, 240);
+        assertTrue(area.getWidth() < 600);
+    }
+
+    @Test
+    public void should_suggest_areas_in_parallel() throws IOException {
+
+        // given
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        List<File> images = Arrays.asList(
+                write("a.png", TestImages.checkeredSquarePng(400, 300, 10, 20, 100)),
+                write("b.png", TestImages.checkeredSquarePng(300, 400, 180, 280, 100)));
+
+        try {
+            // when
+            List<CropRequest> areas = new SmartCropper(executor).suggestAll(images, 4.0 / 3);
+
+            // then areas are in the order of the images
+            assertEquals(2, areas.size());
+            assertContains(areas.get(0), 10, 20, 100);
+            assertContains(areas.get(1), 180, 280, 100);
+            assertEquals(4.0 / 3, (double) areas.get(1).getWidth() / areas.get(1).getHeight(), 0.05);
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    private static void assertContains(CropRequest area, int left, int top, int size) {
+        assertTrue(area + " should contain the square at " + left + "," + top,
+                area.getX() <= left && area.getY() <= top
+                        && area.getX() + area.getWidth() >= left + size
+                        && area.getY() + area.getHeight() >= top + size);
+    }
+
+    private File write(String name, byte[] content) throws IOException {
+        File file = new File(folder.getRoot(), name);
+        FileOutputStream out = new FileOutputStream(file);
+        try {
+            out.write(content);
+        } finally {
+            out.close();
+        }
+        return file;
+    }
+}
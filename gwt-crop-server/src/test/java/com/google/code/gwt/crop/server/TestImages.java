@@ -0,0 +1,95 @@
+package com.google.code.gwt.crop.server;
+
+import javax.imageio.ImageIO;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+/**
+ * Generates images for the tests
+ */
+final class TestImages {
+
+    private TestImages() {
+    }
+
+    /**
+     * Creates PNG image, where the left half is red and the right half is blue
+     */
+    static byte[] twoColorPng(int width, int height) throws IOException {
+        return encode(twoColorImage(width, height), "png");
+    }
+
+    /**
+     * Creates JPEG image, where the left half is red and the right half is blue
+     */
+    static byte[] twoColorJpeg(int width, int height) throws IOException {
+        return encode(twoColorImage(width, height), "jpeg");
+    }
+
+    /**
+     * Creates PNG image, where every row has its own color, so misplaced rows are noticeable
+     */
+    static byte[] gradientPng(int width, int height) throws IOException {
+
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                image.setRGB(x, y, (x % 256) << 16 | (y % 256) << 8 | (x + y) % 256);
+            }
+        }
+        return encode(image, "png");
+    }
+
+    /**
+     * Creates PNG image of one color with a checkered square, the only detailed area of the image
+     */
+    static byte[] checkeredSquarePng(int width, int height, int left, int top, int size) throws IOException {
+
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = image.createGraphics();
+        g.setColor(Color.GRAY);
+        g.fillRect(0, 0, width, height);
+        for (int y = top; y < top + size; y += 8) {
+            for (int x = left; x < left + size; x += 8) {
+                g.setColor(((x - left) / 8 + (y - top) / 8) % 2 == 0 ? Color.WHITE : Color.BLACK);
+                g.fillRect(x, y, 8, 8);
+            }
+        }
+        g.dispose();
+        return encode(image, "png");
+    }
+
+    /**
+     * Creates PNG image, where the left half is transparent and the right half is blue
+     */
+    static byte[] transparentPng(int width, int height) throws IOException {
+
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D g = image.createGraphics();
+        g.setColor(Color.BLUE);
+        g.fillRect(width / 2, 0, width - width / 2, height);
+        g.dispose();
+        return encode(image, "png");
+    }
+
+    static BufferedImage twoColorImage(int width, int height) {
+
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = image.createGraphics();
+        g.setColor(Color.RED);
+        g.fillRect(0, 0, width / 2, height);
+        g.setColor(Color.BLUE);
+        g.fillRect(width / 2, 0, width - width / 2, height);
+        g.dispose();
+        return image;
+    }
+
+    private static byte[] encode(BufferedImage image, String formatName) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ImageIO.write(image, formatName, out);
+        return out.toByteArray();
+    }
+}
@@ -0,0 +1,320 @@
+package com.google.code.gwt.crop.server;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.zip.CRC32;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for the generation of the tile pyramids
+ */
+public class TilePyramidGeneratorTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private File source;
+    private File output;
+    private TilePyramidGenerator generator;
+
+    /**
+     * 600x300 image, every pixel has its own color
+     */
+    @Before
+    public void setUp() throws IOException {
+        source = write("source.png", TestImages.gradientPng(600, 300));
+        output = folder.newFolder("tiles");
+
+        generator = new TilePyramidGenerator();
+        generator.setFormatName("png");
+        generator.setStripTiles(1);
+    }
+
+    @Test
+    public void should_write_deep_zoom_pyramid() throws IOException {
+
+        // when
+        TilePyramidGenerator.Result result = generator.generate(source, output, "image");
+
+        // then
+        assertTrue(result.isRegenerated());
+        assertEquals(600, result.getGrid().getWidth());
+        assertEquals(10, result.getGrid().getMaxLevel());
+        assertTrue(new File(output, "image.dzi").isFile());
+
+        // tiles of the full resolution level have the overlap on the inner sides
+        BufferedImage tile = read("image_files/10/1_1.png");
+        assertEquals(256, tile.getWidth());
+        assertEquals(47, tile.getHeight());
+        assertEquals(pixel(253, 253), tile.getRGB(0, 0));
+        assertFalse(new File(output, "image_files/10/3_0.png").exists());
+
+        // levels, that are smaller than one tile, go down to 1x1
+        assertEquals(150, read("image_files/8/0_0.png").getWidth());
+        assertEquals(2, read("image_files/1/0_0.png").getWidth());
+        assertEquals(1, read("image_files/0/0_0.png").getWidth());
+    }
+
+    @Test
+    public void should_average_lower_levels() throws IOException {
+
+        // when
+        generator.generate(source, output, "image");
+
+        // then every pixel of level 9 is the average of 2x2 source pixels
+        BufferedImage tile = read("image_files/9/1_0.png");
+        assertEquals(300 - 254 + 1, tile.getWidth());
+        assertEquals(150, tile.getHeight());
+        assertEquals(level9(253, 0), tile.getRGB(0, 0));
+        assertEquals(level9(299, 149), tile.getRGB(46, 149));
+
+        // and level 8 is averaged from level 9
+        assertEquals(average(level9(20, 40), level9(21, 40), level9(20, 41), level9(21, 41)),
+                read("image_files/8/0_0.png").getRGB(10, 20));
+    }
+
+    @Test
+    public void should_not_depend_on_strip_height() throws IOException {
+
+        // given odd tiles, so the strips end with the unpaired rows
+        generator.setTileSize(37);
+        File whole = folder.newFolder("whole");
+
+        // when
+        generator.generate(source, output, "image");
+        generator.setStripTiles(100);
+        generator.generate(source, whole, "image");
+
+        // then
+        for (int level = 0; level <= 10; level++) {
+            File[] tiles = new File(whole, "image_files/" + level).listFiles();
+            assertTrue(tiles.length > 0);
+            for (File tile : tiles) {
+                assertSamePixels(ImageIO.read(tile), read("image_files/" + level + "/" + tile.getName()));
+            }
+        }
+    }
+
+    @Test
+    public void should_write_zxy_tiles_from_single_tile_level() throws IOException {
+
+        // given
+        generator.setLayout(TilePyramidGenerator.Layout.ZXY);
+        generator.setTileSize(256);
+
+        // when
+        TilePyramidGenerator.Result result = generator.generate(source, output, "image");
+
+        // then
+        assertEquals(0, result.getGrid().getOverlap());
+        assertEquals(150, read("image/0/0/0.png").getWidth());
+        assertFalse(new File(output, "image/3").exists());
+
+        BufferedImage tile = read("image/2/2/1.png");
+        assertEquals(600 - 512, tile.getWidth());
+        assertEquals(300 - 256, tile.getHeight());
+        assertEquals(pixel(512, 256), tile.getRGB(0, 0));
+    }
+
+    /**
+     * Tiles folder of the ZXY layout is the name itself, so a blank name would wipe the output folder
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void should_reject_blank_name() throws IOException {
+        generator.setLayout(TilePyramidGenerator.Layout.ZXY);
+        generator.generate(source, output, " ");
+    }
+
+    @Test
+    public void should_skip_generation_when_only_metadata_is_changed() throws IOException {
+
+        // given
+        generator.generate(source, output, "image");
+        File tile = new File(output, "image_files/10/0_0.png");
+        assertTrue(tile.delete());
+
+        // when text chunk is added to the same pixels
+        write("source.png", withTextChunk(TestImages.gradientPng(600, 300)));
+        TilePyramidGenerator.Result result = generator.generate(source, output, "image");
+
+        // then
+        assertFalse(result.isRegenerated());
+        assertEquals(600, result.getGrid().getWidth());
+        assertFalse(tile.exists());
+
+        // when pixels are changed
+        write("source.png", TestImages.twoColorPng(600, 300));
+        result = generator.generate(source, output, "image");
+
+        // then
+        assertTrue(result.isRegenerated());
+        assertTrue(tile.exists());
+    }
+
+    @Test
+    public void should_regenerate_when_parameters_are_changed() throws IOException {
+
+        // given
+        generator.generate(source, output, "image");
+
+        // when
+        generator.setTileSize(128);
+        TilePyramidGenerator.Result result = generator.generate(source, output, "image");
+
+        // then
+        assertTrue(result.isRegenerated());
+        assertTrue(new File(output, "image_files/10/0_2.png").exists());
+        assertEquals(130, read("image_files/10/1_0.png").getWidth());
+    }
+
+    @Test
+    public void should_ignore_jpeg_comments_and_app_segments_in_fingerprint() throws IOException {
+
+        // given
+        byte[] jpeg = TestImages.twoColorJpeg(200, 100);
+
+        // APP1 and COM segments right after SOI
+        ByteArrayOutputStream edited = new ByteArrayOutputStream();
+        edited.write(jpeg, 0, 2);
+        edited.write(new byte[]{(byte) 0xFF, (byte) 0xE1, 0, 6, 'E', 'x', 'i', 'f'});
+        edited.write(new byte[]{(byte) 0xFF, (byte) 0xFE, 0, 7, 'h', 'e', 'l', 'l', 'o'});
+        edited.write(jpeg, 2, jpeg.length - 2);
+
+        // when
+        String original = ImageFingerprint.of(write("a.jpg", jpeg));
+        String withMetadata = ImageFingerprint.of(write("b.jpg", edited.toByteArray()));
+        String other = ImageFingerprint.of(write("c.jpg", TestImages.twoColorJpeg(200, 101)));
+
+        // then
+        assertEquals(original, withMetadata);
+        assertNotEquals(original, other);
+    }
+
+    @Test
+    public void should_keep_jpeg_color_segments_in_fingerprint() throws IOException {
+
+        // given
+        byte[] jpeg = TestImages.twoColorJpeg(200, 100);
+
+        // when the Adobe segment with YCCK and then with RGB color transform is added after SOI
+        String ycck = ImageFingerprint.of(write("a.jpg", withSegment(jpeg, 0xEE, adobe(2))));
+        String rgb = ImageFingerprint.of(write("b.jpg", withSegment(jpeg, 0xEE, adobe(0))));
+
+        // then
+        assertNotEquals(ycck, rgb);
+        assertNotEquals(ImageFingerprint.of(write("c.jpg", jpeg)), rgb);
+    }
+
+    /**
+     * Color of the source pixel, see {@link TestImages#gradientPng(int, int)}
+     */
+    private static int pixel(int x, int y) {
+        return 0xFF000000 | (x % 256) << 16 | (y % 256) << 8 | (x + y) % 256;
+    }
+
+    /**
+     * Color of the level 9 pixel, the average of 2x2 source pixels
+     */
+    private static int level9(int x, int y) {
+        return average(pixel(2 * x, 2 * y), pixel(2 * x + 1, 2 * y), pixel(2 * x, 2 * y + 1), pixel(2 * x + 1, 2 * y + 1));
+    }
+
+    private static int average(int... colors) {
+        int red = 0, green = 0, blue = 0;
+        for (int p : colors) {
+            red += (p >> 16) & 0xFF;
+            green += (p >> 8) & 0xFF;
+            blue += p & 0xFF;
+        }
+        int n = colors.length;
+        return 0xFF000000 | (red + n / 2) / n << 16 | (green + n / 2) / n << 8 | (blue + n / 2) / n;
+    }
+
+    private static void assertSamePixels(BufferedImage expected, BufferedImage actual) {
+        assertEquals("width", expected.getWidth(), actual.getWidth());
+        assertEquals("height", expected.getHeight(), actual.getHeight());
+        for (int y = 0; y < expected.getHeight(); y++) {
+            for (int x = 0; x < expected.getWidth(); x++) {
+                assertEquals("pixel " + x + "," + y, expected.getRGB(x, y), actual.getRGB(x, y));
+            }
+        }
+    }
+
+    private BufferedImage read(String path) throws IOException {
+        return ImageIO.read(new File(output, path));
+    }
+
+    private File write(String name, byte[] content) throws IOException {
+        File file = new File(folder.getRoot(), name);
+        FileOutputStream out = new FileOutputStream(file);
+        try {
+            out.write(content);
+        } finally {
+            out.close();
+        }
+        return file;
+    }
+
+    /**
+     * Inserts the segment right after SOI
+     */
+    private static byte[] withSegment(byte[] jpeg, int marker, byte[] data) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write(jpeg, 0, 2);
+        out.write(0xFF);
+        out.write(marker);
+        out.write((data.length + 2) >> 8);
+        out.write(data.length + 2);
+        out.write(data, 0, data.length);
+        out.write(jpeg, 2, jpeg.length - 2);
+        return out.toByteArray();
+    }
+
+    /**
+     * Data of the APP14 Adobe segment with the given color transform
+     */
+    private static byte[] adobe(int transform) {
+        return new byte[]{'A', 'd', 'o', 'b', 'e', 0, 100, 0, 0, 0, 0, (byte) transform};
+    }
+
+    /**
+     * Inserts tEXt chunk after IHDR
+     */
+    private static byte[] withTextChunk(byte[] png) throws IOException {
+
+        byte[] data = "Comment\0edited".getBytes("ISO-8859-1");
+        byte[] type = "tEXt".getBytes("ISO-8859-1");
+        CRC32 crc = new CRC32();
+        crc.update(type);
+        crc.update(data);
+
+        // signature (8) + IHDR chunk (25)
+        int position = 8 + 25;
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write(png, 0, position);
+        out.write(new byte[]{0, 0, 0, (byte) data.length});
+        out.write(type);
+        out.write(data);
+        long value = crc.getValue();
+        out.write(new byte[]{(byte) (value >> 24), (byte) (value >> 16), (byte) (value >> 8), (byte) value});
+        out.write(png, position, png.length - position);
+
+        // the edited file is still readable
+        assertEquals(600, ImageIO.read(new ByteArrayInputStream(out.toByteArray())).getWidth());
+        return out.toByteArray();
+    }
+}
@@ -0,0 +1,142 @@
+package com.google.code.gwt.crop.client;
+
+import com.google.code.gwt.crop.client.common.HandleSet;
+import com.google.gwt.canvas.dom.client.Context2d;
+import com.google.gwt.dom.client.ImageElement;
+
+/**
+ * <p>Draws the whole cropper (image, dimmed overlay, selection and handles) on a single
+ * HTML5 canvas in one pass. It is used instead of the DOM layers, when the canvas rendering
+ * is enabled and the browser supports canvas.</p>
+ *
+ * <p>Colors repeat the default CSS styles of the widget.</p>
+ *
+ * @author ilja.hamalainen@gmail.com (Ilja Hämäläinen)
+ * @see GWTCropper#setCanvasRendering(boolean)
+ */
+class CanvasRenderer {
+
+    private static final String OVERLAY_COLOR = "rgba(0, 0, 0, 0.6)";
+    private static final String BORDER_COLOR = "#fff";
+    private static final String HANDLE_COLOR = "rgba(255, 255, 255, 0.25)";
+
+    private final Context2d context;
+    private ImageElement image;
+
+    // canvas size
+    private final int width;
+    private final int height;
+
+    // proportion of the original image to the canvas; zero while the image is not loaded
+    private double scaleX;
+    private double scaleY;
+
+    private final int handleSize;
+    private final int borderSize;
+    private final HandleSet handles;
+
+    /**
+     * @param context context of the canvas
+     * @param image loaded image to draw
+     * @param naturalWidth original image width
+     * @param naturalHeight original image height
+     * @param width canvas width
+     * @param height canvas height
+     * @param handleSize handle size in px
+     * @param borderSize selection border width in px
+     * @param handles handles to draw
+     */
+    CanvasRenderer(Context2d context, ImageElement image, int naturalWidth, int naturalHeight,
+                   int width, int height, int handleSize, int borderSize, HandleSet handles) {
+        this.context = context;
+        this.width = width;
+        this.height = height;
+        this.handleSize = handleSize;
+        this.borderSize = borderSize;
+        this.handles = handles;
+        this.setImage(image, naturalWidth, naturalHeight);
+    }
+
+    /**
+     * Replaces the image, for example with its version of a higher resolution.
+     *
+     * @param image loaded image to draw
+     * @param naturalWidth image width, 0 if the image is not loaded yet
+     * @param naturalHeight image height, 0 if the image is not loaded yet
+     */
+    void setImage(ImageElement image, int naturalWidth, int naturalHeight) {
+        this.image = image;
+        this.scaleX = (double) naturalWidth / this.width;
+        this.scaleY = (double) naturalHeight / this.height;
+    }
+
+    /**
+     * Redraws the canvas for the given selection.
+     *
+     * @param x selection X coordinate
+     * @param y selection Y coordinate
+     * @param w selection width
+     * @param h selection height
+     */
+    void render(int x, int y, int w, int h) {
+
+        final Context2d ctx = this.context;
+
+        final boolean isImageLoaded = this.scaleX > 0 && this.scaleY > 0;
+
+        // dimmed image
+        ctx.clearRect(0, 0, this.width, this.height);
+        if (isImageLoaded) ctx.drawImage(this.image, 0, 0, this.width, this.height);
+        ctx.setFillStyle(OVERLAY_COLOR);
+        ctx.fillRect(0, 0, this.width, this.height);
+
+        if (w <= 0 || h <= 0) return;
+
+        // selected area without dimming
+        if (isImageLoaded) {
+            ctx.drawImage(this.image, x * this.scaleX, y * this.scaleY, w * this.scaleX, h * this.scaleY, x, y, w, h);
+        }
+
+        // dashed border
+        final double b = this.borderSize;
+        ctx.save();
+        ctx.setLineWidth(b);
+        ctx.setStrokeStyle(BORDER_COLOR);
+        setLineDash(ctx, 4 * b);
+        ctx.strokeRect(x - b / 2, y - b / 2, w + b, h + b);
+        ctx.restore();
+
+        // handles
+        ctx.setLineWidth(1);
+        ctx.setStrokeStyle(BORDER_COLOR);
+        ctx.setFillStyle(HANDLE_COLOR);
+        if (this.handles.hasCorners()) {
+            this.drawHandle(x, y);
+            this.drawHandle(x + w, y);
+            this.drawHandle(x, y + h);
+            this.drawHandle(x + w, y + h);
+        }
+        if (this.handles.hasEdges()) {
+            this.drawHandle(x + w / 2, y);
+            this.drawHandle(x + w, y + h / 2);
+            this.drawHandle(x + w / 2, y + h);
+            this.drawHandle(x, y + h / 2);
+        }
+    }
+
+    /**
+     * Draws one handle, centered on the given point
+     */
+    private void drawHandle(int centerX, int centerY) {
+        final double left = centerX - this.handleSize / 2 + 0.5;
+        final double top = centerY - this.handleSize / 2 + 0.5;
+        this.context.fillRect(left, top, this.handleSize, this.handleSize);
+        this.context.strokeRect(left, top, this.handleSize, this.handleSize);
+    }
+
+    private static native void setLineDash(Context2d ctx, double dash) /*-{
+        if (ctx.setLineDash) {
+            ctx.setLineDash([dash, dash]);
+        }
+    }-*/;
+}
@@ -6,7 +6,7 @@ package com.google.code.gwt.crop.client;
  * @author ilja.hamalainen@gmail.com (Ilja Hämäläinen)
  *
  */
-interface Constants {
+public interface Constants {
 
 	byte DRAG_NONE = 0;
 	byte DRAG_BACKGROUND = 1;
@@ -14,5 +14,10 @@ interface Constants {
 	byte DRAG_TOP_RIGHT_CORNER = 3;
 	byte DRAG_BOTTOM_LEFT_CORNER = 4;
 	byte DRAG_BOTTOM_RIGHT_CORNER = 5;
+	byte DRAG_TOP_EDGE = 6;
+	byte DRAG_RIGHT_EDGE = 7;
+	byte DRAG_BOTTOM_EDGE = 8;
+	byte DRAG_LEFT_EDGE = 9;
+	byte DRAG_PAN = 10;
 
 }
\ No newline at end of file
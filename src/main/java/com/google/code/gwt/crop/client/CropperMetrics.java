@@ -0,0 +1,70 @@
+package com.google.code.gwt.crop.client;
+
+/**
+ * <p>Instrumentation of the dragging hot path. This default implementation does nothing: all its
+ * methods are empty, so the compiler removes the calls.</p>
+ *
+ * <p>The measuring implementation ({@link CropperMetricsActive}) is selected by deferred binding,
+ * when the property <code>gwtcropper.metrics</code> is <code>on</code>.</p>
+ *
+ * @author ilja.hamalainen@gmail.com (Ilja Hämäläinen)
+ * @see ICropperMetricsReporter
+ */
+class CropperMetrics {
+
+    /**
+     * @param reporter receiver of the measurements
+     */
+    void setReporter(ICropperMetricsReporter reporter) {
+    }
+
+    /**
+     * @return <code>true</code> if the measurements are collected
+     */
+    boolean isEnabled() {
+        return false;
+    }
+
+    /**
+     * Counts the input event (mouse or touch move), received during the dragging.
+     */
+    void inputEvent() {
+    }
+
+    /**
+     * Counts the frame, where the selection was changed.
+     */
+    void frame() {
+    }
+
+    /**
+     * @return start time of a phase
+     */
+    double start() {
+        return 0;
+    }
+
+    /**
+     * @param start start time of the geometry computation
+     */
+    void geometryDone(double start) {
+    }
+
+    /**
+     * @param start start time of the selection rendering
+     */
+    void domWritesDone(double start) {
+    }
+
+    /**
+     * @param start start time of the preview update
+     */
+    void previewDone(double start) {
+    }
+
+    /**
+     * Passes the measurements of the finished dragging to the reporter.
+     */
+    void draggingFinished() {
+    }
+}
@@ -0,0 +1,82 @@
+package com.google.code.gwt.crop.client;
+
+import com.google.code.gwt.crop.client.common.TimingHistogram;
+
+/**
+ * Instrumentation, that measures the phases of every frame with the high resolution timer
+ * (<code>performance.now()</code>, if available).
+ *
+ * @author ilja.hamalainen@gmail.com (Ilja Hämäläinen)
+ */
+class CropperMetricsActive extends CropperMetrics {
+
+    private final TimingHistogram geometry = new TimingHistogram();
+    private final TimingHistogram domWrites = new TimingHistogram();
+    private final TimingHistogram preview = new TimingHistogram();
+
+    private int inputEvents;
+    private int frames;
+
+    private ICropperMetricsReporter reporter;
+
+    @Override
+    void setReporter(ICropperMetricsReporter reporter) {
+        this.reporter = reporter;
+    }
+
+    @Override
+    boolean isEnabled() {
+        return true;
+    }
+
+    @Override
+    void inputEvent() {
+        this.inputEvents++;
+    }
+
+    @Override
+    void frame() {
+        this.frames++;
+    }
+
+    @Override
+    double start() {
+        return now();
+    }
+
+    @Override
+    void geometryDone(double start) {
+        this.geometry.add(now() - start);
+    }
+
+    @Override
+    void domWritesDone(double start) {
+        this.domWrites.add(now() - start);
+    }
+
+    @Override
+    void previewDone(double start) {
+        this.preview.add(now() - start);
+    }
+
+    @Override
+    void draggingFinished() {
+
+        if (this.frames == 0 && this.inputEvents == 0) return;
+
+        if (null != this.reporter) {
+            this.reporter.report(this.inputEvents, this.frames, this.geometry, this.domWrites, this.preview);
+        }
+
+        this.inputEvents = 0;
+        this.frames = 0;
+        this.geometry.reset();
+        this.domWrites.reset();
+        this.preview.reset();
+    }
+
+    private static native double now() /*-{
+        var p = $wnd.performance;
+        return (p && p.now) ? p.now() : new Date().getTime();
+    }-*/;
+}
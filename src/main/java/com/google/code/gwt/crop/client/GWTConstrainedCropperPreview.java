@@ -1,10 +1,10 @@
 package com.google.code.gwt.crop.client;
 
+import com.google.code.gwt.crop.client.common.PreviewGeometry;
+import com.google.gwt.core.client.GWT;
 import com.google.gwt.dom.client.Style.Overflow;
 import com.google.gwt.dom.client.Style.Position;
-import com.google.gwt.dom.client.Style.Unit;
 import com.google.gwt.uibinder.client.UiConstructor;
-import com.google.gwt.user.client.ui.Image;
 import com.google.gwt.user.client.ui.SimplePanel;
 
 /**
@@ -17,7 +17,8 @@ import com.google.gwt.user.client.ui.SimplePanel;
  */
 public class GWTConstrainedCropperPreview extends SimplePanel implements IGWTCropperPreview {
     private int maxWidth, maxHeight, canvasWidth, canvasHeight;
-    private Image image;
+    private final ImageLayer image = GWT.create(ImageLayer.class);
+    private final PreviewGeometry geometry = new PreviewGeometry();
 
     /**
      * Initiates the preview widget.
@@ -49,43 +50,20 @@ public class GWTConstrainedCropperPreview extends SimplePanel implements IGWTCro
     }
 
     public void init(String imageUrl, int canvasWidth, int canvasHeight, double aspectRatio) {
-        if (image != null)
-            super.remove(image);
-
         this.canvasWidth = canvasWidth;
         this.canvasHeight = canvasHeight;
 
-        image = new Image(imageUrl);
-        image.getElement().getStyle().setPosition(Position.ABSOLUTE);
-
-        add(image);
+        image.detach();
+        image.attach(getElement(), imageUrl);
     }
 
     public void updatePreview(int selectionWidth, int selectionHeight, int cropLeft, int cropTop) {
-        double selectionRatio = (double) selectionWidth / selectionHeight;
-        double containerRatio = (double) maxWidth / maxHeight;
-
-        double scale = selectionRatio < containerRatio
-                ? (double) selectionHeight / maxHeight
-                : (double) selectionWidth / maxWidth;
-
-        int containerWidth = (int) (selectionWidth / scale);
-        int containerHeight = (int) (selectionHeight / scale);
-
-        setPixelSize(containerWidth, containerHeight);
-
-        double dimensionRatioX = (double) canvasWidth / selectionWidth;
-        double dimensionRatioY = (double) canvasHeight / selectionHeight;
-        double positionRatioX = (double) selectionWidth / containerWidth;
-        double positionRatioY = (double) selectionHeight / containerHeight;
+        geometry.fitConstrained(maxWidth, maxHeight, canvasWidth, canvasHeight,
+                selectionWidth, selectionHeight, cropLeft, cropTop);
 
-        int imageWidth = (int) (containerWidth * dimensionRatioX);
-        int imageHeight = (int) (containerHeight * dimensionRatioY);
-        int imageLeft = (int) -(cropLeft / positionRatioX);
-        int imageTop = (int) -(cropTop / positionRatioY);
+        setPixelSize(geometry.getContainerWidth(), geometry.getContainerHeight());
 
-        image.setPixelSize(imageWidth, imageHeight);
-        image.getElement().getStyle().setLeft(imageLeft, Unit.PX);
-        image.getElement().getStyle().setTop(imageTop, Unit.PX);
+        image.setSize(geometry.getImageWidth(), geometry.getImageHeight());
+        image.setOffset(-geometry.getImageLeft(), -geometry.getImageTop());
     }
 }
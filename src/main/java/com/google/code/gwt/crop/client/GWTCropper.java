@@ -15,14 +15,28 @@
 
 package com.google.code.gwt.crop.client;
 
+import com.google.code.gwt.crop.client.common.HandleSet;
+import com.google.code.gwt.crop.client.common.SelectionModel;
+import com.google.gwt.animation.client.AnimationScheduler;
+import com.google.gwt.animation.client.AnimationScheduler.AnimationCallback;
+import com.google.gwt.animation.client.AnimationScheduler.AnimationHandle;
+import com.google.gwt.canvas.client.Canvas;
 import com.google.gwt.core.client.GWT;
+import com.google.gwt.core.client.JavaScriptObject;
 import com.google.gwt.core.client.JsArray;
+import com.google.gwt.dom.client.Document;
 import com.google.gwt.dom.client.Element;
+import com.google.gwt.dom.client.EventTarget;
+import com.google.gwt.dom.client.ImageElement;
+import com.google.gwt.dom.client.Style;
 import com.google.gwt.dom.client.Style.Cursor;
 import com.google.gwt.dom.client.Style.Overflow;
+import com.google.gwt.dom.client.Style.Position;
 import com.google.gwt.dom.client.Style.Unit;
+import com.google.gwt.dom.client.Style.Visibility;
 import com.google.gwt.dom.client.Touch;
 import com.google.gwt.event.dom.client.*;
+import com.google.gwt.event.shared.HandlerRegistration;
 import com.google.gwt.uibinder.client.UiConstructor;
 import com.google.gwt.uibinder.client.UiFactory;
 import com.google.gwt.user.client.DOM;
@@ -62,56 +76,146 @@ public class GWTCropper extends HTMLPanel implements MouseMoveHandler, MouseUpHa
                                                     TouchMoveHandler, TouchEndHandler {
 
     private final ICropperStyleSource bundleResources = GWT.create(ICropperStyleSource.class);
+    private final SelectionRenderer renderer = GWT.create(SelectionRenderer.class);
+    private final ImageLayer selectionImage = GWT.create(ImageLayer.class);
+    private final CropperMetrics metrics = GWT.create(CropperMetrics.class);
+
+    // name of the attribute with the dragging action of a handle
+    private static final String ACTION_ATTRIBUTE = "data-action";
 
     // canvas sizes
     int nOuterWidth = -1;
     int nOuterHeight = -1;
 
-    // selection coordinates
-    private int nInnerX = -1;
-    private int nInnerY = -1;
-    private int nInnerWidth = -1;
-    private int nInnerHeight = -1;
+    // selection geometry
+    private final SelectionModel selection = new SelectionModel();
 
-    private boolean isDown = false;
+    boolean isDown = false;
     private byte action = Constants.DRAG_NONE;
 
-    // initials to provide crop actions
-    private int initW = -1;
-    private int initH = -1;
-
-    // X and Y coordinates of cursor before dragging
-    private int initX = -1;
-    private int initY = -1;
-
-    private int offsetX = -1;
-    private int offsetY = -1;
+    // Pointer Events are used instead of the mouse and touch handlers, if supported
+    private final boolean isPointerInput = PointerInput.isSupported();
 
     // instances to canvas and selection area, available for the cropper
     private final AbsolutePanelImpl _container;
     private AbsolutePanel handlesContainer;
-    private HTML draggableBackground;
+    private Element draggableBackground;
     private LoadHandler onCanvasLoadHandler;
 
-    // settings
-    private double aspectRatio = 0;
-
     private final int HANDLE_SIZE = this.bundleResources.css().handleSize();
     private final int SELECTION_BORDER_SIZE = this.bundleResources.css().borderSize();
+    private HandleSet handleSet = HandleSet.CORNERS;
 
-    // minimum size of height or width. Just to prevent selection area to be shrunk to a dot
-    private int MIN_WIDTH = this.HANDLE_SIZE;
-    private int MIN_HEIGHT = this.HANDLE_SIZE;
-
-    private IGWTCropperPreview previewWidget;
+    private final PreviewUpdater previewUpdater = new PreviewUpdater();
+    private final SelectionChangeDispatcher selectionChangeDispatcher = new SelectionChangeDispatcher(this);
 
     private AbsolutePanelImpl selectionContainer = new AbsolutePanelImpl();
 
     // used by UIBuinder
-    private final String imageURL;
+    private String imageURL;
+
+    // progressive loading: versions of the image from the smallest one to the original
+    private String[] tierURLs;
+    private Image firstTierImage;
+    private Image shownImage;
+
+    // object URL of the image, that was created from a picked file
+    private String fileURL;
+    private int fileRequest = 0;
+    private boolean isCanvasBuilt = false;
 
     private double imageAspectRatio;
     private double proportion = 1;
+    private double verticalProportion = 1;
+
+    // size of the original image, if the displayed image is its downscaled copy
+    private int originalWidth = -1;
+    private int originalHeight = -1;
+
+    // widget size, given by the user; the canvas size of every next image is computed from it
+    private int requestedWidth = -1;
+    private int requestedHeight = -1;
+
+    // frame coalescing: only the latest cursor position is applied, once per animation frame
+    private boolean isFrameCoalescing = true;
+    private AnimationHandle pendingFrame;
+    private int pendingX;
+    private int pendingY;
+    // rendering on the HTML5 canvas
+    private boolean isCanvasRendering = false;
+    private Canvas canvas;
+    private CanvasRenderer canvasRenderer;
+    private byte canvasCursorAction = Constants.DRAG_NONE;
+
+    // automatic initial selection, it is pending until the image is loaded or the selection is given
+    private boolean isSmartSelection = false;
+    private boolean isSmartSelectionPending = true;
+
+    private final PointerInput.Listener pointerListener = new PointerInput.Listener() {
+
+        public boolean onPointerDown(Element target, int x, int y) {
+            if (null != canvasRenderer) {
+                startCanvasDragging(x, y);
+            } else {
+                action = getAction(target);
+                isDown = (action != Constants.DRAG_NONE);
+            }
+            return isDown;
+        }
+
+        public void onPointerDrag(int x, int y) {
+            if (!isDown) return;
+
+            metrics.inputEvent();
+
+            // the pointer is captured, so it could be out of the canvas
+            scheduleDragging(Math.max(0, Math.min(x, nOuterWidth)), Math.max(0, Math.min(y, nOuterHeight)));
+        }
+
+        public void onPointerHover(Element target, int offsetX, int offsetY) {
+            if (null != canvasRenderer && target == canvas.getElement()) {
+                updateCanvasCursor(offsetX, offsetY);
+            }
+        }
+
+        public void onPointerUp() {
+            resetDraggingState();
+        }
+    };
+
+    // zoomable mode: the image is shown with tiles of a pyramid, the selection model is in px of the zoomed image
+    private static final int DEFAULT_ZOOMABLE_WIDTH = 800;
+    private static final int DIMMING_SHADOW = 10000;
+    private static final String DIMMING_COLOR = "rgba(0, 0, 0, 0.6)";
+    private final ZoomableViewport viewport;
+
+    // lazy mode: the image, the selection and the listeners are created only near the viewport
+    private final boolean isLazy;
+    private boolean isActive = false;
+    private boolean isListening = false;
+    private int lazyNearDistance = 500;
+    private int lazyFarDistance = 3000;
+    private Element lazyRoot;
+
+    private final ViewportObserver.Listener viewportListener = new ViewportObserver.Listener() {
+
+        public void onNear() {
+            activate();
+        }
+
+        public void onFar() {
+            release();
+        }
+    };
+
+    private final AnimationCallback frameCallback = new AnimationCallback() {
+
+        public void execute(double timestamp) {
+            pendingFrame = null;
+            provideDragging(pendingX, pendingY);
+            publishSelection();
+        }
+    };
 
     /**
      * Constructor with mandatory parameter of image's URL.
@@ -120,19 +224,118 @@ public class GWTCropper extends HTMLPanel implements MouseMoveHandler, MouseUpHa
      */
     @UiConstructor
     public GWTCropper(String imageURL) {
+        this(imageURL, new String[0]);
+    }
+
+    /**
+     * <p>Constructor for the progressive loading. The smallest version of the image is shown first,
+     * then it is replaced with the bigger ones, and finally with the image itself.</p>
+     *
+     * <p>The smaller versions don't tell the size of the original image, so it should be given with
+     * {@link #setOriginalSize(int, int)}. Then the selection becomes available as soon as the first (smallest)
+     * version is loaded, or, if the widget size ({@link #setSize(int, int)} or {@link #setWidth(int)}) is given
+     * too, right after the widget is attached, without waiting for any image. The selection doesn't move when
+     * bigger versions are swapped in, because it is kept in canvas pixels. Without the original size the smaller
+     * versions are just shown, and the selection appears only when the image itself is loaded.</p>
+     *
+     * <p><i>Usage example:</i>
+     * <pre>
+     * GWTCropper crop = new GWTCropper("image.jpg", "image-40px.jpg", "image-800px.jpg");
+     * crop.setOriginalSize(6000, 4000);
+     * crop.setWidth(800);
+     * </pre>
+     * </p>
+     *
+     * @param imageURL URL of the original image
+     * @param lowerResolutionURLs URLs of the smaller versions of the same image, from the smallest one
+     */
+    public GWTCropper(String imageURL, String... lowerResolutionURLs) {
+        this(false, imageURL, lowerResolutionURLs, null);
+    }
+
+    private GWTCropper(boolean isLazy, String imageURL, String[] lowerResolutionURLs, TileLayer tileLayer) {
         super("");
         this.imageURL = imageURL;
+        this.isLazy = isLazy;
+        this.viewport = null == tileLayer ? null : new ZoomableViewport(tileLayer, this.selection);
+
+        this.tierURLs = new String[lowerResolutionURLs.length + 1];
+        System.arraycopy(lowerResolutionURLs, 0, this.tierURLs, 0, lowerResolutionURLs.length);
+        this.tierURLs[lowerResolutionURLs.length] = imageURL;
 
         bundleResources.css().ensureInjected();
+        super.setStyleName(bundleResources.css().base());
+
+        // minimum size of height or width. Just to prevent selection area to be shrunk to a dot
+        this.selection.setMinimalSize(this.HANDLE_SIZE, this.HANDLE_SIZE);
+
         this._container = new AbsolutePanelImpl();
-        this.addCanvas(imageURL);
 
-        addDomHandler(this, MouseMoveEvent.getType());
-        addDomHandler(this, MouseUpEvent.getType());
-        addDomHandler(this, MouseOutEvent.getType());
+        if (!isLazy) this.activate();
+    }
+
+    /**
+     * <p>Creates the cropper in the lazy mode, for pages with many croppers in a long scrolling list.</p>
+     *
+     * <p>The lazy cropper is an empty placeholder, until it comes near the viewport: only then the image starts
+     * loading and the selection and the listeners are created. When the cropper goes far away from the viewport,
+     * the image, the selection and the handles are released again; the selected area is kept and restored, when
+     * the cropper comes back. If the browser doesn't support <code>IntersectionObserver</code>, the cropper is
+     * activated as soon as it is attached.</p>
+     *
+     * <p>Give the size of the cropper (both {@link #setSize(int, int)}, or {@link #setWidth(int)} together with
+     * {@link #setOriginalSize(int, int)}), so the placeholder takes the same place as the loaded cropper.</p>
+     *
+     * <p><i>Usage example:</i>
+     * <pre>
+     * GWTCropper crop = GWTCropper.createLazy("image.jpg");
+     * crop.setOriginalSize(1600, 1200);
+     * crop.setWidth(400);
+     * list.add(crop);
+     * </pre>
+     * </p>
+     *
+     * @param imageURL URL of the original image
+     * @param lowerResolutionURLs URLs of the smaller versions of the same image for the progressive loading
+     * @return lazy cropper
+     * @see #setLazyLoadingDistance(int, int)
+     */
+    public static GWTCropper createLazy(String imageURL, String... lowerResolutionURLs) {
+        return new GWTCropper(true, imageURL, lowerResolutionURLs, null);
+    }
+
+    /**
+     * <p>Creates the zoomable cropper for very large images (satellite photos, scanned documents), which are
+     * cut into a tile pyramid, for example in the Deep Zoom format.</p>
+     *
+     * <p>The cropper is a viewport of the size, given with {@link #setSize(int, int)} or {@link #setWidth(int)}
+     * (800px wide by default). At first the whole image fits into it; the mouse wheel and {@link #setZoom(double)}
+     * zoom it up to the full resolution, and dragging the image outside of the selection pans it. Only the tiles
+     * in view are loaded, the tiles out of view are kept in a LRU cache and then removed.</p>
+     *
+     * <p>All the <code>getSelection*()</code> methods return coordinates in pixels of the full resolution image
+     * at any zoom. Preview widgets show the single tile version of the image.
+     * {@link #setImageURL(String, boolean)}, {@link #setImageFile(JavaScriptObject, int, boolean)},
+     * the canvas rendering and the export are not available in this mode.</p>
+     *
+     * <p><i>Usage example:</i>
+     * <pre>
+     * GWTCropper crop = GWTCropper.createTiled(TileSource.dzi("map_files/", "jpg", 254, 1), 60000, 40000);
+     * crop.setSize(800, 600);
+     * </pre>
+     * </p>
+     *
+     * @param source source of the tiles
+     * @param width full resolution image width in px
+     * @param height full resolution image height in px
+     * @return zoomable cropper
+     */
+    public static GWTCropper createTiled(TileSource source, int width, int height) {
 
-        addDomHandler(this, TouchMoveEvent.getType());
-        addDomHandler(this, TouchEndEvent.getType());
+        final TileLayer tiles = new TileLayer(source, width, height);
+        final GWTCropper cropper = new GWTCropper(false, tiles.getThumbnailURL(), new String[0], tiles);
+        cropper.setOriginalSize(width, height);
+        return cropper;
     }
 
     /**
@@ -173,7 +376,7 @@ public class GWTCropper extends HTMLPanel implements MouseMoveHandler, MouseUpHa
      * @param aspectRatio - double value, proportion width/height
      */
     public void setAspectRatio(double aspectRatio) {
-        this.aspectRatio = aspectRatio;
+        this.selection.setAspectRatio(aspectRatio);
     }
 
     /**
@@ -182,7 +385,7 @@ public class GWTCropper extends HTMLPanel implements MouseMoveHandler, MouseUpHa
      * @return value between 0 and 1
      */
     public double getAspectRatio() {
-        return this.aspectRatio;
+        return this.selection.getAspectRatio();
     }
 
     /**
@@ -195,7 +398,8 @@ public class GWTCropper extends HTMLPanel implements MouseMoveHandler, MouseUpHa
      * @return X coordinate
      */
     public int getSelectionXCoordinate() {
-        return (int) (this.nInnerX * proportion);
+        if (this.isFullSelectionKept()) return this.viewport.getFullX();
+        return (int) (this.selection.getX() * proportion);
     }
 
     /**
@@ -208,7 +412,8 @@ public class GWTCropper extends HTMLPanel implements MouseMoveHandler, MouseUpHa
      * @return Y coordinate
      */
     public int getSelectionYCoordinate() {
-        return (int) (this.nInnerY * proportion);
+        if (this.isFullSelectionKept()) return this.viewport.getFullY();
+        return (int) (this.selection.getY() * verticalProportion);
     }
 
     /**
@@ -221,7 +426,8 @@ public class GWTCropper extends HTMLPanel implements MouseMoveHandler, MouseUpHa
      * @return width in pixels
      */
     public int getSelectionWidth() {
-        return (int) (this.nInnerWidth * proportion);
+        if (this.isFullSelectionKept()) return this.viewport.getFullWidth();
+        return (int) (this.selection.getWidth() * proportion);
     }
 
     /**
@@ -233,7 +439,8 @@ public class GWTCropper extends HTMLPanel implements MouseMoveHandler, MouseUpHa
      * @return height in pixels
      */
     public int getSelectionHeight() {
-        return (int) (this.nInnerHeight * proportion);
+        if (this.isFullSelectionKept()) return this.viewport.getFullHeight();
+        return (int) (this.selection.getHeight() * verticalProportion);
     }
 
     /**
@@ -296,20 +503,28 @@ public class GWTCropper extends HTMLPanel implements MouseMoveHandler, MouseUpHa
      */
     public void setInitialSelection(int x, int y, int width, int height, boolean shouldKeepAspectRatio) {
 
+        this.isSmartSelectionPending = false;
+
         if (shouldKeepAspectRatio)
             this.setAspectRatio(width/height);
 
-        if (width > MIN_WIDTH)
-            this.nInnerWidth = width;
+        if (width > this.selection.getMinimalWidth())
+            this.selection.setWidth(width);
 
-        if (height > MIN_HEIGHT)
-            this.nInnerHeight = height;
+        if (height > this.selection.getMinimalHeight())
+            this.selection.setHeight(height);
 
         if (x >= 0)
-            this.nInnerX = x;
+            this.selection.setX(x);
 
         if (y >= 0)
-            this.nInnerY = y;
+            this.selection.setY(y);
+
+        // zoomable mode: the selection is given in px of the zoomed image
+        if (null != this.viewport) {
+            if (this.isCanvasBuilt) this.viewport.storeFullSelection();
+            else this.viewport.forgetFullSelection();
+        }
     }
 
     /**
@@ -319,7 +534,7 @@ public class GWTCropper extends HTMLPanel implements MouseMoveHandler, MouseUpHa
      * @param width in pixels
      */
     public void setMinimalWidth(int width) {
-        if (width > 30) this.MIN_WIDTH = width;
+        if (width > 30) this.selection.setMinimalSize(width, this.selection.getMinimalHeight());
     }
 
     /**
@@ -328,7 +543,7 @@ public class GWTCropper extends HTMLPanel implements MouseMoveHandler, MouseUpHa
      * @param height in pixels
      */
     public void setMinimalHeight(int height) {
-        if (height > 30) this.MIN_HEIGHT = height;
+        if (height > 30) this.selection.setMinimalSize(this.selection.getMinimalWidth(), height);
     }
 
     /**
@@ -341,6 +556,238 @@ public class GWTCropper extends HTMLPanel implements MouseMoveHandler, MouseUpHa
         this.onCanvasLoadHandler = handler;
     }
 
+    /**
+     * <p>Tells the cropper, that the image URL points to a downscaled copy (proxy) of the original image,
+     * and sets the size of the original. Should be called before the image is loaded.</p>
+     *
+     * <p>The browser downloads and decodes only the small proxy image, while all the <code>getSelection*()</code>
+     * methods return coordinates in pixels of the original image, so they could be passed to the server
+     * as they are. The proxy should keep the aspect ratio of the original.</p>
+     *
+     * <p><i>Usage example:</i>
+     * <pre>
+     * GWTCropper crop = new GWTCropper("url/to/image-800px.jpg");
+     * crop.setOriginalSize(6000, 4000);
+     * </pre>
+     * </p>
+     *
+     * @param width original image width in px
+     * @param height original image height in px
+     */
+    public void setOriginalSize(int width, int height) {
+        this.originalWidth = width;
+        this.originalHeight = height;
+    }
+
+    /**
+     * Shows another image in this cropper and resets the selection.
+     *
+     * @param imageURL URL of the new image
+     * @see #setImageURL(String, boolean)
+     */
+    public void setImageURL(String imageURL) {
+        this.setImageURL(imageURL, true);
+    }
+
+    /**
+     * <p>Shows another image in this cropper. The canvas, the selection layers, the handles and the listeners
+     * are reused, so flipping through many images in one widget doesn't create new widgets.</p>
+     *
+     * <p>The new image is loaded in background and replaces the current one, when it is loaded. The canvas size
+     * is computed again from the size, given with {@link #setSize(int, int)} or {@link #setWidth(int)}.
+     * The original size is forgotten: call {@link #setOriginalSize(int, int)} after this method, if the new
+     * image is a proxy too.</p>
+     *
+     * <p>The kept selection is validated against the new canvas: if it doesn't fit, the default one is shown.
+     * The zoomable cropper ignores this method.</p>
+     *
+     * @param imageURL URL of the new image
+     * @param resetSelection <code>true</code> to show the default selection, <code>false</code> to keep the current one
+     * @see GWTCropperPool
+     */
+    public void setImageURL(String imageURL, boolean resetSelection) {
+
+        // zoomable cropper shows the tiles of one image only
+        if (null != this.viewport) return;
+
+        if (null != this.fileURL && !this.fileURL.equals(imageURL)) {
+            ImageDecoder.release(this.fileURL);
+            this.fileURL = null;
+        }
+
+        this.imageURL = imageURL;
+        this.tierURLs = new String[] { imageURL };
+        this.originalWidth = -1;
+        this.originalHeight = -1;
+
+        this.resetDraggingState();
+        this.cancelPendingDragging();
+
+        // the kept selection is never replaced with the automatic one
+        this.isSmartSelectionPending = resetSelection;
+        if (resetSelection) this.selection.setSelection(-1, -1, -1, -1);
+
+        // lazy cropper loads the new image on activation
+        if (!this.isActive) return;
+
+        if (!this.isCanvasBuilt) {
+            // nothing is built yet, so there is nothing to reuse
+            this.release();
+            this.activate();
+            return;
+        }
+
+        // drop the images, which are still loading: bigger versions or the previously requested image
+        for (int i = this._container.getWidgetCount() - 1; i >= 0; i--) {
+            final Widget w = this._container.getWidget(i);
+            if (w instanceof Image && w != this.shownImage) {
+                w.getElement().removeAttribute("src");
+                w.removeFromParent();
+            }
+        }
+
+        final Image current = this.shownImage;
+        final Image next = new Image(imageURL);
+        next.setStyleName(bundleResources.css().imageCanvas());
+        next.getElement().getStyle().setProperty("maxWidth", "none");
+        next.getElement().getStyle().setVisibility(Visibility.HIDDEN);
+        next.addLoadHandler(new LoadHandler() {
+
+            public void onLoad(LoadEvent event) {
+                replaceImage(current, next, next.getUrl());
+
+                if (null != onCanvasLoadHandler)
+                    onCanvasLoadHandler.onLoad(event);
+            }
+        });
+
+        // the image should be attached to receive the load event; it goes under the current one
+        this._container.insert(next, 0, 0, 0);
+    }
+
+    /**
+     * Shows the picked image file with the default selection.
+     *
+     * @param file JavaScript <code>File</code> or <code>Blob</code>, for example from a file input or drag and drop
+     * @param proxySize maximal width and height of the displayed copy in px
+     * @see #setImageFile(JavaScriptObject, int, boolean)
+     */
+    public void setImageFile(JavaScriptObject file, int proxySize) {
+        this.setImageFile(file, proxySize, true);
+    }
+
+    /**
+     * <p>Shows the image file, that the user has picked, without decoding it on the main thread.</p>
+     *
+     * <p>The file is decoded with <code>createImageBitmap</code> in a Web Worker and reduced to a copy (proxy),
+     * that fits into <code>proxySize</code>; only this small copy is shown by the cropper. The size of the file
+     * is passed to {@link #setOriginalSize(int, int)}, so the selection is still given in pixels of the original
+     * image. If the file already fits into <code>proxySize</code>, or the browser can't do it in a worker,
+     * the file is shown as it is. Transparent formats get a PNG proxy, so the transparency is kept.</p>
+     *
+     * <p>The proxy is kept in memory through an object URL, which is released, when another image is shown.</p>
+     *
+     * @param file JavaScript <code>File</code> or <code>Blob</code>, for example from a file input or drag and drop
+     * @param proxySize maximal width and height of the displayed copy in px, for example the widget size
+     * @param resetSelection <code>true</code> to show the default selection, <code>false</code> to keep the current one
+     */
+    public void setImageFile(JavaScriptObject file, int proxySize, final boolean resetSelection) {
+
+        // only the latest picked file is shown, if the user picks files faster, than they are decoded
+        final int request = ++this.fileRequest;
+
+        ImageDecoder.decode(file, proxySize, new ImageDecoder.Callback() {
+
+            public void onDecoded(String url, int originalWidth, int originalHeight) {
+
+                if (request != fileRequest) {
+                    ImageDecoder.release(url);
+                    return;
+                }
+
+                final String previous = fileURL;
+                fileURL = url;
+                setImageURL(url, resetSelection);
+                if (originalWidth > 0 && originalHeight > 0) setOriginalSize(originalWidth, originalHeight);
+
+                if (null != previous) ImageDecoder.release(previous);
+            }
+        });
+    }
+
+    /**
+     * Returns URL of the shown image (the original one in the progressive mode).
+     *
+     * @return image URL
+     */
+    public String getImageURL() {
+        return this.imageURL;
+    }
+
+    /**
+     * Exports the selected area as JPEG with the quality 0.9, which fits into the square of the given size.
+     *
+     * @param maxSize maximal width and height of the result in px
+     * @param callback receiver of the result
+     * @see #exportSelection(int, int, String, double, ICropperExportCallback)
+     */
+    public void exportSelection(int maxSize, ICropperExportCallback callback) {
+        this.exportSelection(maxSize, maxSize, "image/jpeg", 0.9, callback);
+    }
+
+    /**
+     * <p>Crops the selected area in the browser and encodes it to a <code>Blob</code>, so only the crop could be
+     * uploaded instead of the whole original image.</p>
+     *
+     * <p>The result has the size of the selection in pixels of the original image (see
+     * {@link #getSelectionWidth()}), reduced to fit into the maximal size; it is never enlarged. If the
+     * cropper shows a downscaled copy (see {@link #setOriginalSize(int, int)}), the pixels are taken from
+     * this copy, so the result is not bigger than the selected area of the copy. Where possible, the scaling and
+     * encoding run in a Web Worker on an <code>OffscreenCanvas</code>, otherwise on the main thread.</p>
+     *
+     * <p>The image should be loaded from the same origin, or with CORS headers, otherwise the browser forbids
+     * reading its pixels and the callback receives a failure.</p>
+     *
+     * @param maxWidth maximal width of the result in px, 0 means no limit
+     * @param maxHeight maximal height of the result in px, 0 means no limit
+     * @param mimeType MIME type of the result, for example <code>image/jpeg</code> or <code>image/png</code>
+     * @param quality encoder quality between 0 and 1 for the lossy formats
+     * @param callback receiver of the result
+     */
+    public void exportSelection(int maxWidth, int maxHeight, String mimeType, double quality,
+                                ICropperExportCallback callback) {
+
+        final Image image = this.shownImage;
+        final int naturalWidth = (null != image) ? getNaturalWidth(image.getElement()) : 0;
+        final int naturalHeight = (null != image) ? getNaturalHeight(image.getElement()) : 0;
+
+        if (naturalWidth <= 0 || naturalHeight <= 0 || this.selection.getWidth() <= 0) {
+            callback.onFailure("Image is not loaded yet");
+            return;
+        }
+
+        // selection in pixels of the loaded image
+        final double scaleX = (double) naturalWidth / this.nOuterWidth;
+        final double scaleY = (double) naturalHeight / this.nOuterHeight;
+        final int sourceX = (int) Math.round(this.selection.getX() * scaleX);
+        final int sourceY = (int) Math.round(this.selection.getY() * scaleY);
+        final int sourceWidth = Math.max(1,
+                Math.min((int) Math.round(this.selection.getWidth() * scaleX), naturalWidth - sourceX));
+        final int sourceHeight = Math.max(1,
+                Math.min((int) Math.round(this.selection.getHeight() * scaleY), naturalHeight - sourceY));
+
+        // result in pixels of the original image
+        final int width = this.getSelectionWidth();
+        final int height = this.getSelectionHeight();
+        // a downscaled copy is not upscaled back to the original size
+        final double scale = Math.min(ImageExporter.fitScale(width, height, maxWidth, maxHeight),
+                ImageExporter.fitScale(width, height, sourceWidth, sourceHeight));
+
+        ImageExporter.export(image.getElement(), sourceX, sourceY, sourceWidth, sourceHeight,
+                Math.max(1, (int) Math.round(width * scale)), Math.max(1, (int) Math.round(height * scale)),
+                mimeType, quality, callback);
+    }
+
     /**
      * Sets the cropper's size.
      *
@@ -348,13 +795,23 @@ public class GWTCropper extends HTMLPanel implements MouseMoveHandler, MouseUpHa
      * @param height integer in px
      */
     public void setSize(int width, int height) {
+        this.requestedWidth = width;
+        this.requestedHeight = height;
+        this.resize(width, height);
+    };
+
+    /**
+     * Applies the canvas size to the widget
+     */
+    private void resize(int width, int height) {
 
         // size of parent panel, that holds this widget
         super.setSize(width + "px", height + "px");
 
         this.nOuterWidth = width;
         this.nOuterHeight = height;
-    };
+        this.selection.setCanvasSize(width, height);
+    }
 
     /**
      * Sets the cropper widget outer width, height will computed with keeping image aspect ratio.
@@ -364,6 +821,8 @@ public class GWTCropper extends HTMLPanel implements MouseMoveHandler, MouseUpHa
     public void setWidth(int width) {
         super.setWidth(width+"px");
         nOuterWidth = width;
+        this.requestedWidth = width;
+        this.requestedHeight = -1;
     }
 
     /**
@@ -399,624 +858,1274 @@ public class GWTCropper extends HTMLPanel implements MouseMoveHandler, MouseUpHa
     }
 
     /**
-     * Registers the {@link com.google.code.gwt.crop.client.GWTCropperPreview} widget.
+     * <p>Registers the preview widget, for example {@link com.google.code.gwt.crop.client.GWTCropperPreview}.</p>
+     *
+     * <p>Any number of previews could be registered (a square avatar, a wide banner and a thumbnail
+     * at once). The selection is computed once per frame and passed to all of them in one pass.
+     * A preview, that is registered after the image is loaded, shows the current selection right away.</p>
      *
      * @param previewWidget
      */
     public void registerPreviewWidget(IGWTCropperPreview previewWidget){
-        this.previewWidget = previewWidget;
+        this.previewUpdater.add(previewWidget);
     }
 
-    // --------- private methods ------------
-
     /**
-     * Adds a canvas with background image.
+     * Stops updating of the preview widget.
      *
-     * @param src - image URL
+     * @param previewWidget previously registered preview
+     * @return <code>true</code> if the preview was registered
      */
-    private void addCanvas(final String src) {
-
-        super.setStyleName(bundleResources.css().base());
-
-        final Image image = new Image(src);
-        image.setStyleName(bundleResources.css().imageCanvas());
-        image.addLoadHandler(new LoadHandler() {
-
-            public void onLoad(LoadEvent event) {
-
-                //this is a bug in IE since v.8 - maxWidth collapse image
-                //and you cannot read its width - in some cases depends from CSS image extensions
-                image.getElement().getStyle().setProperty("maxWidth","none");
-
-                // get original image size
-                if (nOuterWidth != -1 || nOuterHeight != -1) {
-
-                    // scale canvas in case if width/height was specified explicitly
-                    imageAspectRatio = (double) image.getWidth()/image.getHeight();
-                    if (nOuterWidth == -1) nOuterWidth = (int) (nOuterHeight * imageAspectRatio);
-                    if (nOuterHeight == -1) nOuterHeight = (int) (nOuterWidth / imageAspectRatio);
-                    proportion = (double) image.getWidth() / nOuterWidth;
-                } else {
-                    nOuterWidth = image.getWidth();
-                    nOuterHeight = image.getHeight();
-                }
-
-                DOM.setElementProperty(image.getElement(), "width", nOuterWidth + "");
-                DOM.setElementProperty(image.getElement(), "height", nOuterHeight + "");
-                image.getElement().getStyle().setPropertyPx("maxWidth", nOuterWidth);
-                image.getElement().getStyle().setPropertyPx("maxHeight", nOuterHeight);
-
-                _container.setWidth(nOuterWidth + "px");
-                _container.setHeight(nOuterHeight + "px");
-                addSelection(src);
-
-                setSize(nOuterWidth, nOuterHeight);
-
-                if (null != onCanvasLoadHandler)
-                    onCanvasLoadHandler.onLoad(event);
-
-                if (null != previewWidget) {
-                    previewWidget.init(src, nOuterWidth, nOuterHeight, aspectRatio);
-                }
-
-                updatePreviewWidget();
-            }
-
-        });
-        this._container.add(image, 0, 0);
-        this.add(this._container);
+    public boolean unregisterPreviewWidget(IGWTCropperPreview previewWidget) {
+        return this.previewUpdater.remove(previewWidget);
     }
 
     /**
-     * Adds initial selection
+     * Adds the handler, that is notified about the selection changes on every animation frame.
      *
+     * @param handler selection change handler
+     * @return registration to remove the handler
+     * @see #addSelectionChangeHandler(SelectionChangeHandler, SelectionChangeEvent.Delivery)
      */
-    private void addSelection(final String src) {
-
-        selectionContainer.addStyleName(this.bundleResources.css().selection());
-
-        this.validateInitialData();
-
-        selectionContainer.setWidth(this.nInnerWidth + "px");
-        selectionContainer.setHeight(this.nInnerHeight + "px");
-
-        // add background image for the selection
-        Image imgSelectionBg = new Image(src);
-        if (nOuterWidth != -1) {
-            DOM.setElementProperty(imgSelectionBg.getElement(), "width", nOuterWidth + "");
-            imgSelectionBg.getElement().getStyle().setPropertyPx("maxWidth", nOuterWidth);
-        }
-
-        if (nOuterHeight != -1) {
-            DOM.setElementProperty(imgSelectionBg.getElement(), "height", nOuterHeight + "");
-            imgSelectionBg.getElement().getStyle().setPropertyPx("maxHeight", nOuterHeight);
-        }
-
-        selectionContainer.add(imgSelectionBg, -this.nInnerX,  -this.nInnerY);
-        this._container.add(selectionContainer, this.nInnerX - SELECTION_BORDER_SIZE, this.nInnerY - SELECTION_BORDER_SIZE);
-
-        this.buildSelectionArea();
-
-        this._container.add(this.handlesContainer, this.nInnerX, this.nInnerY);
+    public HandlerRegistration addSelectionChangeHandler(SelectionChangeHandler handler) {
+        return this.addSelectionChangeHandler(handler, SelectionChangeEvent.Delivery.FRAME);
     }
 
     /**
-     * Validates all initial data. This method is called after the canvas image becomes loaded and we know, what are its actual
-     * dimensions. If any of data are incorrect, then set the default values.
+     * <p>Adds the handler, that is notified when the user changes the selection. The event contains
+     * the selection in pixels of the original image.</p>
+     *
+     * <p>The delivery mode defines how often the handler is called:
+     * <ul>
+     * <li>{@link SelectionChangeEvent.Delivery#FRAME FRAME} - on every animation frame during the dragging,
+     * for cheap live updates;</li>
+     * <li>{@link SelectionChangeEvent.Delivery#DRAG_END DRAG_END} - once, when the user releases the selection;</li>
+     * <li>{@link SelectionChangeEvent.Delivery#DEBOUNCED DEBOUNCED} - once, when the selection wasn't changed
+     * for the delay, given with {@link #setSelectionChangeDelay(int)} (for server requests or autosave).</li>
+     * </ul>
+     * </p>
+     *
+     * <p><i>Usage example:</i>
+     * <pre>
+     * crop.addSelectionChangeHandler(new SelectionChangeHandler() {
+     *     public void onSelectionChange(SelectionChangeEvent event) {
+     *         save(event.getX(), event.getY(), event.getWidth(), event.getHeight());
+     *     }
+     * }, SelectionChangeEvent.Delivery.DRAG_END);
+     * </pre>
+     * </p>
+     *
+     * @param handler selection change handler
+     * @param delivery when the handler should be called
+     * @return registration to remove the handler
      */
-    private void validateInitialData() {
+    public HandlerRegistration addSelectionChangeHandler(SelectionChangeHandler handler,
+                                                         SelectionChangeEvent.Delivery delivery) {
+        return this.selectionChangeDispatcher.register(
+                this.addHandler(handler, SelectionChangeEvent.getType(delivery)), delivery);
+    }
 
-        final boolean isDefaultWidth = this.nInnerX == -1 && this.nInnerWidth == -1;
-        final boolean isInvalidWidthAndX = this.nOuterWidth < (this.nInnerX + this.nInnerWidth);
+    /**
+     * Sets the delay for the {@link SelectionChangeEvent.Delivery#DEBOUNCED debounced} selection change handlers
+     * (default value is 300ms).
+     *
+     * @param milliseconds how long the selection should stay unchanged before the handlers are called
+     */
+    public void setSelectionChangeDelay(int milliseconds) {
+        this.selectionChangeDispatcher.setDelay(milliseconds);
+    }
 
-        if (isDefaultWidth || isInvalidWidthAndX) {
-            this.nInnerX = (int) (nOuterWidth * 0.2);
-            this.nInnerWidth = (int) (nOuterWidth * 0.2);
-        }
+    /**
+     * Returns the delay for the debounced selection change handlers.
+     *
+     * @return delay in milliseconds
+     */
+    public int getSelectionChangeDelay() {
+        return this.selectionChangeDispatcher.getDelay();
+    }
 
-        // minimal width couldn't be more, than initial selection.
-        if (this.MIN_WIDTH > this.nInnerWidth) this.MIN_WIDTH = this.HANDLE_SIZE;
+    /**
+     * <p>Sets the receiver of the performance measurements: number of input events and rendered frames,
+     * and the time of the selection geometry, rendering and preview updates per frame. The measurements
+     * are reported when the user finishes the dragging.</p>
+     *
+     * <p>The measurements are collected only if the module is compiled with
+     * <code>&lt;set-property name="gwtcropper.metrics" value="on" /&gt;</code>. By default the instrumentation
+     * is compiled out and the reporter is never called.</p>
+     *
+     * @param reporter receiver of the measurements
+     */
+    public void setMetricsReporter(ICropperMetricsReporter reporter) {
+        this.metrics.setReporter(reporter);
+    }
 
-        final boolean isDefaultHeight = this.nInnerY == -1 && this.nInnerHeight == -1;
-        final boolean isInvalidHeightY = this.nOuterHeight < (this.nInnerY + this.nInnerHeight);
+    /**
+     * Returns whether the performance measurements are compiled in.
+     *
+     * @return <code>true</code> if the property <code>gwtcropper.metrics</code> is <code>on</code>
+     */
+    public boolean isMetricsEnabled() {
+        return this.metrics.isEnabled();
+    }
 
-        if (isDefaultHeight || isInvalidHeightY) {
-            this.nInnerY = (int) (nOuterHeight * 0.2);
-            this.nInnerHeight = (int) ( (this.aspectRatio == 0) ? (nOuterHeight * 0.2) : (nInnerWidth / aspectRatio) );
-        }
+    /**
+     * <p>Limits how often the preview widget is updated during the dragging (no limit by default).</p>
+     *
+     * <p>The selection itself follows the cursor as usual, while the preview is redrawn not more often than
+     * once per the given interval. The latest selection is always delivered to the preview at the end of the
+     * interval or when the dragging is finished. Independently of this setting, the preview is not touched
+     * at all, when the selected area wasn't changed.</p>
+     *
+     * @param milliseconds minimal time between two preview updates; 0 means no limit
+     */
+    public void setPreviewRefreshInterval(int milliseconds) {
+        this.previewUpdater.setRefreshInterval(milliseconds);
+    }
 
-        // minimal height couldn't be more, than initial selection.
-        if (this.MIN_HEIGHT > this.nInnerHeight) this.MIN_HEIGHT = this.HANDLE_SIZE;
+    /**
+     * Returns the minimal time between two preview updates.
+     *
+     * @return interval in milliseconds, 0 if there is no limit
+     */
+    public int getPreviewRefreshInterval() {
+        return this.previewUpdater.getRefreshInterval();
     }
 
     /**
-     * Add special handles. User can drag these handle and change form of the selected area
+     * <p>Enables or disables the frame coalescing of the dragging (enabled by default).</p>
      *
-     * @return container with handles and needed attached event listeners
+     * <p>High-rate mice and touch screens fire much more move events than the browser is able to
+     * paint. When the coalescing is enabled, the cropper remembers only the latest cursor position and
+     * changes the selection (and the preview widget) once per animation frame. Set <code>false</code>
+     * to process every move event immediately, as it was done in the previous versions.</p>
+     *
+     * @param isEnabled <code>true</code> to apply dragging once per animation frame
      */
-    private AbsolutePanel buildSelectionArea() {
+    public void setFrameCoalescing(boolean isEnabled) {
+        if (!isEnabled) this.flushPendingDragging();
+        this.isFrameCoalescing = isEnabled;
+    }
 
-        // add selection handles
-        this.handlesContainer = new AbsolutePanel();
+    /**
+     * Returns whether the dragging is applied once per animation frame.
+     *
+     * @return <code>true</code> if the frame coalescing is enabled
+     */
+    public boolean isFrameCoalescing() {
+        return this.isFrameCoalescing;
+    }
 
-        this.handlesContainer.setWidth(this.nInnerWidth + "px");
-        this.handlesContainer.setHeight(this.nInnerHeight + "px");
+    /**
+     * <p>Sets the distances to the viewport for the lazy cropper (see {@link #createLazy(String, String...)}).
+     * Should be called before the cropper is attached.</p>
+     *
+     * <p>The cropper is activated, when it comes closer to the viewport than <code>nearDistance</code>,
+     * and released, when it goes farther than <code>farDistance</code>. The gap between two distances
+     * prevents loading the same image again and again, when the list is scrolled back and forth.
+     * Defaults are 500px and 3000px.</p>
+     *
+     * @param nearDistance distance in px to activate the cropper
+     * @param farDistance distance in px to release the cropper, not less than <code>nearDistance</code>
+     */
+    public void setLazyLoadingDistance(int nearDistance, int farDistance) {
+        this.lazyNearDistance = Math.max(0, nearDistance);
+        this.lazyFarDistance = Math.max(this.lazyNearDistance, farDistance);
+    }
 
-        this.handlesContainer.setStyleName(this.bundleResources.css().handlesContainer());
-        this.handlesContainer.getElement().getStyle().setOverflow(Overflow.VISIBLE);
+    /**
+     * Sets the scrolling element, that contains the lazy cropper, for example the element of a
+     * <code>ScrollPanel</code>. Distances are measured to the visible area of this element.
+     * By default the browser window is used. Should be called before the cropper is attached.
+     *
+     * @param scrollingElement scrolling element, <code>null</code> means the browser window
+     */
+    public void setLazyLoadingRoot(Element scrollingElement) {
+        this.lazyRoot = scrollingElement;
+    }
 
-        // append background
-        this.draggableBackground = this.appendDraggableBackground();
+    /**
+     * Zooms the image of the zoomable cropper (see {@link #createTiled(TileSource, int, int)}) around the center
+     * of the viewport. The zoom is limited by the whole image in the viewport and by the full resolution.
+     * Works after the cropper is attached.
+     *
+     * @param zoom displayed size relatively the full resolution image, 1 is the full resolution
+     */
+    public void setZoom(double zoom) {
+        this.zoomAt(zoom, this.nOuterWidth / 2, this.nOuterHeight / 2);
+    }
 
-        // find the center of draggable handle to make an offset for the positioning
-        final int h = this.HANDLE_SIZE / 2;
+    /**
+     * Returns the zoom of the zoomable cropper.
+     *
+     * @return displayed size relatively the full resolution image
+     */
+    public double getZoom() {
+        return null == this.viewport ? 1 : this.viewport.getZoom();
+    }
 
-        /*
-            1px and 2px below are correction because of 1px border.
-            We need to position handle exactly on the center of the selection corner.
-        */
+    /**
+     * <p>Sets the handles, that are shown on the selection: four corners (default), four edges or all eight.
+     * Should be called before the image is loaded.</p>
+     *
+     * <p>Only the enabled handles are created, so the widget doesn't pay for the handles it doesn't show.
+     * With a fixed aspect ratio an edge handle changes both sides: dragging the top or bottom edge moves
+     * the right side, dragging the left or right edge moves the bottom side.</p>
+     *
+     * @param handleSet handles to show; <code>null</code> means the default corners
+     */
+    public void setHandleSet(HandleSet handleSet) {
+        this.handleSet = (null != handleSet) ? handleSet : HandleSet.CORNERS;
+    }
 
-        // append top left corner handler.
-        this.appendHandle(Cursor.NW_RESIZE, Constants.DRAG_TOP_LEFT_CORNER, -h, 0, 0, -(h + 1));
+    /**
+     * Returns the handles, that are shown on the selection.
+     *
+     * @return handle set
+     */
+    public HandleSet getHandleSet() {
+        return this.handleSet;
+    }
 
-        // append top right corner handler
-        this.appendHandle(Cursor.NE_RESIZE, Constants.DRAG_TOP_RIGHT_CORNER, -h, -(h + 2), 0, 0);
+    /**
+     * <p>Enables rendering on a single HTML5 canvas (disabled by default). Should be called before the image is loaded.</p>
+     *
+     * <p>The image, the dimmed area, the selection and its handles are drawn on one canvas element
+     * in one pass per frame, instead of a number of nested DOM layers. It is useful when the page contains
+     * many croppers. If the browser doesn't support canvas, the usual DOM layers are used.</p>
+     *
+     * <p><i>Note, that custom CSS styles are not applied to the selection and handles drawn on the canvas.</i></p>
+     *
+     * @param isEnabled <code>true</code> to draw the cropper on the canvas
+     */
+    public void setCanvasRendering(boolean isEnabled) {
+        this.isCanvasRendering = isEnabled;
+    }
 
-        // append bottom left corner handler
-        this.appendHandle(Cursor.SW_RESIZE, Constants.DRAG_BOTTOM_LEFT_CORNER, 0, 0, -(h + 2), -(h + 1));
+    /**
+     * Returns whether the canvas rendering is requested.
+     *
+     * @return <code>true</code> if the canvas rendering is enabled
+     */
+    public boolean isCanvasRendering() {
+        return this.isCanvasRendering;
+    }
 
-        // append bottom right corner handler
-        this.appendHandle(Cursor.SE_RESIZE, Constants.DRAG_BOTTOM_RIGHT_CORNER, 0, -(h + 2), -(h + 2), 0);
+    /**
+     * <p>Enables the automatic initial selection (disabled by default). Should be called before the image is loaded.</p>
+     *
+     * <p>If the initial selection is not given with {@link #setInitialSelection(int, int, int, int)}, the most
+     * detailed area of the image with the current aspect ratio is selected, instead of the fixed rectangle
+     * in the top left part of the canvas. The image is analyzed on a small downscaled copy, when it is loaded.
+     * The same happens for the images, shown with {@link #setImageURL(String)}.</p>
+     *
+     * <p><i>Note, that the browser doesn't allow to read the pixels of the images from another origin, unless
+     * they are served with CORS headers. The default selection is shown for such images and in the zoomable
+     * cropper.</i></p>
+     *
+     * @param isEnabled <code>true</code> to select the detailed area automatically
+     */
+    public void setSmartInitialSelection(boolean isEnabled) {
+        this.isSmartSelection = isEnabled;
+    }
 
-        return handlesContainer;
+    /**
+     * Returns whether the automatic initial selection is enabled.
+     *
+     * @return <code>true</code> if the most detailed area is selected initially
+     */
+    public boolean isSmartInitialSelection() {
+        return this.isSmartSelection;
     }
 
     /**
-     * Creates one small draggable selection handle and appends it to the corner of selection area.
-     * User can drag this handle to change shape of the selection area
+     * {@inheritDoc}
      *
-     * @param cursor cursor type for the CSS
-     * @param actionType action type for the event processor
-     * @param top  top value in PX
-     * @param right right value in PX
-     * @param bottom bottom value in PX
-     * @param left left value in PX
+     * <p>In the progressive mode the canvas is built right here, if its size is already known.
+     * The lazy cropper starts observing its distance to the viewport.</p>
      */
-    private void appendHandle(Cursor cursor, final byte actionType, int top, int right, int bottom, int left) {
+    @Override
+    protected void onLoad() {
+        super.onLoad();
 
-        HTML handle = new HTML();
-        handle.setStyleName(this.bundleResources.css().handle());
-        handle.getElement().getStyle().setCursor(cursor);
+        if (!this.isLazy) {
+            this.buildIfSizeKnown();
+            return;
+        }
 
-        handle.addMouseDownHandler(new MouseDownHandler() {
+        if (!this.isActive) this.reserveSpace();
 
-            public void onMouseDown(MouseDownEvent event) {
-                isDown = true;
-                action = actionType;
-            }
-        });
-        handle.addTouchStartHandler(new TouchStartHandler() {
+        if (ViewportObserver.isSupported()) {
+            ViewportObserver.observe(this.getElement(), this.lazyRoot,
+                    this.lazyNearDistance, this.lazyFarDistance, this.viewportListener);
+        } else {
+            this.activate();
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected void onUnload() {
+        if (this.isLazy) ViewportObserver.unobserve(this.getElement());
+        super.onUnload();
+    }
+
+    // --------- activation ------------
 
-            public void onTouchStart(TouchStartEvent event) {
-                isDown = true;
-                action = actionType;
+    /**
+     * Creates the canvas and starts loading the image. Listeners of the widget are registered
+     * on the first call.
+     */
+    void activate() {
+
+        if (this.isActive) return;
+        this.isActive = true;
+
+        if (null != this.viewport) {
+            // zoomable canvas is built, when its size is known
+            this.add(this._container);
+        } else {
+            this.addCanvas(this.tierURLs[0]);
+        }
+
+        if (!this.isListening) {
+            this.isListening = true;
+
+            if (this.isPointerInput) {
+                PointerInput.listen(this.getElement(), this._container.getElement(), this.pointerListener);
+            } else {
+                addDomHandler(this, MouseMoveEvent.getType());
+                addDomHandler(this, MouseUpEvent.getType());
+                addDomHandler(this, MouseOutEvent.getType());
+
+                addDomHandler(this, TouchMoveEvent.getType());
+                addDomHandler(this, TouchEndEvent.getType());
             }
-        });
+        }
+
+        if (this.isAttached()) this.buildIfSizeKnown();
+    }
+
+    /**
+     * Releases the image, the selection and the handles of the lazy cropper, which went far away
+     * from the viewport. The selected area is kept.
+     */
+    void release() {
 
-        if (top != 0) handle.getElement().getStyle().setTop(top, Unit.PX);
-        if (right != 0) handle.getElement().getStyle().setRight(right, Unit.PX);
-        if (bottom != 0) handle.getElement().getStyle().setBottom(bottom, Unit.PX);
-        if (left != 0) handle.getElement().getStyle().setLeft(left, Unit.PX);
+        if (!this.isActive) return;
 
-        this.handlesContainer.add(handle);
+        this.resetDraggingState();
+        this.cancelPendingDragging();
+
+        // stop loading of the images, which are not loaded yet
+        for (Widget w : this._container) {
+            if (w instanceof Image) w.getElement().removeAttribute("src");
+        }
+        this._container.clear();
+        this._container.removeFromParent();
+
+        // the canvas is built again at the smallest zoom, the full resolution selection is kept
+        if (null != this.viewport) this.viewport.release();
+
+        this.selectionImage.detach();
+        this.selectionContainer = new AbsolutePanelImpl();
+        this.handlesContainer = null;
+        this.draggableBackground = null;
+        this.canvas = null;
+        this.canvasRenderer = null;
+        this.canvasCursorAction = Constants.DRAG_NONE;
+        this.firstTierImage = null;
+        this.shownImage = null;
+        this.isCanvasBuilt = false;
+        this.isActive = false;
     }
 
+    /**
+     * @return <code>true</code> if the image and the selection are created
+     */
+    boolean isActive() {
+        return this.isActive;
+    }
 
+    /**
+     * Gives the placeholder of the lazy cropper its future size, if it is already known.
+     */
+    private void reserveSpace() {
+
+        final boolean isOriginalSizeKnown = this.originalWidth > 0 && this.originalHeight > 0;
+        final boolean isOneSideKnown = this.nOuterWidth != -1 || this.nOuterHeight != -1;
+
+        if (isOriginalSizeKnown && isOneSideKnown) {
+            this.computeCanvasSize(this.originalWidth, this.originalHeight);
+        }
+
+        if (this.nOuterWidth != -1 && this.nOuterHeight != -1) {
+            this.resize(this.nOuterWidth, this.nOuterHeight);
+        }
+    }
 
     /**
-     * Append draggable background for the selection area
+     * Builds the canvas of the progressive cropper before any image is loaded, if the canvas size is known.
+     */
+    private void buildIfSizeKnown() {
+
+        if (null != this.viewport) {
+            if (!this.isCanvasBuilt) this.buildZoomableCanvas();
+            return;
+        }
+
+        final boolean isSizeKnown = this.originalWidth > 0 && this.originalHeight > 0
+                && (this.nOuterWidth != -1 || this.nOuterHeight != -1);
+
+        if (!this.isCanvasBuilt && null != this.firstTierImage && this.tierURLs.length > 1 && isSizeKnown) {
+            this.computeCanvasSize(this.originalWidth, this.originalHeight);
+            this.buildCanvas(this.firstTierImage, this.tierURLs[0]);
+            this.initPreviewWidget(this.tierURLs[0]);
+        }
+    }
+
+    // --------- private methods ------------
+
+    /**
+     * Adds a canvas with background image.
+     *
+     * @param src - image URL
      */
-    private HTML appendDraggableBackground() {
+    private void addCanvas(final String src) {
+
+        final Image image = new Image(src);
+        image.setStyleName(bundleResources.css().imageCanvas());
+        this.firstTierImage = image;
+        image.addLoadHandler(new LoadHandler() {
 
-        final HTML backgroundHandle = new HTML();
-        backgroundHandle.setWidth(this.nInnerWidth + "px");
-        backgroundHandle.setHeight(this.nInnerHeight + "px");
-        backgroundHandle.getElement().getStyle().setCursor(Cursor.MOVE);
-        backgroundHandle.addStyleName(this.bundleResources.css().selectionDraggableBackground());
+            public void onLoad(LoadEvent event) {
 
-        backgroundHandle.addMouseDownHandler(new MouseDownHandler() {
+                //this is a bug in IE since v.8 - maxWidth collapse image
+                //and you cannot read its width - in some cases depends from CSS image extensions
+                image.getElement().getStyle().setProperty("maxWidth","none");
 
-            public void onMouseDown(MouseDownEvent event) {
-                isDown = true;
-                action = Constants.DRAG_BACKGROUND;
+                final boolean isBuiltBefore = isCanvasBuilt;
+
+                if (isBuiltBefore) {
+                    // canvas was built before the image was loaded, now it could be drawn
+                    if (applySmartSelection(image)) validateInitialData();
+                    showTier(image, image, src);
+                } else if (computeTierCanvasSize(image.getWidth(), image.getHeight(), tierURLs.length == 1)) {
+                    buildCanvas(image, src);
+                } else {
+                    // the canvas is built, when the image itself is loaded
+                    loadTier(image, 1);
+                    return;
+                }
+
+                if (null != onCanvasLoadHandler)
+                    onCanvasLoadHandler.onLoad(event);
+
+                if (!isBuiltBefore) initPreviewWidget(src);
+
+                loadTier(image, 1);
             }
+
         });
-        backgroundHandle.addTouchStartHandler(new TouchStartHandler() {
+        this._container.add(image, 0, 0);
+        this.add(this._container);
+    }
+
+    /**
+     * Builds the canvas and the selection, when the canvas size is known.
+     *
+     * @param image canvas image
+     * @param src image URL
+     */
+    private void buildCanvas(Image image, String src) {
+
+        this.isCanvasBuilt = true;
+        this.applySmartSelection(image);
+
+        _container.setWidth(nOuterWidth + "px");
+        _container.setHeight(nOuterHeight + "px");
+
+        if (isCanvasRendering && Canvas.isSupported()) {
+            addCanvasSelection(image);
+        } else {
+            fitCanvasImage(image);
+            addSelection(src);
+        }
+
+        this.shownImage = image;
+        this.resize(nOuterWidth, nOuterHeight);
+    }
+
+    /**
+     * Shows the image in the preview widget
+     */
+    private void initPreviewWidget(String src) {
+
+        previewUpdater.init(src, nOuterWidth, nOuterHeight, selection.getAspectRatio());
+        publishSelection();
+    }
+
+    /**
+     * Scales the canvas image to the canvas size
+     */
+    private void fitCanvasImage(Image image) {
+        DOM.setElementProperty(image.getElement(), "width", nOuterWidth + "");
+        DOM.setElementProperty(image.getElement(), "height", nOuterHeight + "");
+        image.getElement().getStyle().setPropertyPx("maxWidth", nOuterWidth);
+        image.getElement().getStyle().setPropertyPx("maxHeight", nOuterHeight);
+    }
+
+    /**
+     * Starts loading of the next (bigger) version of the image in background. The currently shown version
+     * is replaced, when the next one is loaded.
+     *
+     * @param current currently shown image
+     * @param index index of the version to load
+     */
+    private void loadTier(final Image current, final int index) {
+
+        if (index >= this.tierURLs.length) return;
 
-            public void onTouchStart(TouchStartEvent event) {
-                isDown = true;
-                action = Constants.DRAG_BACKGROUND;
+        final String url = this.tierURLs[index];
+        final Image next = new Image(url);
+        next.setStyleName(bundleResources.css().imageCanvas());
+        next.getElement().getStyle().setProperty("maxWidth", "none");
+        next.getElement().getStyle().setVisibility(Visibility.HIDDEN);
+        next.addLoadHandler(new LoadHandler() {
+
+            public void onLoad(LoadEvent event) {
+                if (isCanvasBuilt) {
+                    showTier(current, next, url);
+                } else {
+                    buildFromTier(current, next, url, index == tierURLs.length - 1, event);
+                }
+                loadTier(next, index + 1);
             }
         });
 
-        this.handlesContainer.add(backgroundHandle, 0, 0);
+        // the image should be attached to receive the load event; it goes under the current one
+        this._container.insert(next, 0, 0, 0);
+    }
 
-        return backgroundHandle;
+    /**
+     * Shows the loaded version of the image, while the canvas size is still unknown, and builds the canvas
+     * as soon as the size is known.
+     *
+     * @param previous currently shown image
+     * @param next loaded image
+     * @param url URL of the loaded image
+     * @param isLastTier <code>true</code> if the loaded version is the image itself
+     * @param event load event for the canvas load handler
+     */
+    private void buildFromTier(Image previous, Image next, String url, boolean isLastTier, LoadEvent event) {
+
+        previous.removeFromParent();
+        next.getElement().getStyle().clearVisibility();
+
+        if (!this.computeTierCanvasSize(getNaturalWidth(next.getElement()), getNaturalHeight(next.getElement()),
+                isLastTier)) return;
+
+        this.buildCanvas(next, url);
+
+        if (null != this.onCanvasLoadHandler)
+            this.onCanvasLoadHandler.onLoad(event);
+
+        this.initPreviewWidget(url);
     }
 
     /**
-     * provides dragging action
+     * Replaces the shown version of the image with the loaded one. The selection stays in canvas pixels
+     * and the proportions to the original image don't change.
      *
-     * @param cursorX - cursor X-position relatively the canvas
-     * @param cursorY - cursor Y-position relatively the canvas
+     * @param previous currently shown image
+     * @param next loaded image
+     * @param url URL of the loaded image
      */
-    void provideDragging(int cursorX, int cursorY) {
+    private void showTier(Image previous, Image next, String url) {
 
-        Element elH = null; // handle's container
-        Element elS = null; // selection's container
-        Element elImg = null;
+        final int naturalWidth = getNaturalWidth(next.getElement());
+        final int naturalHeight = getNaturalHeight(next.getElement());
 
-        int futureWidth = 0;
-        int futureHeight = 0;
+        if (null != this.canvasRenderer) {
+            this.canvasRenderer.setImage(ImageElement.as(next.getElement()), naturalWidth, naturalHeight);
+        } else {
+            this.fitCanvasImage(next);
+            next.getElement().getStyle().clearVisibility();
+            this.selectionImage.setUrl(url);
+        }
 
-        switch (this.action) {
+        if (previous != next) previous.removeFromParent();
+        this.shownImage = next;
 
+        this.renderSelection();
+        this.initPreviewWidget(url);
+    }
 
-            case Constants.DRAG_BACKGROUND:
+    /**
+     * Replaces the shown image with the loaded one of another size, reusing the canvas and the selection layers.
+     *
+     * @param previous currently shown image
+     * @param next loaded image
+     * @param url URL of the loaded image
+     */
+    private void replaceImage(Image previous, Image next, String url) {
 
-                if (offsetX == -1) {
-                    offsetX = cursorX - _container.getWidgetLeft(this.handlesContainer);
-                }
-                if (offsetY == -1) {
-                    offsetY = cursorY - _container.getWidgetTop(this.handlesContainer);
-                }
+        final int naturalWidth = getNaturalWidth(next.getElement());
+        final int naturalHeight = getNaturalHeight(next.getElement());
 
-                elH = this.handlesContainer.getElement();
+        this.nOuterWidth = this.requestedWidth;
+        this.nOuterHeight = this.requestedHeight;
+        this.computeCanvasSize(naturalWidth, naturalHeight);
 
-                this.nInnerX = cursorX - offsetX;
-                this.nInnerY = cursorY - offsetY;
+        this._container.setWidth(nOuterWidth + "px");
+        this._container.setHeight(nOuterHeight + "px");
+        this.resize(nOuterWidth, nOuterHeight);
+        this.applySmartSelection(next);
+        this.validateInitialData();
+
+        if (null != this.canvasRenderer) {
+            next.setVisible(false);
+            this.canvas.setCoordinateSpaceWidth(nOuterWidth);
+            this.canvas.setCoordinateSpaceHeight(nOuterHeight);
+            this.canvas.setPixelSize(nOuterWidth, nOuterHeight);
+            this.canvasRenderer = new CanvasRenderer(this.canvas.getContext2d(), ImageElement.as(next.getElement()),
+                    naturalWidth, naturalHeight, nOuterWidth, nOuterHeight, HANDLE_SIZE, SELECTION_BORDER_SIZE, this.handleSet);
+        } else {
+            this.fitCanvasImage(next);
+            next.getElement().getStyle().clearVisibility();
+            this.selectionImage.setUrl(url);
+            this.selectionImage.setSize(nOuterWidth, nOuterHeight);
+        }
 
-                // don't drag selection out of the canvas borders
-                if (this.nInnerX < 0) this.nInnerX = 0;
-                if (this.nInnerY < 0) this.nInnerY = 0;
-                if (this.nInnerX + this.nInnerWidth > this.nOuterWidth) this.nInnerX = this.nOuterWidth - this.nInnerWidth;
-                if (this.nInnerY + this.nInnerHeight > this.nOuterHeight) this.nInnerY = this.nOuterHeight - this.nInnerHeight;
+        if (previous != next) previous.removeFromParent();
+        this.shownImage = next;
 
-                elH.getStyle().setLeft(this.nInnerX, Unit.PX);
-                elH.getStyle().setTop(this.nInnerY, Unit.PX);
+        this.renderSelection();
+        this.initPreviewWidget(url);
+    }
 
-                elS = this.selectionContainer.getElement();
-                elS.getStyle().setLeft(this.nInnerX - SELECTION_BORDER_SIZE, Unit.PX);
-                elS.getStyle().setTop(this.nInnerY - SELECTION_BORDER_SIZE, Unit.PX);
+    private static native int getNaturalWidth(Element image) /*-{
+        return image.naturalWidth || image.width;
+    }-*/;
 
-                elImg = ((Image) this.selectionContainer.getWidget(0)).getElement();
-                elImg.getStyle().setLeft(-this.nInnerX, Unit.PX);
-                elImg.getStyle().setTop(-this.nInnerY, Unit.PX);
-                break;
+    private static native int getNaturalHeight(Element image) /*-{
+        return image.naturalHeight || image.height;
+    }-*/;
 
+    /**
+     * Builds the viewport of the zoomable cropper with the whole image in it.
+     */
+    private void buildZoomableCanvas() {
 
-            case Constants.DRAG_TOP_LEFT_CORNER:
+        this.isCanvasBuilt = true;
 
-                if (initX == -1) {
-                    initX = _container.getWidgetLeft(this.handlesContainer);
-                    initW = nInnerWidth;
-                }
-                if (initY == -1) {
-                    initY = _container.getWidgetTop(this.handlesContainer);
-                    initH = nInnerHeight;
+        if (this.nOuterWidth == -1 && this.nOuterHeight == -1) {
+            this.nOuterWidth = Math.min(DEFAULT_ZOOMABLE_WIDTH, this.originalWidth);
+        }
+        this.computeCanvasSize(this.originalWidth, this.originalHeight);
+        this.resize(nOuterWidth, nOuterHeight);
+
+        _container.setWidth(nOuterWidth + "px");
+        _container.setHeight(nOuterHeight + "px");
+        _container.getElement().getStyle().setOverflow(Overflow.HIDDEN);
+
+        this.viewport.build(nOuterWidth, nOuterHeight, this.originalWidth, this.originalHeight)
+                .setAttribute(ACTION_ATTRIBUTE, String.valueOf(Constants.DRAG_PAN));
+        this.applyZoom();
+
+        final AbsolutePanel zoomedImage = this.viewport.getZoomedImage();
+        if (this.isPointerInput) {
+            zoomedImage.getElement().getStyle().setProperty("touchAction", "none");
+        } else {
+            // one listener for the image and all the handles
+            zoomedImage.addDomHandler(new MouseDownHandler() {
+
+                public void onMouseDown(MouseDownEvent event) {
+                    event.preventDefault();
+                    startDragging(event.getNativeEvent().getEventTarget());
                 }
-                futureWidth = initW + (initX - cursorX);
-                futureHeight = initH + (initY - cursorY);
+            }, MouseDownEvent.getType());
+            zoomedImage.addDomHandler(new TouchStartHandler() {
 
-                if (futureWidth < this.MIN_WIDTH || futureHeight < this.MIN_HEIGHT) {
-                    return;
+                public void onTouchStart(TouchStartEvent event) {
+                    startDragging(event.getNativeEvent().getEventTarget());
                 }
+            }, TouchStartEvent.getType());
+        }
 
-                this.nInnerWidth = futureWidth;
-                this.nInnerHeight = futureHeight;
+        zoomedImage.addDomHandler(new MouseWheelHandler() {
 
-                this.nInnerX = cursorX;
-                this.nInnerY = cursorY;
+            public void onMouseWheel(MouseWheelEvent event) {
+                if (event.getDeltaY() == 0) return;
 
-                // compensation for specified aspect ratio
-                if (this.aspectRatio != 0) {
-                    if (abs(this.initX - this.nInnerX) > abs(this.initY - this.nInnerY)) {
-                        int newHeight = (int) (this.nInnerWidth / this.aspectRatio);
-                        this.nInnerY -= newHeight - this.nInnerHeight;
+                event.preventDefault();
+                final double zoom = viewport.getZoom();
+                zoomAt(event.getDeltaY() < 0 ? zoom * ZoomableViewport.ZOOM_STEP : zoom / ZoomableViewport.ZOOM_STEP,
+                        event.getRelativeX(_container.getElement()), event.getRelativeY(_container.getElement()));
+            }
+        }, MouseWheelEvent.getType());
 
-                        // to prevent resizing out of the canvas on the Y axes
-                        if (this.nInnerY <= 0) {
-                            this.nInnerY = 0;
-                            newHeight = this.initY + this.initH;
-                            this.nInnerWidth = (int) (newHeight * this.aspectRatio);
-                            this.nInnerX = this.initX - (int) (this.initY * this.aspectRatio);
-                        }
+        this._container.add(zoomedImage, 0, 0);
 
-                        this.nInnerHeight = newHeight;
-                    }
-                    else {
-                        int newWidth = (int) (this.nInnerHeight * this.aspectRatio);
-                        this.nInnerX -= newWidth - this.nInnerWidth;
-
-                        // to prevent resizing out of the canvas on the X axis
-                        if (this.nInnerX < 0) {
-                            this.nInnerX = 0;
-                            newWidth = this.initX + this.initW;
-                            this.nInnerHeight = (int) (newWidth / this.aspectRatio);
-                            this.nInnerY = this.initY - (int) (this.initX / this.aspectRatio);
-                        }
-
-                        this.nInnerWidth = newWidth;
-                    }
-                }
+        this.validateInitialData(this.selection.getCanvasWidth(), this.selection.getCanvasHeight());
+        this.viewport.storeFullSelection();
+        this.addSelectionLayers(zoomedImage, null);
+        this.viewport.setPan(0, 0);
+        this.initZoomablePreview();
+    }
+
+    /**
+     * Changes the zoom, keeping the given point of the viewport on the same place of the image.
+     *
+     * @param newZoom requested zoom
+     * @param anchorX X coordinate in the viewport
+     * @param anchorY Y coordinate in the viewport
+     */
+    private void zoomAt(double newZoom, int anchorX, int anchorY) {
+
+        if (null == this.viewport || !this.viewport.isZoomChanged(newZoom)) return;
+
+        this.resetDraggingState();
+
+        this.viewport.zoomAt(newZoom, anchorX, anchorY);
+        this.applyZoom();
+        this.renderSelection();
+        this.initZoomablePreview();
+    }
+
+    /**
+     * @return <code>true</code> if the selection is taken from the full resolution rectangle of the zoomable mode
+     */
+    private boolean isFullSelectionKept() {
+        return null != this.viewport && this.viewport.isFullSelectionKept();
+    }
+
+    /**
+     * Takes the zoom to the proportion between the original image and the zoomed one.
+     */
+    private void applyZoom() {
+        this.proportion = 1 / this.viewport.getZoom();
+        this.verticalProportion = this.proportion;
+    }
 
-                elH = this.handlesContainer.getElement();
+    /**
+     * Shows the whole image in the preview widgets; the selection is given in px of the zoomed image.
+     */
+    private void initZoomablePreview() {
 
-                elH.getStyle().setLeft(this.nInnerX, Unit.PX);
-                elH.getStyle().setTop(this.nInnerY, Unit.PX);
-                elH.getStyle().setWidth(nInnerWidth, Unit.PX);
-                elH.getStyle().setHeight(nInnerHeight, Unit.PX);
+        previewUpdater.init(this.imageURL, this.selection.getCanvasWidth(), this.selection.getCanvasHeight(),
+                selection.getAspectRatio());
+        publishSelection();
+    }
+
+    /**
+     * <p>Computes the canvas size and the proportion between the original image and the canvas.</p>
+     *
+     * <p>If the original size was given with {@link #setOriginalSize(int, int)}, the loaded image is
+     * a proxy and only its display size matters; otherwise the loaded image is the original.</p>
+     *
+     * @param imageWidth width of the loaded image
+     * @param imageHeight height of the loaded image
+     */
+    void computeCanvasSize(int imageWidth, int imageHeight) {
 
-                elS = this.selectionContainer.getElement();
-                elS.getStyle().setLeft(this.nInnerX - SELECTION_BORDER_SIZE, Unit.PX);
-                elS.getStyle().setTop(this.nInnerY - SELECTION_BORDER_SIZE, Unit.PX);
-                elS.getStyle().setWidth(nInnerWidth, Unit.PX);
-                elS.getStyle().setHeight(nInnerHeight, Unit.PX);
+        final int sourceWidth = (this.originalWidth > 0) ? this.originalWidth : imageWidth;
+        final int sourceHeight = (this.originalHeight > 0) ? this.originalHeight : imageHeight;
 
-                elImg = ((Image) this.selectionContainer.getWidget(0)).getElement();
-                elImg.getStyle().setLeft(-this.nInnerX, Unit.PX);
-                elImg.getStyle().setTop(-this.nInnerY, Unit.PX);
+        if (nOuterWidth != -1 || nOuterHeight != -1) {
 
-                Element el3 = this.draggableBackground.getElement();
-                el3.getStyle().setWidth(nInnerWidth, Unit.PX);
-                el3.getStyle().setHeight(nInnerHeight, Unit.PX);
-                break;
+            // scale canvas in case if width/height was specified explicitly
+            imageAspectRatio = (double) sourceWidth / sourceHeight;
+            if (nOuterWidth == -1) nOuterWidth = (int) (nOuterHeight * imageAspectRatio);
+            if (nOuterHeight == -1) nOuterHeight = (int) (nOuterWidth / imageAspectRatio);
+        } else {
+            nOuterWidth = imageWidth;
+            nOuterHeight = imageHeight;
+        }
 
+        proportion = (double) sourceWidth / nOuterWidth;
+        verticalProportion = (double) sourceHeight / nOuterHeight;
+    }
 
-            case Constants.DRAG_TOP_RIGHT_CORNER:
+    /**
+     * <p>Computes the canvas size of the progressive cropper, when a version of the image is loaded.</p>
+     *
+     * <p>A smaller version can't give the proportion to the original image: the canvas is computed for the
+     * original size, if it was given with {@link #setOriginalSize(int, int)}, otherwise the image itself is
+     * waited for.</p>
+     *
+     * @param imageWidth width of the loaded version
+     * @param imageHeight height of the loaded version
+     * @param isLastTier <code>true</code> if the loaded version is the image itself
+     * @return <code>false</code> if the canvas size is not known yet
+     */
+    boolean computeTierCanvasSize(int imageWidth, int imageHeight, boolean isLastTier) {
 
-                if (initX == -1) {
-                    initX = _container.getWidgetLeft(this.handlesContainer) + nInnerWidth;
-                    initW = nInnerWidth;
-                }
-                if (initY == -1) {
-                    initY = _container.getWidgetTop(this.handlesContainer);
-                    initH = nInnerHeight;
-                }
+        if (isLastTier) {
+            computeCanvasSize(imageWidth, imageHeight);
+            return true;
+        }
 
-                futureWidth = initW + (cursorX - initX);
-                futureHeight = initH + (initY - cursorY);
+        if (this.originalWidth <= 0 || this.originalHeight <= 0) return false;
 
-                if (futureWidth < this.MIN_WIDTH || futureHeight < this.MIN_HEIGHT) {
-                    return;
-                }
+        // the smaller version is stretched to the canvas
+        computeCanvasSize(this.originalWidth, this.originalHeight);
+        return true;
+    }
 
-                nInnerWidth = futureWidth;
-                nInnerHeight = futureHeight;
+    /**
+     * Adds initial selection
+     *
+     */
+    private void addSelection(final String src) {
 
-                // compensation for specified aspect ratio
-                if (this.aspectRatio != 0) {
-                    if (abs(initX - cursorX) > abs(initY - cursorY)) {
-                        // move cursor right, top side has been adjusted automatically
+        this.validateInitialData();
+        this.addSelectionLayers(this._container, src);
+    }
 
-                        int newHeight = (int) (nInnerWidth / this.aspectRatio);
-                        cursorY -= newHeight - nInnerHeight;
+    /**
+     * Adds the layers of the selection and its handles.
+     *
+     * @param parent panel of the canvas image
+     * @param src image URL to draw inside the selection; <code>null</code> in the zoomable mode, where the tiles are
+     *            seen through the selection and the area around it is dimmed with a shadow
+     */
+    private void addSelectionLayers(AbsolutePanel parent, String src) {
 
-                        // to prevent resizing out of the canvas on the Y axes
-                        if (cursorY <= 0) {
-                            cursorY = 0;
-                            newHeight = this.initY + this.initH;
-                            this.nInnerWidth = (int) (newHeight * this.aspectRatio);
-                        }
+        selectionContainer.addStyleName(this.bundleResources.css().selection());
 
-                        nInnerHeight = newHeight;
-                    }
-                    else {
-                        // move cursor up, right side has been adjusted automatically
-
-                        nInnerWidth = (int) (nInnerHeight * this.aspectRatio);
-
-                        // to prevent resizing out of the canvas on the X axis
-                        if ((this.nInnerWidth + this.nInnerX) >= this.nOuterWidth) {
-                            this.nInnerWidth = this.nOuterWidth - this.nInnerX;
-                            this.nInnerHeight = (int) (this.nInnerWidth / this.aspectRatio);
-                            this.nInnerY = this.initY - (int) ((this.nOuterWidth - this.nInnerX - this.initW) / this.aspectRatio);
-                            cursorY = this.nInnerY;
-                        }
-                    }
-                }
+        selectionContainer.setWidth(this.selection.getWidth() + "px");
+        selectionContainer.setHeight(this.selection.getHeight() + "px");
+
+        final int x = this.selection.getX();
+        final int y = this.selection.getY();
+
+        final ImageLayer image;
+        if (null != src) {
+            // draw the same image inside the selection, without decoding it once again
+            image = this.selectionImage;
+            image.attach(selectionContainer.getElement(), src);
+            image.setSize(nOuterWidth, nOuterHeight);
+            image.setOffset(-x, -y);
+        } else {
+            image = null;
+            selectionContainer.getElement().getStyle().setProperty("boxShadow", "0 0 0 " + DIMMING_SHADOW + "px " + DIMMING_COLOR);
+        }
 
-                this.nInnerY = cursorY;
+        parent.add(selectionContainer, x - SELECTION_BORDER_SIZE, y - SELECTION_BORDER_SIZE);
+
+        this.buildSelectionArea();
 
-                elH = this.handlesContainer.getElement();
+        parent.add(this.handlesContainer, x, y);
 
-                elH.getStyle().setTop(nInnerY, Unit.PX);
-                elH.getStyle().setWidth(nInnerWidth, Unit.PX);
-                elH.getStyle().setHeight(nInnerHeight, Unit.PX);
+        this.renderer.attach(this.handlesContainer.getElement(), selectionContainer.getElement(),
+                image, this.draggableBackground, SELECTION_BORDER_SIZE);
+        this.renderSelection();
+    }
+
+    /**
+     * Replaces the canvas image with the HTML5 canvas, where the image, the selection and handles
+     * are drawn together.
+     *
+     * @param image loaded canvas image
+     */
+    private void addCanvasSelection(Image image) {
 
-                elS = this.selectionContainer.getElement();
-                elS.getStyle().setTop(nInnerY - SELECTION_BORDER_SIZE, Unit.PX);
-                elS.getStyle().setWidth(nInnerWidth, Unit.PX);
-                elS.getStyle().setHeight(nInnerHeight, Unit.PX);
+        this.validateInitialData();
 
-                elImg = ((Image) this.selectionContainer.getWidget(0)).getElement();
-                elImg.getStyle().setTop(-nInnerY, Unit.PX);
+        final int naturalWidth = getNaturalWidth(image.getElement());
+        final int naturalHeight = getNaturalHeight(image.getElement());
 
-                el3 = this.draggableBackground.getElement();
-                el3.getStyle().setWidth(nInnerWidth, Unit.PX);
-                el3.getStyle().setHeight(nInnerHeight, Unit.PX);
-                break;
+        // the image is drawn on the canvas; it stays hidden in the DOM, because it could still be loading
+        image.setVisible(false);
 
+        final Canvas canvas = Canvas.createIfSupported();
+        canvas.setCoordinateSpaceWidth(nOuterWidth);
+        canvas.setCoordinateSpaceHeight(nOuterHeight);
+        canvas.setPixelSize(nOuterWidth, nOuterHeight);
 
-            case Constants.DRAG_BOTTOM_LEFT_CORNER:
+        if (this.isPointerInput) {
+            // the browser shouldn't scroll the page, when the selection is dragged with a finger
+            canvas.getElement().getStyle().setProperty("touchAction", "none");
+        } else {
+            canvas.addMouseDownHandler(new MouseDownHandler() {
 
-                if (initX == -1) {
-                    initX = _container.getWidgetLeft(this.handlesContainer);
-                    initW = nInnerWidth;
+                public void onMouseDown(MouseDownEvent event) {
+                    event.preventDefault();
+                    startCanvasDragging(event.getRelativeX(canvas.getElement()), event.getRelativeY(canvas.getElement()));
                 }
-                if (initY == -1) {
-                    initY = _container.getWidgetTop(this.handlesContainer) + nInnerHeight;
-                    initH = nInnerHeight;
+            });
+            canvas.addTouchStartHandler(new TouchStartHandler() {
+
+                public void onTouchStart(TouchStartEvent event) {
+                    JsArray<Touch> touches = event.getTouches();
+                    if (touches.length() > 0) {
+                        startCanvasDragging(touches.get(0).getRelativeX(canvas.getElement()),
+                                touches.get(0).getRelativeY(canvas.getElement()));
+                    }
                 }
+            });
+        }
 
-                futureWidth = initW + (initX - cursorX);
-                futureHeight = initH + (cursorY - initY);
+        this._container.add(canvas, 0, 0);
 
-                if (futureWidth < this.MIN_WIDTH || futureHeight < this.MIN_HEIGHT) {
-                    return;
-                }
+        this.canvas = canvas;
+        this.canvasRenderer = new CanvasRenderer(canvas.getContext2d(), ImageElement.as(image.getElement()),
+                naturalWidth, naturalHeight, nOuterWidth, nOuterHeight, HANDLE_SIZE, SELECTION_BORDER_SIZE, this.handleSet);
+        this.renderSelection();
+    }
 
-                nInnerWidth = futureWidth;
-                nInnerHeight = futureHeight;
+    /**
+     * Starts dragging on the canvas. The action depends on the selection part under the cursor.
+     *
+     * @param x - cursor X-position relatively the canvas
+     * @param y - cursor Y-position relatively the canvas
+     */
+    private void startCanvasDragging(int x, int y) {
+        this.action = this.selection.getActionAt(x, y, HANDLE_SIZE, this.handleSet);
+        this.isDown = (this.action != Constants.DRAG_NONE);
+    }
 
-                // compensation for specified aspect ratio
-                if (this.aspectRatio != 0) {
-                    if (abs(initX - cursorX) > abs(initY - cursorY)) {
-                        // cursor goes left, bottom side goes down...
+    /**
+     * Shows the cursor, that corresponds to the selection part under the mouse.
+     *
+     * @param x - cursor X-position relatively the canvas
+     * @param y - cursor Y-position relatively the canvas
+     */
+    private void updateCanvasCursor(int x, int y) {
 
-                        nInnerHeight = (int) (nInnerWidth / this.aspectRatio);
+        final byte hoverAction = this.selection.getActionAt(x, y, HANDLE_SIZE, this.handleSet);
+        if (hoverAction == this.canvasCursorAction) return;
 
-                        // to prevent resizing out of the canvas on the Y axis
-                        if ((this.nInnerHeight + this.nInnerY) >= this.nOuterHeight) {
-                            this.nInnerHeight = this.nOuterHeight - this.nInnerY;
-                            this.nInnerWidth = (int) (this.nInnerHeight * this.aspectRatio);
-                            this.nInnerY = this.nOuterHeight - this.nInnerHeight;
-                            cursorX = this.initX - (int) ((this.nOuterHeight - this.initY) * this.aspectRatio);
-                        }
+        this.canvasCursorAction = hoverAction;
+        this.canvas.getElement().getStyle().setCursor(getCursor(hoverAction));
+    }
 
-                    }
-                    else {
-                        // cursor goes down, left side goes to left
+    /**
+     * Starts dragging with the handle, that was pressed.
+     *
+     * @param target event target
+     */
+    private void startDragging(EventTarget target) {
 
-                        int newWidth = (int) (nInnerHeight * this.aspectRatio);
-                        cursorX -= newWidth - nInnerWidth;
+        if (!Element.is(target)) return;
 
-                        // to prevent resizing out of the canvas on the X axis
-                        if (cursorX <= 0) {
-                            newWidth = this.nInnerWidth + this.initX;
-                            this.nInnerHeight = (int) (newWidth / this.aspectRatio);
-                            cursorX = 0;
-                        }
+        final byte targetAction = this.getAction(Element.as(target));
+        if (targetAction == Constants.DRAG_NONE) return;
 
-                        nInnerWidth = newWidth;
-                    }
-                }
+        this.action = targetAction;
+        this.isDown = true;
+    }
 
-                this.nInnerX = cursorX;
+    /**
+     * Finds the dragging action of the handle, that contains the given element.
+     *
+     * @param target element under the cursor
+     * @return action type or {@link Constants#DRAG_NONE} if the element is not a part of a handle
+     */
+    private byte getAction(Element target) {
 
-                elH = this.handlesContainer.getElement();
+        final Element root = this.getElement();
+        for (Element e = target; null != e && e != root; e = e.getParentElement()) {
+            final String value = e.getAttribute(ACTION_ATTRIBUTE);
+            if (null != value && !value.isEmpty()) return Byte.parseByte(value);
+        }
+        return Constants.DRAG_NONE;
+    }
 
-                elH.getStyle().setLeft(nInnerX, Unit.PX);
-                elH.getStyle().setWidth(nInnerWidth, Unit.PX);
-                elH.getStyle().setHeight(nInnerHeight, Unit.PX);
+    /**
+     * Returns the CSS cursor for the dragging action
+     *
+     * @param actionType action type
+     * @return cursor
+     */
+    private static Cursor getCursor(byte actionType) {
+        switch (actionType) {
+            case Constants.DRAG_BACKGROUND: return Cursor.MOVE;
+            case Constants.DRAG_TOP_LEFT_CORNER: return Cursor.NW_RESIZE;
+            case Constants.DRAG_TOP_RIGHT_CORNER: return Cursor.NE_RESIZE;
+            case Constants.DRAG_BOTTOM_LEFT_CORNER: return Cursor.SW_RESIZE;
+            case Constants.DRAG_BOTTOM_RIGHT_CORNER: return Cursor.SE_RESIZE;
+            case Constants.DRAG_TOP_EDGE: return Cursor.N_RESIZE;
+            case Constants.DRAG_RIGHT_EDGE: return Cursor.E_RESIZE;
+            case Constants.DRAG_BOTTOM_EDGE: return Cursor.S_RESIZE;
+            case Constants.DRAG_LEFT_EDGE: return Cursor.W_RESIZE;
+            default: return Cursor.DEFAULT;
+        }
+    }
 
-                elS = this.selectionContainer.getElement();
-                elS.getStyle().setLeft(nInnerX - SELECTION_BORDER_SIZE, Unit.PX);
-                elS.getStyle().setWidth(nInnerWidth, Unit.PX);
-                elS.getStyle().setHeight(nInnerHeight, Unit.PX);
+    /**
+     * Selects the most detailed area of the loaded image, if the automatic initial selection is enabled
+     * and the selection wasn't given or changed yet.
+     *
+     * @param image loaded canvas image
+     * @return <code>true</code> if the selection is changed
+     */
+    private boolean applySmartSelection(Image image) {
+
+        if (!this.isSmartSelection || !this.isSmartSelectionPending || this.isDown || null != this.viewport) return false;
+
+        this.isSmartSelectionPending = false;
+        return SmartSelection.apply(ImageElement.as(image.getElement()), nOuterWidth, nOuterHeight, this.selection);
+    }
 
-                elImg = ((Image) this.selectionContainer.getWidget(0)).getElement();
-                elImg.getStyle().setLeft(-nInnerX, Unit.PX);
+    /**
+     * Validates all initial data. This method is called after the canvas image becomes loaded and we know, what are its actual
+     * dimensions. If any of data are incorrect, then set the default values.
+     */
+    private void validateInitialData() {
+        this.validateInitialData(this.nOuterWidth, this.nOuterHeight);
+    }
 
-                el3 = this.draggableBackground.getElement();
-                el3.getStyle().setWidth(nInnerWidth, Unit.PX);
-                el3.getStyle().setHeight(nInnerHeight, Unit.PX);
-                break;
+    /**
+     * Validates the selection against the canvas of the given size.
+     *
+     * @param nOuterWidth canvas width
+     * @param nOuterHeight canvas height
+     */
+    private void validateInitialData(int nOuterWidth, int nOuterHeight) {
 
+        final SelectionModel s = this.selection;
+        s.setCanvasSize(nOuterWidth, nOuterHeight);
 
-            case Constants.DRAG_BOTTOM_RIGHT_CORNER:
+        final boolean isDefaultWidth = s.getX() == -1 && s.getWidth() == -1;
+        final boolean isInvalidWidthAndX = nOuterWidth < (s.getX() + s.getWidth());
 
-                if (initX == -1) {
-                    initX = _container.getWidgetLeft(this.handlesContainer) + nInnerWidth;
-                    initW = nInnerWidth;
+        if (isDefaultWidth || isInvalidWidthAndX) {
+            s.setX((int) (nOuterWidth * 0.2));
+            s.setWidth((int) (nOuterWidth * 0.2));
+        }
+
+        // minimal width couldn't be more, than initial selection.
+        if (s.getMinimalWidth() > s.getWidth()) s.setMinimalSize(this.HANDLE_SIZE, s.getMinimalHeight());
+
+        final boolean isDefaultHeight = s.getY() == -1 && s.getHeight() == -1;
+        final boolean isInvalidHeightY = nOuterHeight < (s.getY() + s.getHeight());
+
+        if (isDefaultHeight || isInvalidHeightY) {
+            final double aspectRatio = s.getAspectRatio();
+            s.setY((int) (nOuterHeight * 0.2));
+            s.setHeight((int) ( (aspectRatio == 0) ? (nOuterHeight * 0.2) : (s.getWidth() / aspectRatio) ));
+        }
+
+        // minimal height couldn't be more, than initial selection.
+        if (s.getMinimalHeight() > s.getHeight()) s.setMinimalSize(s.getMinimalWidth(), this.HANDLE_SIZE);
+    }
+
+    /**
+     * Add special handles. User can drag these handle and change form of the selected area
+     *
+     * @return container with handles and needed attached event listeners
+     */
+    private AbsolutePanel buildSelectionArea() {
+
+        // add selection handles
+        this.handlesContainer = new AbsolutePanel();
+
+        this.handlesContainer.setWidth(this.selection.getWidth() + "px");
+        this.handlesContainer.setHeight(this.selection.getHeight() + "px");
+
+        this.handlesContainer.setStyleName(this.bundleResources.css().handlesContainer());
+        this.handlesContainer.getElement().getStyle().setOverflow(Overflow.VISIBLE);
+
+        if (this.isPointerInput) {
+            // the browser shouldn't scroll the page, when the selection is dragged with a finger
+            this.handlesContainer.getElement().getStyle().setProperty("touchAction", "none");
+        } else if (null == this.viewport) {
+            // one listener for all the handles (in the zoomable mode the zoomed image listens for them), the action is taken from the handle under the cursor
+            this.handlesContainer.addDomHandler(new MouseDownHandler() {
+
+                public void onMouseDown(MouseDownEvent event) {
+                    startDragging(event.getNativeEvent().getEventTarget());
                 }
-                if (initY == -1) {
-                    initY = _container.getWidgetTop(this.handlesContainer) + nInnerHeight;
-                    initH = nInnerHeight;
+            }, MouseDownEvent.getType());
+            this.handlesContainer.addDomHandler(new TouchStartHandler() {
+
+                public void onTouchStart(TouchStartEvent event) {
+                    startDragging(event.getNativeEvent().getEventTarget());
                 }
+            }, TouchStartEvent.getType());
+        }
 
-                futureWidth = initW + (cursorX - initX);
-                futureHeight = initH + (cursorY - initY);
+        // append background
+        this.draggableBackground = this.appendDraggableBackground();
 
-                if (futureWidth < this.MIN_WIDTH || futureHeight < this.MIN_HEIGHT) {
-                    return;
-                }
+        // find the center of draggable handle to make an offset for the positioning
+        final int h = this.HANDLE_SIZE / 2;
 
-                nInnerWidth = futureWidth;
-                nInnerHeight = futureHeight;
+        /*
+            1px and 2px below are correction because of 1px border.
+            We need to position handle exactly on the center of the selection corner.
+        */
 
-                // compensation for specified aspect ratio
-                if (this.aspectRatio != 0) {
-                    if (abs(initX - cursorX) > abs(initY - cursorY)) {
-                        // cursor goes right, bottom side goes down...
+        if (this.handleSet.hasCorners()) {
 
-                        nInnerHeight = (int) (nInnerWidth / this.aspectRatio);
+            // append top left corner handler.
+            this.appendHandle(Cursor.NW_RESIZE, Constants.DRAG_TOP_LEFT_CORNER, -h, 0, 0, -(h + 1));
 
-                        // to prevent resizing out of the canvas on the Y axis
-                        if ((this.nInnerHeight + this.nInnerY) >= this.nOuterHeight) {
-                            this.nInnerHeight = this.nOuterHeight - this.nInnerY;
-                            this.nInnerWidth = (int) (this.nInnerHeight * this.aspectRatio);
-                            this.nInnerY = this.nOuterHeight - this.nInnerHeight;
-                            cursorX = this.nOuterWidth;
-                        }
+            // append top right corner handler
+            this.appendHandle(Cursor.NE_RESIZE, Constants.DRAG_TOP_RIGHT_CORNER, -h, -(h + 2), 0, 0);
 
-                    }
-                    else {
-                        // cursor goes down, right side goes to right
-                        nInnerWidth = (int) (nInnerHeight * this.aspectRatio);
-
-                        // to prevent resizing out of the canvas on the X axis
-                        if (this.nInnerWidth + this.nInnerX >= this.nOuterWidth) {
-                            this.nInnerWidth = this.nOuterWidth - this.nInnerX;
-                            this.nInnerHeight = (int) (this.nInnerWidth / this.aspectRatio);
-                            cursorX = this.nOuterHeight;
-                        }
-                    }
-                }
+            // append bottom left corner handler
+            this.appendHandle(Cursor.SW_RESIZE, Constants.DRAG_BOTTOM_LEFT_CORNER, 0, 0, -(h + 2), -(h + 1));
 
-                elH = this.handlesContainer.getElement();
-                elH.getStyle().setWidth(nInnerWidth, Unit.PX);
-                elH.getStyle().setHeight(nInnerHeight, Unit.PX);
+            // append bottom right corner handler
+            this.appendHandle(Cursor.SE_RESIZE, Constants.DRAG_BOTTOM_RIGHT_CORNER, 0, -(h + 2), -(h + 2), 0);
+        }
 
-                elS = this.selectionContainer.getElement();
-                elS.getStyle().setWidth(nInnerWidth, Unit.PX);
-                elS.getStyle().setHeight(nInnerHeight, Unit.PX);
+        if (this.handleSet.hasEdges()) {
 
-                el3 = this.draggableBackground.getElement();
-                el3.getStyle().setWidth(nInnerWidth, Unit.PX);
-                el3.getStyle().setHeight(nInnerHeight, Unit.PX);
-                break;
+            // edge handles are positioned in percents, so they follow the selection without any updates
+            this.appendEdgeHandle(Cursor.N_RESIZE, Constants.DRAG_TOP_EDGE, -h, true);
+            this.appendEdgeHandle(Cursor.E_RESIZE, Constants.DRAG_RIGHT_EDGE, -(h + 2), false);
+            this.appendEdgeHandle(Cursor.S_RESIZE, Constants.DRAG_BOTTOM_EDGE, -(h + 2), true);
+            this.appendEdgeHandle(Cursor.W_RESIZE, Constants.DRAG_LEFT_EDGE, -(h + 1), false);
+        }
 
+        return handlesContainer;
+    }
 
-            default:
-                break;
+    /**
+     * Creates one small draggable selection handle and appends it to the corner of selection area.
+     * User can drag this handle to change shape of the selection area.
+     * The handle is a plain element without listeners: its action is kept in the attribute
+     * and resolved by the single listener of the handles container.
+     *
+     * @param cursor cursor type for the CSS
+     * @param actionType action type for the event processor
+     * @param top  top value in PX
+     * @param right right value in PX
+     * @param bottom bottom value in PX
+     * @param left left value in PX
+     * @return handle element
+     */
+    private Element appendHandle(Cursor cursor, byte actionType, int top, int right, int bottom, int left) {
+
+        final Element handle = Document.get().createDivElement();
+        handle.setClassName(this.bundleResources.css().handle());
+        handle.setAttribute(ACTION_ATTRIBUTE, String.valueOf(actionType));
+
+        final Style style = handle.getStyle();
+        style.setCursor(cursor);
+        if (top != 0) style.setTop(top, Unit.PX);
+        if (right != 0) style.setRight(right, Unit.PX);
+        if (bottom != 0) style.setBottom(bottom, Unit.PX);
+        if (left != 0) style.setLeft(left, Unit.PX);
+
+        this.handlesContainer.getElement().appendChild(handle);
+        return handle;
+    }
+
+    /**
+     * Creates one draggable handle in the middle of the selection side.
+     *
+     * @param cursor cursor type for the CSS
+     * @param actionType one of the edge actions
+     * @param offset offset of the handle from its side in PX
+     * @param isHorizontal <code>true</code> for the top and bottom sides
+     */
+    private void appendEdgeHandle(Cursor cursor, byte actionType, int offset, boolean isHorizontal) {
+
+        final Element handle = this.appendHandle(cursor, actionType,
+                actionType == Constants.DRAG_TOP_EDGE ? offset : 0,
+                actionType == Constants.DRAG_RIGHT_EDGE ? offset : 0,
+                actionType == Constants.DRAG_BOTTOM_EDGE ? offset : 0,
+                actionType == Constants.DRAG_LEFT_EDGE ? offset : 0);
+
+        final Style style = handle.getStyle();
+        final int margin = -(this.HANDLE_SIZE / 2 + 1);
+        if (isHorizontal) {
+            style.setLeft(50, Unit.PCT);
+            style.setMarginLeft(margin, Unit.PX);
+        } else {
+            style.setTop(50, Unit.PCT);
+            style.setMarginTop(margin, Unit.PX);
         }
+    }
+
+    /**
+     * Append draggable background for the selection area
+     */
+    private Element appendDraggableBackground() {
+
+        final Element backgroundHandle = Document.get().createDivElement();
+        backgroundHandle.setClassName(this.bundleResources.css().selectionDraggableBackground());
+        backgroundHandle.setAttribute(ACTION_ATTRIBUTE, String.valueOf(Constants.DRAG_BACKGROUND));
+
+        final Style style = backgroundHandle.getStyle();
+        style.setPosition(Position.ABSOLUTE);
+        style.setLeft(0, Unit.PX);
+        style.setTop(0, Unit.PX);
+        style.setWidth(this.selection.getWidth(), Unit.PX);
+        style.setHeight(this.selection.getHeight(), Unit.PX);
+        style.setCursor(Cursor.MOVE);
+
+        this.handlesContainer.getElement().appendChild(backgroundHandle);
 
+        return backgroundHandle;
     }
 
     /**
-     * Resets all initial values.
+     * provides dragging action
      *
+     * @param cursorX - cursor X-position relatively the canvas
+     * @param cursorY - cursor Y-position relatively the canvas
      */
-    private void reset() {
+    void provideDragging(int cursorX, int cursorY) {
 
-        this.initX = -1;
-        this.initY = -1;
-        this.initW = -1;
-        this.initH = -1;
-        this.offsetX = -1;
-        this.offsetY = -1;
-        this.action = Constants.DRAG_NONE;
+        if (this.action == Constants.DRAG_PAN) {
+            this.viewport.pan(cursorX, cursorY);
+            return;
+        }
+
+        // the zoomed image is moved within the viewport
+        if (null != this.viewport) {
+            cursorX += this.viewport.getPanX();
+            cursorY += this.viewport.getPanY();
+        }
+
+        final double start = this.metrics.start();
+        final boolean isChanged = this.selection.drag(this.action, cursorX, cursorY);
+        this.metrics.geometryDone(start);
+
+        if (!isChanged) {
+            return;
+        }
+
+        if (null != this.viewport) this.viewport.storeFullSelection();
+
+        this.metrics.frame();
+        final double renderStart = this.metrics.start();
+        this.renderSelection();
+        this.metrics.domWritesDone(renderStart);
+    }
+
+    /**
+     * Moves and resizes the selection, handles and the selection background
+     * according to the current selection geometry.
+     */
+    private void renderSelection() {
+
+        if (null != this.canvasRenderer) {
+            this.canvasRenderer.render(this.selection.getX(), this.selection.getY(),
+                    this.selection.getWidth(), this.selection.getHeight());
+            return;
+        }
+
+        this.renderer.render(this.selection.getX(), this.selection.getY(),
+                this.selection.getWidth(), this.selection.getHeight());
     }
 
     /**
-     * Returns absolute value
+     * Resets all initial values.
      *
-     * @param value
-     * @return absolute value
      */
-    private int abs(int value) {
-        return value >= 0 ? value : -value;
+    private void reset() {
+
+        this.selection.reset();
+        this.action = Constants.DRAG_NONE;
+        if (null != this.viewport) this.viewport.stopPanning();
     }
 
     // DOM HANDLERS
@@ -1028,32 +2137,88 @@ public class GWTCropper extends HTMLPanel implements MouseMoveHandler, MouseUpHa
 
         if (this.isDown) {
 
-            this.provideDragging(event.getRelativeX(this._container.getElement()),
+            this.metrics.inputEvent();
+            this.scheduleDragging(event.getRelativeX(this._container.getElement()),
                     event.getRelativeY(this._container.getElement()));
+        }
+        else if (null != this.canvasRenderer) {
+            this.updateCanvasCursor(event.getRelativeX(this._container.getElement()),
+                    event.getRelativeY(this._container.getElement()));
+        }
+    }
 
-            this.updatePreviewWidget();
+    /**
+     * Provides dragging for the given cursor position. If the frame coalescing is enabled, then
+     * the position is only remembered and will be applied on the next animation frame.
+     *
+     * @param cursorX - cursor X-position relatively the canvas
+     * @param cursorY - cursor Y-position relatively the canvas
+     */
+    private void scheduleDragging(int cursorX, int cursorY) {
+
+        if (!this.isFrameCoalescing) {
+            this.provideDragging(cursorX, cursorY);
+            this.publishSelection();
+            return;
+        }
+
+        this.pendingX = cursorX;
+        this.pendingY = cursorY;
+
+        if (null == this.pendingFrame) {
+            this.pendingFrame = AnimationScheduler.get().requestAnimationFrame(this.frameCallback);
+        }
+    }
+
+    /**
+     * Applies the dragging, that is waiting for the next animation frame, right now.
+     */
+    private void flushPendingDragging() {
+        if (null != this.pendingFrame) {
+            this.cancelPendingDragging();
+            this.provideDragging(this.pendingX, this.pendingY);
+            this.publishSelection();
         }
     }
 
     /**
-     * Update preview widget if needed.
+     * Drops the dragging, that is waiting for the next animation frame.
      */
-    private void updatePreviewWidget() {
-        if (previewWidget != null) {
-            previewWidget.updatePreview(
-                    (int) (this.getSelectionWidth() / proportion),
-                    (int) (this.getSelectionHeight() / proportion),
-                    (int) (this.getSelectionXCoordinate() / proportion),
-                    (int) (this.getSelectionYCoordinate() / proportion));
+    private void cancelPendingDragging() {
+        if (null != this.pendingFrame) {
+            this.pendingFrame.cancel();
+            this.pendingFrame = null;
         }
     }
 
+    /**
+     * Passes the current selection to the preview widgets and the selection change handlers.
+     */
+    private void publishSelection() {
+
+        final double start = this.metrics.start();
+        final int x = this.getSelectionXCoordinate();
+        final int y = this.getSelectionYCoordinate();
+        final int width = this.getSelectionWidth();
+        final int height = this.getSelectionHeight();
+
+        previewUpdater.update(
+                (int) (width / proportion),
+                (int) (height / verticalProportion),
+                (int) (x / proportion),
+                (int) (y / verticalProportion));
+
+        selectionChangeDispatcher.update(x, y, width, height);
+        this.metrics.previewDone(start);
+    }
+
     /**
      * {@inheritDoc}
      */
     public void onTouchMove(TouchMoveEvent event) {
         if (this.isDown) {
 
+            this.metrics.inputEvent();
             JsArray<Touch> touches = event.getTouches();
             if (touches.length() > 0) {
 
@@ -1075,7 +2240,7 @@ public class GWTCropper extends HTMLPanel implements MouseMoveHandler, MouseUpHa
                     if (y > nOuterHeight) y = nOuterHeight;
                 }
 
-                this.provideDragging(x, y);
+                this.scheduleDragging(x, y);
             }
 
         }
@@ -1087,6 +2252,10 @@ public class GWTCropper extends HTMLPanel implements MouseMoveHandler, MouseUpHa
      */
     private void resetDraggingState() {
         if (this.isDown) {
+            this.flushPendingDragging();
+            this.previewUpdater.flush();
+            this.selectionChangeDispatcher.draggingFinished();
+            this.metrics.draggingFinished();
             this.isDown = false;
             this.reset();
         }
@@ -1111,6 +2280,8 @@ public class GWTCropper extends HTMLPanel implements MouseMoveHandler, MouseUpHa
          *
          * @see Issue 12.
          */
+        this.cancelPendingDragging();
+
         int x = event.getRelativeX(this._container.getElement());
         int y = event.getRelativeY(this._container.getElement());
 
@@ -1122,6 +2293,10 @@ public class GWTCropper extends HTMLPanel implements MouseMoveHandler, MouseUpHa
 
         this.provideDragging(x, y);
 
+        // the snapped selection is passed to the preview widgets and the handlers before dragging is finished;
+        // a plain hover out changes nothing, and the selection could be not ready yet
+        if (this.isDown) this.publishSelection();
+
         /*
          * if cursor is out of canvas and the mouse button is pressed,
          * then we want to "unclick" the mouse button programmatically.
@@ -0,0 +1,93 @@
+package com.google.code.gwt.crop.client;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * <p>Small pool of the cropper widgets for the list views, that show many images one after another.</p>
+ *
+ * <p>Instead of building a new cropper for every image, a list takes a cropper from the pool and returns
+ * it back, when the row is gone. The returned cropper keeps its canvas, selection layers, handles and
+ * listeners, and only the image is replaced with {@link GWTCropper#setImageURL(String, boolean)}.</p>
+ *
+ * <p>Settings of a cropper (aspect ratio, size, registered previews and handlers) are kept too, so a pool
+ * should serve the croppers of the same kind.</p>
+ *
+ * <p><i>Usage example:</i>
+ * <pre>
+ * GWTCropperPool pool = new GWTCropperPool(10);
+ *
+ * GWTCropper crop = pool.obtain("image-1.jpg");
+ * row.add(crop);
+ * ...
+ * pool.recycle(crop);
+ * </pre>
+ * </p>
+ *
+ * @author ilja.hamalainen@gmail.com (Ilja Hämäläinen)
+ * @since 0.5.6
+ */
+public class GWTCropperPool {
+
+    private final List<GWTCropper> free = new ArrayList<GWTCropper>();
+    private final int maxSize;
+
+    /**
+     * @param maxSize maximal number of the free croppers, that are kept in the pool
+     */
+    public GWTCropperPool(int maxSize) {
+        this.maxSize = Math.max(0, maxSize);
+    }
+
+    /**
+     * Takes a free cropper from the pool and shows the given image in it with the default selection,
+     * or creates a new cropper, if the pool is empty.
+     *
+     * @param imageURL image URL
+     * @return cropper, that is not attached anywhere
+     */
+    public GWTCropper obtain(String imageURL) {
+
+        if (this.free.isEmpty()) {
+            return this.create(imageURL);
+        }
+
+        final GWTCropper cropper = this.free.remove(this.free.size() - 1);
+        cropper.setImageURL(imageURL, true);
+        return cropper;
+    }
+
+    /**
+     * Detaches the cropper and keeps it for the next {@link #obtain(String)} call. If the pool is full,
+     * the cropper is just detached.
+     *
+     * @param cropper cropper, that is not needed anymore
+     */
+    public void recycle(GWTCropper cropper) {
+
+        if (null == cropper) return;
+        cropper.removeFromParent();
+
+        if (this.free.size() < this.maxSize && !this.free.contains(cropper)) {
+            this.free.add(cropper);
+        }
+    }
+
+    /**
+     * @return number of the free croppers in the pool
+     */
+    public int size() {
+        return this.free.size();
+    }
+
+    /**
+     * Creates a new cropper, when the pool is empty. Could be overridden to configure the croppers,
+     * for example to create lazy ones with {@link GWTCropper#createLazy(String, String...)}.
+     *
+     * @param imageURL image URL
+     * @return new cropper
+     */
+    protected GWTCropper create(String imageURL) {
+        return new GWTCropper(imageURL);
+    }
+}
@@ -1,10 +1,11 @@
 package com.google.code.gwt.crop.client;
 
 import com.google.code.gwt.crop.client.common.Dimension;
+import com.google.code.gwt.crop.client.common.PreviewGeometry;
+import com.google.gwt.core.client.GWT;
 import com.google.gwt.dom.client.Style.Overflow;
 import com.google.gwt.dom.client.Style.Unit;
 import com.google.gwt.uibinder.client.UiConstructor;
-import com.google.gwt.user.client.ui.Image;
 import com.google.gwt.user.client.ui.SimplePanel;
 
 /**
@@ -19,10 +20,6 @@ import com.google.gwt.user.client.ui.SimplePanel;
  */
 public class GWTCropperPreview extends SimplePanel implements IGWTCropperPreview {
 
-    /**Because crop image can be scaled. We have to remember its width and height
-     * to future recounting */
-    private int imageW, imageH;
-    
     private int cropCanvasWidth; 
     private int cropCanvasHeight;
 
@@ -30,13 +27,14 @@ public class GWTCropperPreview extends SimplePanel implements IGWTCropperPreview
     private int width = 0;
     private int height = 0;
 
-    private Image embeddedImage;
+    private final ImageLayer embeddedImage = GWT.create(ImageLayer.class);
 
     private final Dimension fixedSide;
     private final int fixedValue;
-    private double proportion;
     private boolean isSquare = false;
 
+    private final PreviewGeometry geometry = new PreviewGeometry();
+
     /**
      * <p>Initiates the preview widget, that shows only selected area (i.e. "cropping preview").</p>
      *
@@ -94,11 +92,9 @@ public class GWTCropperPreview extends SimplePanel implements IGWTCropperPreview
      * @param aspectRatio
      */
     public void init(String imageUrl, int canvasWidth, int canvasHeight, double aspectRatio) {
-        if (embeddedImage != null)
-            super.remove(embeddedImage);
+        this.embeddedImage.detach();
+        this.embeddedImage.attach(getElement(), imageUrl);
 
-        this.embeddedImage = new Image(imageUrl);
-        
         this.cropCanvasWidth = canvasWidth;
         this.cropCanvasHeight = canvasHeight;
         this.isSquare = (aspectRatio == 1);
@@ -108,8 +104,7 @@ public class GWTCropperPreview extends SimplePanel implements IGWTCropperPreview
             if (0 == this.height) this.height = this.width;
         }
 
-        this.setImageStyleProperty();
-        add(embeddedImage);
+        getElement().getStyle().setOverflow(Overflow.HIDDEN);
     }
 
     /**
@@ -123,44 +118,17 @@ public class GWTCropperPreview extends SimplePanel implements IGWTCropperPreview
      */
     public void updatePreview(int cropShapeWidth, int cropShapeHeight, int cropLeft, int cropTop) {
 
-        switch (this.fixedSide) {
-            case WIDTH:
-                this.proportion = (double) this.fixedValue / (double) cropShapeWidth;
-
-                this.imageW = (int) (this.cropCanvasWidth * this.proportion);
-                this.imageH = this.imageW * this.cropCanvasHeight / this.cropCanvasWidth;
-                if (!this.isSquare) {
-                    this.height = (int) (cropShapeHeight * this.proportion);
-                }
-                break;
-
-            case HEIGHT:
-                this.proportion = (double) this.fixedValue / (double) cropShapeHeight;
-
-                this.imageH = (int) (this.cropCanvasHeight * this.proportion);
-                this.imageW = this.imageH * this.cropCanvasWidth / this.cropCanvasHeight;
-                if (!this.isSquare) {
-                    this.width = (int) (cropShapeWidth * this.proportion);
-                }
-                break;
-        }
+        this.geometry.fitFixedSide(this.fixedSide, this.fixedValue, this.isSquare, this.cropCanvasWidth,
+                this.cropCanvasHeight, cropShapeWidth, cropShapeHeight, cropLeft, cropTop);
 
-        final double left = this.proportion * cropLeft;
-        final double top = this.proportion * cropTop;
-        this.embeddedImage.getElement().getStyle().setMarginLeft(-left, Unit.PX);
-        this.embeddedImage.getElement().getStyle().setMarginTop(-top, Unit.PX);
+        this.width = this.geometry.getContainerWidth();
+        this.height = this.geometry.getContainerHeight();
 
-        this.embeddedImage.setSize(this.imageW + "px", this.imageH + "px");
+        this.embeddedImage.setOffset(-this.geometry.getImageLeft(), -this.geometry.getImageTop());
+        this.embeddedImage.setSize(this.geometry.getImageWidth(), this.geometry.getImageHeight());
 
         // change this widget size
         getElement().getStyle().setWidth(this.width, Unit.PX);
         getElement().getStyle().setHeight(this.height, Unit.PX);
     }
-    
-    // Private methods
-
-    private void setImageStyleProperty(){
-        getElement().getStyle().setOverflow(Overflow.HIDDEN);
-        this.embeddedImage.getElement().getStyle().setProperty("maxWidth","none");
-    }
 }
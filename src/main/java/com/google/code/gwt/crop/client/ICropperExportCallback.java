@@ -0,0 +1,45 @@
+package com.google.code.gwt.crop.client;
+
+import com.google.gwt.core.client.JavaScriptObject;
+
+/**
+ * <p>Receives the selected area, that is cropped in the browser, for example to upload only the crop
+ * instead of the whole original image.</p>
+ *
+ * <p><i>Usage example:</i>
+ * <pre>
+ * cropper.exportSelection(400, new ICropperExportCallback() {
+ *
+ *     public void onExported(JavaScriptObject blob, int width, int height) {
+ *         upload(blob); // for example, with FormData and XMLHttpRequest
+ *     }
+ *
+ *     public void onFailure(String message) {
+ *         // crop on the server, as before
+ *     }
+ * });
+ * </pre>
+ * </p>
+ *
+ * @author ilja.hamalainen@gmail.com (Ilja Hämäläinen)
+ * @see GWTCropper#exportSelection(int, int, String, double, ICropperExportCallback)
+ */
+public interface ICropperExportCallback {
+
+    /**
+     * Called when the selected area is encoded.
+     *
+     * @param blob JavaScript <code>Blob</code> with the encoded image
+     * @param width width of the encoded image in px
+     * @param height height of the encoded image in px
+     */
+    void onExported(JavaScriptObject blob, int width, int height);
+
+    /**
+     * Called when the selected area can't be exported: the image is not loaded yet, the browser
+     * doesn't support the encoding or the image comes from another origin without CORS headers.
+     *
+     * @param message error message
+     */
+    void onFailure(String message);
+}
@@ -0,0 +1,33 @@
+package com.google.code.gwt.crop.client;
+
+import com.google.code.gwt.crop.client.common.TimingHistogram;
+
+/**
+ * <p>Receives the performance measurements of the cropper, for example to send them to
+ * a real user monitoring service.</p>
+ *
+ * <p>The measurements are collected only if the module is compiled with the property
+ * <code>gwtcropper.metrics</code> set to <code>on</code>:
+ * <pre>
+ * &lt;set-property name="gwtcropper.metrics" value="on" /&gt;
+ * </pre>
+ * Otherwise the instrumentation is replaced with empty methods and removed by the compiler.</p>
+ *
+ * @author ilja.hamalainen@gmail.com (Ilja Hämäläinen)
+ * @see GWTCropper#setMetricsReporter(ICropperMetricsReporter)
+ */
+public interface ICropperMetricsReporter {
+
+    /**
+     * Called when the user finishes the dragging. The histograms are cleared after this call,
+     * so they should be read right here.
+     *
+     * @param inputEvents number of mouse and touch move events, received during the dragging
+     * @param frames number of frames, where the selection was changed
+     * @param geometry time of the selection geometry computation per frame
+     * @param domWrites time of the selection rendering (style writes or canvas drawing) per frame
+     * @param preview time of the preview widgets and selection handlers update per frame
+     */
+    void report(int inputEvents, int frames, TimingHistogram geometry, TimingHistogram domWrites,
+                TimingHistogram preview);
+}
@@ -0,0 +1,78 @@
+package com.google.code.gwt.crop.client;
+
+import com.google.gwt.core.client.JavaScriptObject;
+
+/**
+ * <p>Turns a picked <code>File</code>/<code>Blob</code> into a display-sized proxy image.</p>
+ *
+ * <p>The file is decoded and reduced in the {@link ImageWorker}, so even a very large photo doesn't block
+ * the main thread; the proxy is shown through an object URL. JPEG files get a JPEG proxy, the other formats,
+ * that could have transparency, get a PNG one. A file, that already fits into the proxy size, isn't encoded
+ * again. If the worker isn't available, or the file can't be decoded there, the file itself is shown and
+ * the browser decodes it as usual.</p>
+ *
+ * @author ilja.hamalainen@gmail.com (Ilja Hämäläinen)
+ * @see GWTCropper#setImageFile(JavaScriptObject, int, boolean)
+ */
+class ImageDecoder {
+
+    /**
+     * Receives the image to show.
+     */
+    interface Callback {
+
+        /**
+         * @param url object URL of the proxy (or of the file itself)
+         * @param originalWidth width of the decoded file, -1 if the file itself is shown
+         * @param originalHeight height of the decoded file, -1 if the file itself is shown
+         */
+        void onDecoded(String url, int originalWidth, int originalHeight);
+    }
+
+    private ImageDecoder() {
+    }
+
+    /**
+     * Decodes the file and creates its proxy, that fits into the given size.
+     *
+     * @param file picked <code>File</code> or <code>Blob</code>
+     * @param maxSize maximal width and height of the proxy in px
+     * @param callback receiver of the image
+     */
+    static native void decode(JavaScriptObject file, int maxSize, Callback callback) /*-{
+
+        var show = function (url, width, height) {
+            callback.@com.google.code.gwt.crop.client.ImageDecoder.Callback::onDecoded(Ljava/lang/String;II)(url, width, height);
+        };
+        var showFile = function () {
+            show($wnd.URL.createObjectURL(file), -1, -1);
+        };
+
+        if (!@com.google.code.gwt.crop.client.ImageWorker::isAvailable()()) {
+            showFile();
+            return;
+        }
+
+        @com.google.code.gwt.crop.client.ImageWorker::post(Lcom/google/gwt/core/client/JavaScriptObject;Lcom/google/gwt/core/client/JavaScriptObject;Lcom/google/gwt/core/client/JavaScriptObject;Lcom/google/gwt/core/client/JavaScriptObject;)(
+            { blob: file, maxWidth: maxSize, maxHeight: maxSize, keepFitting: true,
+                type: (file.type == 'image/jpeg') ? 'image/jpeg' : 'image/png', quality: 0.92 }, [],
+            function (answer) {
+                // the file already fits into the proxy size
+                if (!answer.blob) {
+                    showFile();
+                    return;
+                }
+                show($wnd.URL.createObjectURL(answer.blob), answer.sourceWidth, answer.sourceHeight);
+            },
+            showFile);
+    }-*/;
+
+    /**
+     * Releases the object URL, that was created by {@link #decode(JavaScriptObject, int, Callback)}.
+     *
+     * @param url object URL
+     */
+    static native void release(String url) /*-{
+        $wnd.URL.revokeObjectURL(url);
+    }-*/;
+}
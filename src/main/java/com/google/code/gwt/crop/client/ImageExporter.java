@@ -0,0 +1,92 @@
+package com.google.code.gwt.crop.client;
+
+import com.google.gwt.dom.client.Element;
+
+/**
+ * <p>Crops, scales and encodes a part of a loaded image in the browser.</p>
+ *
+ * <p>If the {@link ImageWorker} is available, the area is cut out to an image bitmap and passed to the worker,
+ * that scales and encodes it, so the main thread isn't blocked by the encoder. Otherwise the area
+ * is drawn on a detached canvas and encoded on the main thread.</p>
+ *
+ * @author ilja.hamalainen@gmail.com (Ilja Hämäläinen)
+ * @see GWTCropper#exportSelection(int, int, String, double, ICropperExportCallback)
+ */
+class ImageExporter {
+
+    private ImageExporter() {
+    }
+
+    /**
+     * Computes the scale of the exported image, so it fits into the maximal size. The image is never enlarged.
+     *
+     * @param width width of the area in px
+     * @param height height of the area in px
+     * @param maxWidth maximal width in px, 0 or negative means no limit
+     * @param maxHeight maximal height in px, 0 or negative means no limit
+     * @return scale between 0 and 1
+     */
+    static double fitScale(int width, int height, int maxWidth, int maxHeight) {
+
+        double scale = 1;
+        if (maxWidth > 0 && width > maxWidth) scale = Math.min(scale, (double) maxWidth / width);
+        if (maxHeight > 0 && height > maxHeight) scale = Math.min(scale, (double) maxHeight / height);
+        return scale;
+    }
+
+    /**
+     * Crops, scales and encodes the area of the image.
+     *
+     * @param image loaded image element
+     * @param sourceX X coordinate of the area in the image pixels
+     * @param sourceY Y coordinate of the area in the image pixels
+     * @param sourceWidth width of the area in the image pixels
+     * @param sourceHeight height of the area in the image pixels
+     * @param width width of the result
+     * @param height height of the result
+     * @param mimeType MIME type of the result, for example <code>image/jpeg</code>
+     * @param quality encoder quality between 0 and 1 for the lossy formats
+     * @param callback receiver of the result
+     */
+    static native void export(Element image, int sourceX, int sourceY, int sourceWidth, int sourceHeight,
+                              int width, int height, String mimeType, double quality,
+                              ICropperExportCallback callback) /*-{
+
+        var done = function (blob) {
+            callback.@com.google.code.gwt.crop.client.ICropperExportCallback::onExported(Lcom/google/gwt/core/client/JavaScriptObject;II)(blob, width, height);
+        };
+        var fail = function (message) {
+            callback.@com.google.code.gwt.crop.client.ICropperExportCallback::onFailure(Ljava/lang/String;)(String(message));
+        };
+
+        var onMainThread = function () {
+            try {
+                var canvas = $doc.createElement('canvas');
+                if (!canvas.getContext || !canvas.toBlob) {
+                    fail('Canvas encoding is not supported by the browser');
+                    return;
+                }
+                canvas.width = width;
+                canvas.height = height;
+                canvas.getContext('2d').drawImage(image, sourceX, sourceY, sourceWidth, sourceHeight, 0, 0, width, height);
+                canvas.toBlob(function (blob) {
+                    if (blob) done(blob); else fail('Image can not be encoded to ' + mimeType);
+                }, mimeType, quality);
+            } catch (e) {
+                // for example, SecurityError for the images from another origin
+                fail(e.message || e);
+            }
+        };
+
+        if (!@com.google.code.gwt.crop.client.ImageWorker::isAvailable()()) {
+            onMainThread();
+            return;
+        }
+
+        $wnd.createImageBitmap(image, sourceX, sourceY, sourceWidth, sourceHeight).then(function (bitmap) {
+            @com.google.code.gwt.crop.client.ImageWorker::post(Lcom/google/gwt/core/client/JavaScriptObject;Lcom/google/gwt/core/client/JavaScriptObject;Lcom/google/gwt/core/client/JavaScriptObject;Lcom/google/gwt/core/client/JavaScriptObject;)(
+                { bitmap: bitmap, width: width, height: height, type: mimeType, quality: quality }, [bitmap],
+                function (answer) { done(answer.blob); }, fail);
+        }, onMainThread);
+    }-*/;
+}
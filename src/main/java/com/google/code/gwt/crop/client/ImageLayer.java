@@ -0,0 +1,77 @@
+package com.google.code.gwt.crop.client;
+
+import com.google.gwt.dom.client.Element;
+import com.google.gwt.dom.client.Style;
+
+/**
+ * <p>Draws the cropped image inside of an element (the selection or a preview widget).</p>
+ *
+ * <p>This implementation paints the image as a CSS background of the element, so the canvas,
+ * the selection and the preview widgets share the single image resource, that the browser downloads
+ * and decodes once. No extra <code>&lt;img&gt;</code> elements are created.
+ * Actual implementation could be defined through the deferred binding.</p>
+ *
+ * @author ilja.hamalainen@gmail.com (Ilja Hämäläinen)
+ * @see ImageLayerIE
+ */
+class ImageLayer {
+
+    protected Element element;
+
+    /**
+     * Starts drawing the image inside the given element.
+     *
+     * @param element element to draw the image in
+     * @param url image URL
+     */
+    void attach(Element element, String url) {
+        this.element = element;
+
+        Style s = element.getStyle();
+        s.setBackgroundImage("url(\"" + url + "\")");
+        s.setProperty("backgroundRepeat", "no-repeat");
+    }
+
+    /**
+     * Replaces the image, keeping its size and offset.
+     *
+     * @param url new image URL
+     */
+    void setUrl(String url) {
+        this.element.getStyle().setBackgroundImage("url(\"" + url + "\")");
+    }
+
+    /**
+     * Removes the image from the element.
+     */
+    void detach() {
+        if (null == this.element) return;
+
+        Style s = this.element.getStyle();
+        s.clearBackgroundImage();
+        s.clearProperty("backgroundRepeat");
+        s.clearProperty("backgroundSize");
+        s.clearProperty("backgroundPosition");
+        this.element = null;
+    }
+
+    /**
+     * Scales the image.
+     *
+     * @param width image width in px
+     * @param height image height in px
+     */
+    void setSize(int width, int height) {
+        this.element.getStyle().setProperty("backgroundSize", width + "px " + height + "px");
+    }
+
+    /**
+     * Moves the image relatively the element.
+     *
+     * @param left left offset in px (usually negative)
+     * @param top top offset in px (usually negative)
+     */
+    void setOffset(double left, double top) {
+        this.element.getStyle().setProperty("backgroundPosition", left + "px " + top + "px");
+    }
+}
@@ -0,0 +1,82 @@
+package com.google.code.gwt.crop.client;
+
+import com.google.gwt.dom.client.Document;
+import com.google.gwt.dom.client.Element;
+import com.google.gwt.dom.client.ImageElement;
+import com.google.gwt.dom.client.Style;
+import com.google.gwt.dom.client.Style.Position;
+import com.google.gwt.dom.client.Style.Unit;
+
+/**
+ * Image layer for Internet Explorer (versions 6-8), that doesn't support
+ * <code>background-size</code>. The image is drawn with an absolutely positioned
+ * <code>&lt;img&gt;</code> element.
+ *
+ * @author ilja.hamalainen@gmail.com (Ilja Hämäläinen)
+ */
+class ImageLayerIE extends ImageLayer {
+
+    private ImageElement image;
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    void attach(Element element, String url) {
+        this.element = element;
+
+        this.image = Document.get().createImageElement();
+        this.image.setSrc(url);
+
+        //this is a bug in IE since v.8 - maxWidth collapse image
+        Style s = this.image.getStyle();
+        s.setProperty("maxWidth", "none");
+        s.setPosition(Position.ABSOLUTE);
+        s.setLeft(0, Unit.PX);
+        s.setTop(0, Unit.PX);
+
+        // the image is positioned relatively the element
+        if (!"absolute".equals(element.getStyle().getPosition())) {
+            element.getStyle().setPosition(Position.RELATIVE);
+        }
+        element.appendChild(this.image);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    void setUrl(String url) {
+        this.image.setSrc(url);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    void detach() {
+        if (null != this.image) {
+            this.image.removeFromParent();
+            this.image = null;
+        }
+        this.element = null;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    void setSize(int width, int height) {
+        this.image.setWidth(width);
+        this.image.setHeight(height);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    void setOffset(double left, double top) {
+        this.image.getStyle().setLeft(left, Unit.PX);
+        this.image.getStyle().setTop(top, Unit.PX);
+    }
+}
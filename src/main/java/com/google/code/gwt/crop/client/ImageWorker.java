@@ -0,0 +1,130 @@
+package com.google.code.gwt.crop.client;
+
+import com.google.gwt.core.client.JavaScriptObject;
+
+/**
+ * <p>Shared Web Worker, that scales and encodes images on an <code>OffscreenCanvas</code> off the main thread.</p>
+ *
+ * <p>The worker is created once from an inline script, so no extra files should be deployed. It accepts either
+ * an image bitmap, that is drawn at the given size, or a <code>File</code>/<code>Blob</code>, that is decoded
+ * in the worker with <code>createImageBitmap</code> and reduced to fit into the given maximal size. The answer
+ * contains the encoded <code>Blob</code> and the size of the source image. A file, that already fits, could be
+ * left as it is: then the answer has no <code>Blob</code>.</p>
+ *
+ * <p>If the browser lacks any of the needed APIs, or the worker can't be created (for example, because
+ * of the content security policy), {@link #isAvailable()} returns <code>false</code> and the callers use
+ * their main thread fallbacks.</p>
+ *
+ * @author ilja.hamalainen@gmail.com (Ilja Hämäläinen)
+ */
+class ImageWorker {
+
+    private static final String SCRIPT =
+            "self.onmessage = function (e) {"
+            + "  var d = e.data;"
+            + "  (d.bitmap ? Promise.resolve(d.bitmap) : createImageBitmap(d.blob)).then(function (bitmap) {"
+            + "    var sourceWidth = bitmap.width, sourceHeight = bitmap.height;"
+            + "    var width = d.width, height = d.height;"
+            + "    if (!width || !height) {"
+            + "      var scale = 1;"
+            + "      if (d.maxWidth > 0 && sourceWidth > d.maxWidth) scale = Math.min(scale, d.maxWidth / sourceWidth);"
+            + "      if (d.maxHeight > 0 && sourceHeight > d.maxHeight) scale = Math.min(scale, d.maxHeight / sourceHeight);"
+            + "      width = Math.max(1, Math.round(sourceWidth * scale));"
+            + "      height = Math.max(1, Math.round(sourceHeight * scale));"
+            + "      if (d.keepFitting && scale == 1) {"
+            + "        bitmap.close();"
+            + "        self.postMessage({ id: d.id, sourceWidth: sourceWidth, sourceHeight: sourceHeight });"
+            + "        return;"
+            + "      }"
+            + "    }"
+            + "    var canvas = new OffscreenCanvas(width, height);"
+            + "    var ctx = canvas.getContext('2d');"
+            + "    ctx.imageSmoothingQuality = 'high';"
+            + "    ctx.drawImage(bitmap, 0, 0, width, height);"
+            + "    bitmap.close();"
+            + "    var options = { type: d.type, quality: d.quality };"
+            + "    return (canvas.convertToBlob ? canvas.convertToBlob(options) : canvas.toBlob(options)).then(function (blob) {"
+            + "      self.postMessage({ id: d.id, blob: blob, width: width, height: height,"
+            + "          sourceWidth: sourceWidth, sourceHeight: sourceHeight });"
+            + "    });"
+            + "  }).then(null, function (err) { self.postMessage({ id: d.id, error: String(err) }); });"
+            + "};";
+
+    // the worker and the callbacks, that wait for its answers
+    private static JavaScriptObject worker;
+    private static JavaScriptObject pending;
+    private static int lastId = 0;
+    private static boolean isFailed = false;
+
+    private ImageWorker() {
+    }
+
+    /**
+     * @return <code>true</code> if the images could be processed in the worker
+     */
+    static boolean isAvailable() {
+        return null != getWorker();
+    }
+
+    /**
+     * Sends the task to the worker.
+     *
+     * @param message task: <code>bitmap</code> with <code>width</code> and <code>height</code>, or <code>blob</code>
+     *                with <code>maxWidth</code> and <code>maxHeight</code> (and <code>keepFitting</code> to skip
+     *                the files, that already fit); <code>type</code> and <code>quality</code> of the result
+     * @param transfer array of the transferable objects of the message
+     * @param done function, that receives the answer
+     * @param fail function, that receives the error message
+     */
+    static native void post(JavaScriptObject message, JavaScriptObject transfer,
+                            JavaScriptObject done, JavaScriptObject fail) /*-{
+
+        var w = @com.google.code.gwt.crop.client.ImageWorker::getWorker()();
+        var id = ++@com.google.code.gwt.crop.client.ImageWorker::lastId;
+        @com.google.code.gwt.crop.client.ImageWorker::pending[id] = { done: done, fail: fail };
+
+        message.id = id;
+        w.postMessage(message, transfer);
+    }-*/;
+
+    private static native JavaScriptObject getWorker() /*-{
+
+        if (@com.google.code.gwt.crop.client.ImageWorker::worker) {
+            return @com.google.code.gwt.crop.client.ImageWorker::worker;
+        }
+        if (@com.google.code.gwt.crop.client.ImageWorker::isFailed) return null;
+
+        if (!$wnd.Worker || !$wnd.OffscreenCanvas || !$wnd.createImageBitmap || !$wnd.Blob || !$wnd.URL) {
+            @com.google.code.gwt.crop.client.ImageWorker::isFailed = true;
+            return null;
+        }
+
+        var w;
+        try {
+            var script = new $wnd.Blob([@com.google.code.gwt.crop.client.ImageWorker::SCRIPT], { type: 'text/javascript' });
+            w = new $wnd.Worker($wnd.URL.createObjectURL(script));
+        } catch (e) {
+            @com.google.code.gwt.crop.client.ImageWorker::isFailed = true;
+            return null;
+        }
+
+        var pending = @com.google.code.gwt.crop.client.ImageWorker::pending = {};
+
+        w.onmessage = function (e) {
+            var p = pending[e.data.id];
+            if (!p) return;
+            delete pending[e.data.id];
+            // an answer without a blob is valid too: the file, that already fits, is kept as it is
+            if (e.data.error) p.fail(e.data.error); else p.done(e.data);
+        };
+        w.onerror = function (e) {
+            for (var id in pending) {
+                if (pending.hasOwnProperty(id)) pending[id].fail(e.message || 'Worker error');
+            }
+            @com.google.code.gwt.crop.client.ImageWorker::pending = pending = {};
+        };
+
+        @com.google.code.gwt.crop.client.ImageWorker::worker = w;
+        return w;
+    }-*/;
+}
@@ -0,0 +1,125 @@
+package com.google.code.gwt.crop.client;
+
+import com.google.gwt.dom.client.Element;
+
+/**
+ * <p>Input through the Pointer Events, that replaces separate mouse and touch handlers in the browsers,
+ * which support them.</p>
+ *
+ * <p>Three native listeners are added to the root element of the widget: one delegated
+ * <code>pointerdown</code> listener serves all the handles, and the following moves are delivered to
+ * the root element with the pointer capture, so the dragging continues even when the pointer leaves the
+ * widget. Move and up listeners are registered as passive, if the browser supports it.</p>
+ *
+ * @author ilja.hamalainen@gmail.com (Ilja Hämäläinen)
+ */
+class PointerInput {
+
+    /**
+     * Receives the pointer input.
+     */
+    interface Listener {
+
+        /**
+         * The pointer is pressed.
+         *
+         * @param target element under the pointer
+         * @param x pointer X-position relatively the canvas
+         * @param y pointer Y-position relatively the canvas
+         * @return <code>true</code> if the dragging starts and the pointer should be captured
+         */
+        boolean onPointerDown(Element target, int x, int y);
+
+        /**
+         * The captured pointer is moved.
+         *
+         * @param x pointer X-position relatively the canvas, could be out of the canvas
+         * @param y pointer Y-position relatively the canvas, could be out of the canvas
+         */
+        void onPointerDrag(int x, int y);
+
+        /**
+         * The pointer is moved over the widget without dragging.
+         *
+         * @param target element under the pointer
+         * @param offsetX pointer X-position relatively the target
+         * @param offsetY pointer Y-position relatively the target
+         */
+        void onPointerHover(Element target, int offsetX, int offsetY);
+
+        /**
+         * The captured pointer is released or cancelled.
+         */
+        void onPointerUp();
+    }
+
+    private PointerInput() {
+    }
+
+    /**
+     * @return <code>true</code> if the browser supports Pointer Events
+     */
+    static native boolean isSupported() /*-{
+        return !!$wnd.PointerEvent;
+    }-*/;
+
+    /**
+     * Starts listening to the pointer events.
+     *
+     * @param root element, that receives all the events
+     * @param canvas element, whose top left corner is the origin of the coordinates
+     * @param listener receiver of the input
+     */
+    static native void listen(Element root, Element canvas, Listener listener) /*-{
+
+        var passive = false;
+        try {
+            var options = Object.defineProperty({}, 'passive', {
+                get: function () { passive = true; }
+            });
+            $wnd.addEventListener('gwtcropper-test', null, options);
+            $wnd.removeEventListener('gwtcropper-test', null, options);
+        } catch (e) {
+        }
+        var passiveOptions = passive ? { passive: true } : false;
+
+        // canvas position is taken once per dragging, so moves don't query the layout
+        var rect = null;
+        var pointerId = null;
+
+        root.addEventListener('pointerdown', function (e) {
+            if (pointerId !== null || (e.pointerType === 'mouse' && e.button !== 0)) return;
+
+            rect = canvas.getBoundingClientRect();
+            var x = Math.round(e.clientX - rect.left);
+            var y = Math.round(e.clientY - rect.top);
+            if (!listener.@com.google.code.gwt.crop.client.PointerInput.Listener::onPointerDown(Lcom/google/gwt/dom/client/Element;II)(e.target, x, y)) return;
+
+            // prevents text selection and dragging of the images
+            e.preventDefault();
+            pointerId = e.pointerId;
+            if (root.setPointerCapture) root.setPointerCapture(pointerId);
+        }, false);
+
+        root.addEventListener('pointermove', function (e) {
+            if (pointerId === null) {
+                if (e.pointerType === 'mouse') {
+                    listener.@com.google.code.gwt.crop.client.PointerInput.Listener::onPointerHover(Lcom/google/gwt/dom/client/Element;II)(e.target, Math.round(e.offsetX), Math.round(e.offsetY));
+                }
+                return;
+            }
+            if (e.pointerId !== pointerId) return;
+
+            listener.@com.google.code.gwt.crop.client.PointerInput.Listener::onPointerDrag(II)(
+                Math.round(e.clientX - rect.left), Math.round(e.clientY - rect.top));
+        }, passiveOptions);
+
+        var release = function (e) {
+            if (e.pointerId !== pointerId) return;
+            pointerId = null;
+            listener.@com.google.code.gwt.crop.client.PointerInput.Listener::onPointerUp()();
+        };
+        root.addEventListener('pointerup', release, passiveOptions);
+        root.addEventListener('pointercancel', release, passiveOptions);
+    }-*/;
+}
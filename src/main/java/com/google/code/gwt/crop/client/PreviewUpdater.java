@@ -0,0 +1,192 @@
+package com.google.code.gwt.crop.client;
+
+import com.google.gwt.core.client.Duration;
+import com.google.gwt.user.client.Timer;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * <p>Delivers the selection to the registered preview widgets.</p>
+ *
+ * <p>The selection is taken from the cropper once and then passed to all the previews in one pass.
+ * Previews are updated only when the selected rectangle was really changed. Optionally the updates
+ * could be limited to one per the given interval: the selection, that comes between, is remembered and
+ * delivered at the end of the interval, so the previews always end up with the latest one.</p>
+ *
+ * @author ilja.hamalainen@gmail.com (Ilja Hämäläinen)
+ * @see GWTCropper#setPreviewRefreshInterval(int)
+ */
+class PreviewUpdater {
+
+    private final List<IGWTCropperPreview> previews = new ArrayList<IGWTCropperPreview>();
+
+    // arguments of the last init() call, null image URL means the image is not loaded yet
+    private String imageUrl;
+    private int canvasWidth;
+    private int canvasHeight;
+    private double aspectRatio;
+
+    // minimal time between two updates in ms, 0 means no limit
+    private int refreshInterval = 0;
+    private double lastUpdateTime;
+
+    // rectangle, that was delivered last time
+    private int width = -1;
+    private int height = -1;
+    private int left = -1;
+    private int top = -1;
+
+    // rectangle, that waits for the end of the refresh interval
+    private boolean isPending = false;
+    private int pendingWidth;
+    private int pendingHeight;
+    private int pendingLeft;
+    private int pendingTop;
+
+    private Timer timer;
+
+    /**
+     * Registers one more preview. If the image is already loaded, the preview is initialized and
+     * receives the current selection right away.
+     *
+     * @param preview preview widget
+     */
+    void add(IGWTCropperPreview preview) {
+        if (null == preview || this.previews.contains(preview)) return;
+
+        this.previews.add(preview);
+
+        if (null != this.imageUrl) {
+            preview.init(this.imageUrl, this.canvasWidth, this.canvasHeight, this.aspectRatio);
+            if (this.width != -1) preview.updatePreview(this.width, this.height, this.left, this.top);
+        }
+    }
+
+    /**
+     * @param preview preview widget, that shouldn't be updated anymore
+     * @return <code>true</code> if the preview was registered
+     */
+    boolean remove(IGWTCropperPreview preview) {
+        return this.previews.remove(preview);
+    }
+
+    /**
+     * @param milliseconds minimal time between two updates; 0 means no limit
+     */
+    void setRefreshInterval(int milliseconds) {
+        this.refreshInterval = Math.max(0, milliseconds);
+    }
+
+    int getRefreshInterval() {
+        return this.refreshInterval;
+    }
+
+    /**
+     * Initializes all the preview widgets and forgets the last delivered selection.
+     *
+     * @see IGWTCropperPreview#init(String, int, int, double)
+     */
+    void init(String imageUrl, int canvasWidth, int canvasHeight, double aspectRatio) {
+
+        this.imageUrl = imageUrl;
+        this.canvasWidth = canvasWidth;
+        this.canvasHeight = canvasHeight;
+        this.aspectRatio = aspectRatio;
+
+        for (IGWTCropperPreview preview : this.previews) {
+            preview.init(imageUrl, canvasWidth, canvasHeight, aspectRatio);
+        }
+        this.invalidate();
+    }
+
+    /**
+     * Delivers the selection to the previews, if it differs from the last one and the refresh interval
+     * is over.
+     *
+     * @param selectionWidth selection width
+     * @param selectionHeight selection height
+     * @param selectionLeft selection X coordinate
+     * @param selectionTop selection Y coordinate
+     */
+    void update(int selectionWidth, int selectionHeight, int selectionLeft, int selectionTop) {
+
+        if (selectionWidth == this.width && selectionHeight == this.height
+                && selectionLeft == this.left && selectionTop == this.top) {
+            this.isPending = false;
+            return;
+        }
+
+        if (this.refreshInterval > 0) {
+            final double wait = this.lastUpdateTime + this.refreshInterval - this.now();
+            if (wait > 0) {
+                this.postpone(selectionWidth, selectionHeight, selectionLeft, selectionTop, (int) Math.ceil(wait));
+                return;
+            }
+        }
+
+        this.deliver(selectionWidth, selectionHeight, selectionLeft, selectionTop);
+    }
+
+    /**
+     * Delivers the postponed selection right now, for example when the dragging is finished.
+     */
+    void flush() {
+        if (this.isPending) {
+            if (null != this.timer) this.timer.cancel();
+            this.deliver(this.pendingWidth, this.pendingHeight, this.pendingLeft, this.pendingTop);
+        }
+    }
+
+    /**
+     * Current time in ms
+     */
+    double now() {
+        return Duration.currentTimeMillis();
+    }
+
+    private void postpone(int selectionWidth, int selectionHeight, int selectionLeft, int selectionTop, int delay) {
+
+        this.pendingWidth = selectionWidth;
+        this.pendingHeight = selectionHeight;
+        this.pendingLeft = selectionLeft;
+        this.pendingTop = selectionTop;
+
+        if (this.isPending) return;
+        this.isPending = true;
+
+        if (null == this.timer) {
+            this.timer = new Timer() {
+
+                @Override
+                public void run() {
+                    flush();
+                }
+            };
+        }
+        this.timer.schedule(delay);
+    }
+
+    private void deliver(int selectionWidth, int selectionHeight, int selectionLeft, int selectionTop) {
+
+        this.isPending = false;
+        this.width = selectionWidth;
+        this.height = selectionHeight;
+        this.left = selectionLeft;
+        this.top = selectionTop;
+        this.lastUpdateTime = this.now();
+
+        for (IGWTCropperPreview preview : this.previews) {
+            preview.updatePreview(selectionWidth, selectionHeight, selectionLeft, selectionTop);
+        }
+    }
+
+    private void invalidate() {
+        this.width = -1;
+        this.height = -1;
+        this.left = -1;
+        this.top = -1;
+        this.isPending = false;
+        if (null != this.timer) this.timer.cancel();
+    }
+}
@@ -0,0 +1,134 @@
+package com.google.code.gwt.crop.client;
+
+import com.google.code.gwt.crop.client.SelectionChangeEvent.Delivery;
+import com.google.gwt.event.shared.HandlerRegistration;
+import com.google.gwt.event.shared.HasHandlers;
+import com.google.gwt.user.client.Timer;
+
+/**
+ * <p>Fires {@link SelectionChangeEvent}s for every delivery mode.</p>
+ *
+ * <p>The cropper passes the selection here once per frame. Events are created only for the modes,
+ * that have at least one handler, so the unused modes cost nothing.</p>
+ *
+ * @author ilja.hamalainen@gmail.com (Ilja Hämäläinen)
+ */
+class SelectionChangeDispatcher {
+
+    static final int DEFAULT_DELAY = 300;
+
+    private final HasHandlers source;
+    private final int[] handlerCount = new int[Delivery.values().length];
+
+    // delay of the debounced delivery, in ms
+    private int delay = DEFAULT_DELAY;
+
+    // the latest selection in pixels of the original image
+    private boolean hasSelection = false;
+    private int x;
+    private int y;
+    private int width;
+    private int height;
+
+    private boolean isChangedSinceDragEnd = false;
+    private Timer timer;
+
+    /**
+     * @param source widget, that fires the events
+     */
+    SelectionChangeDispatcher(HasHandlers source) {
+        this.source = source;
+    }
+
+    /**
+     * Counts the handler, until its registration is removed.
+     *
+     * @param registration registration of the handler in the widget
+     * @param delivery delivery mode of the handler
+     * @return registration, that should be returned to the caller
+     */
+    HandlerRegistration register(final HandlerRegistration registration, final Delivery delivery) {
+
+        this.handlerCount[delivery.ordinal()]++;
+
+        return new HandlerRegistration() {
+
+            private boolean isRemoved = false;
+
+            public void removeHandler() {
+                if (this.isRemoved) return;
+                this.isRemoved = true;
+
+                registration.removeHandler();
+                handlerCount[delivery.ordinal()]--;
+            }
+        };
+    }
+
+    void setDelay(int milliseconds) {
+        this.delay = Math.max(0, milliseconds);
+    }
+
+    int getDelay() {
+        return this.delay;
+    }
+
+    /**
+     * Takes the current selection. The very first selection is the initial one and is not reported.
+     */
+    void update(int x, int y, int width, int height) {
+
+        if (this.hasSelection && x == this.x && y == this.y && width == this.width && height == this.height) {
+            return;
+        }
+
+        final boolean isInitial = !this.hasSelection;
+        this.hasSelection = true;
+        this.x = x;
+        this.y = y;
+        this.width = width;
+        this.height = height;
+
+        if (isInitial) return;
+
+        this.isChangedSinceDragEnd = true;
+
+        if (this.hasHandlers(Delivery.FRAME)) this.fire(Delivery.FRAME);
+        if (this.hasHandlers(Delivery.DEBOUNCED)) this.scheduleDebounced();
+    }
+
+    /**
+     * Reports the selection to the drag-end handlers, if it was changed during the dragging.
+     */
+    void draggingFinished() {
+
+        if (!this.isChangedSinceDragEnd) return;
+        this.isChangedSinceDragEnd = false;
+
+        if (this.hasHandlers(Delivery.DRAG_END)) this.fire(Delivery.DRAG_END);
+    }
+
+    private void scheduleDebounced() {
+
+        if (null == this.timer) {
+            this.timer = new Timer() {
+
+                @Override
+                public void run() {
+                    if (hasHandlers(Delivery.DEBOUNCED)) fire(Delivery.DEBOUNCED);
+                }
+            };
+        }
+
+        // restarts the countdown
+        this.timer.schedule(this.delay);
+    }
+
+    private boolean hasHandlers(Delivery delivery) {
+        return this.handlerCount[delivery.ordinal()] > 0;
+    }
+
+    private void fire(Delivery delivery) {
+        this.source.fireEvent(new SelectionChangeEvent(delivery, this.x, this.y, this.width, this.height));
+    }
+}
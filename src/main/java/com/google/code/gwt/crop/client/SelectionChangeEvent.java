@@ -0,0 +1,108 @@
+package com.google.code.gwt.crop.client;
+
+import com.google.gwt.event.shared.GwtEvent;
+
+/**
+ * <p>Fired by {@link GWTCropper} when the user changes the selection. Coordinates are given
+ * in pixels of the original image, the same as returned by the <code>getSelection*()</code> methods.</p>
+ *
+ * <p>Every handler chooses, how often it wants to be notified (see {@link Delivery}), so expensive
+ * consumers (server requests, autosave) don't have to run on every frame.</p>
+ *
+ * @author ilja.hamalainen@gmail.com (Ilja Hämäläinen)
+ */
+public class SelectionChangeEvent extends GwtEvent<SelectionChangeHandler> {
+
+    /**
+     * When the selection change is delivered to the handler
+     */
+    public enum Delivery {
+
+        /**
+         * On every animation frame, while the selection is being changed
+         */
+        FRAME,
+
+        /**
+         * Once, when the user releases the selection
+         */
+        DRAG_END,
+
+        /**
+         * Once, when the selection wasn't changed for a while
+         * (see {@link GWTCropper#setSelectionChangeDelay(int)})
+         */
+        DEBOUNCED;
+
+        private final Type<SelectionChangeHandler> type = new Type<SelectionChangeHandler>();
+    }
+
+    private final Delivery delivery;
+    private final int x;
+    private final int y;
+    private final int width;
+    private final int height;
+
+    /**
+     * Returns the event type for the given delivery mode.
+     *
+     * @param delivery delivery mode
+     * @return event type
+     */
+    public static Type<SelectionChangeHandler> getType(Delivery delivery) {
+        return delivery.type;
+    }
+
+    SelectionChangeEvent(Delivery delivery, int x, int y, int width, int height) {
+        this.delivery = delivery;
+        this.x = x;
+        this.y = y;
+        this.width = width;
+        this.height = height;
+    }
+
+    /**
+     * @return X coordinate of the selection top left corner
+     */
+    public int getX() {
+        return this.x;
+    }
+
+    /**
+     * @return Y coordinate of the selection top left corner
+     */
+    public int getY() {
+        return this.y;
+    }
+
+    /**
+     * @return selection width
+     */
+    public int getWidth() {
+        return this.width;
+    }
+
+    /**
+     * @return selection height
+     */
+    public int getHeight() {
+        return this.height;
+    }
+
+    /**
+     * @return delivery mode, this event was fired for
+     */
+    public Delivery getDelivery() {
+        return this.delivery;
+    }
+
+    @Override
+    public Type<SelectionChangeHandler> getAssociatedType() {
+        return this.delivery.type;
+    }
+
+    @Override
+    protected void dispatch(SelectionChangeHandler handler) {
+        handler.onSelectionChange(this);
+    }
+}
@@ -0,0 +1,19 @@
+package com.google.code.gwt.crop.client;
+
+import com.google.gwt.event.shared.EventHandler;
+
+/**
+ * Handler for the {@link SelectionChangeEvent}.
+ *
+ * @author ilja.hamalainen@gmail.com (Ilja Hämäläinen)
+ * @see GWTCropper#addSelectionChangeHandler(SelectionChangeHandler, SelectionChangeEvent.Delivery)
+ */
+public interface SelectionChangeHandler extends EventHandler {
+
+    /**
+     * Called when the selected area is changed.
+     *
+     * @param event event with the new selection in pixels of the original image
+     */
+    void onSelectionChange(SelectionChangeEvent event);
+}
@@ -0,0 +1,70 @@
+package com.google.code.gwt.crop.client;
+
+import com.google.gwt.dom.client.Element;
+import com.google.gwt.dom.client.Style;
+import com.google.gwt.dom.client.Style.Unit;
+
+/**
+ * <p>Moves and resizes the selection layers (handles container, selection container,
+ * the image inside the selection and the draggable background) according to the selection geometry.</p>
+ *
+ * <p>This implementation writes <code>left/top/width/height</code> styles.
+ * Actual implementation could be defined through the deferred binding.</p>
+ *
+ * @author ilja.hamalainen@gmail.com (Ilja Hämäläinen)
+ * @see SelectionRendererComposited
+ */
+class SelectionRenderer {
+
+    protected Element handles;
+    protected Element selection;
+    protected ImageLayer selectionImage;
+    protected Element draggableBackground;
+    protected int borderSize;
+
+    /**
+     * Remembers the layers, that should be moved and resized.
+     *
+     * @param handles handle's container
+     * @param selection selection's container
+     * @param selectionImage image inside the selection, <code>null</code> if the image is seen through it
+     * @param draggableBackground draggable background of the selection
+     * @param borderSize selection border width in px
+     */
+    void attach(Element handles, Element selection, ImageLayer selectionImage, Element draggableBackground, int borderSize) {
+        this.handles = handles;
+        this.selection = selection;
+        this.selectionImage = selectionImage;
+        this.draggableBackground = draggableBackground;
+        this.borderSize = borderSize;
+    }
+
+    /**
+     * Applies the selection geometry to the layers.
+     *
+     * @param x selection X coordinate
+     * @param y selection Y coordinate
+     * @param width selection width
+     * @param height selection height
+     */
+    void render(int x, int y, int width, int height) {
+
+        Style s = this.handles.getStyle();
+        s.setLeft(x, Unit.PX);
+        s.setTop(y, Unit.PX);
+        s.setWidth(width, Unit.PX);
+        s.setHeight(height, Unit.PX);
+
+        s = this.selection.getStyle();
+        s.setLeft(x - this.borderSize, Unit.PX);
+        s.setTop(y - this.borderSize, Unit.PX);
+        s.setWidth(width, Unit.PX);
+        s.setHeight(height, Unit.PX);
+
+        if (null != this.selectionImage) this.selectionImage.setOffset(-x, -y);
+
+        s = this.draggableBackground.getStyle();
+        s.setWidth(width, Unit.PX);
+        s.setHeight(height, Unit.PX);
+    }
+}
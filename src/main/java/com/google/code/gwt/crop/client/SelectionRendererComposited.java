@@ -0,0 +1,81 @@
+package com.google.code.gwt.crop.client;
+
+import com.google.gwt.dom.client.Element;
+import com.google.gwt.dom.client.Style;
+import com.google.gwt.dom.client.Style.Unit;
+
+/**
+ * <p>Renderer for tablets and mobiles. Layers are moved with <code>translate3d</code> transforms,
+ * so the browser keeps them on separate composited layers and moving the selection doesn't cause
+ * any reflow. Width and height are written only when the selection size is really changed.
+ * The image inside the selection is moved with its background position, that needs repainting
+ * of the selection only.</p>
+ *
+ * <p>The size is not scaled with transforms on purpose: scaling would stretch the dashed
+ * border and the handles together with the selection.</p>
+ *
+ * @author ilja.hamalainen@gmail.com (Ilja Hämäläinen)
+ */
+class SelectionRendererComposited extends SelectionRenderer {
+
+    private String transformProperty;
+
+    private int lastWidth = -1;
+    private int lastHeight = -1;
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    void attach(Element handles, Element selection, ImageLayer selectionImage, Element draggableBackground, int borderSize) {
+        super.attach(handles, selection, selectionImage, draggableBackground, borderSize);
+
+        this.transformProperty = isTransformSupported(handles) ? "transform" : "webkitTransform";
+        this.lastWidth = -1;
+        this.lastHeight = -1;
+
+        // position is defined by the transforms only
+        this.prepareLayer(handles);
+        this.prepareLayer(selection);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    void render(int x, int y, int width, int height) {
+
+        this.translate(this.handles, x, y);
+        this.translate(this.selection, x - this.borderSize, y - this.borderSize);
+        if (null != this.selectionImage) this.selectionImage.setOffset(-x, -y);
+
+        if (width != this.lastWidth) {
+            this.handles.getStyle().setWidth(width, Unit.PX);
+            this.selection.getStyle().setWidth(width, Unit.PX);
+            this.draggableBackground.getStyle().setWidth(width, Unit.PX);
+            this.lastWidth = width;
+        }
+
+        if (height != this.lastHeight) {
+            this.handles.getStyle().setHeight(height, Unit.PX);
+            this.selection.getStyle().setHeight(height, Unit.PX);
+            this.draggableBackground.getStyle().setHeight(height, Unit.PX);
+            this.lastHeight = height;
+        }
+    }
+
+    private void prepareLayer(Element el) {
+        Style s = el.getStyle();
+        s.setLeft(0, Unit.PX);
+        s.setTop(0, Unit.PX);
+        s.setProperty("willChange", "transform");
+    }
+
+    private void translate(Element el, int x, int y) {
+        el.getStyle().setProperty(this.transformProperty, "translate3d(" + x + "px," + y + "px,0)");
+    }
+
+    private static native boolean isTransformSupported(Element el) /*-{
+        return 'transform' in el.style;
+    }-*/;
+}
@@ -0,0 +1,90 @@
+package com.google.code.gwt.crop.client;
+
+import com.google.code.gwt.crop.client.common.SelectionModel;
+import com.google.code.gwt.crop.client.common.SmartCrop;
+import com.google.gwt.canvas.client.Canvas;
+import com.google.gwt.canvas.dom.client.CanvasPixelArray;
+import com.google.gwt.canvas.dom.client.Context2d;
+import com.google.gwt.core.client.JavaScriptException;
+import com.google.gwt.dom.client.ImageElement;
+
+/**
+ * <p>Computes the automatic initial selection in the browser.</p>
+ *
+ * <p>The loaded image is drawn on a detached canvas of {@link #SAMPLE_SIZE} px, its pixels are passed to
+ * {@link SmartCrop} and the found window is scaled back to the canvas pixels. Images from another origin,
+ * that are served without CORS headers, can't be read from the canvas; then the default selection stays.</p>
+ *
+ * @author ilja.hamalainen@gmail.com (Ilja Hämäläinen)
+ * @see GWTCropper#setSmartInitialSelection(boolean)
+ */
+class SmartSelection {
+
+    /**
+     * Longer side of the analyzed copy of the image in px
+     */
+    static final int SAMPLE_SIZE = 160;
+
+    // the biggest selection leaves a margin, so all the handles are visible
+    private static final double MAX_SCALE = 0.9;
+
+    // shared by all the croppers, the buffers are reused
+    private static SmartCrop smartCrop;
+
+    private SmartSelection() {
+    }
+
+    /**
+     * Finds the most detailed area of the image and sets it to the selection.
+     *
+     * @param image loaded image
+     * @param canvasWidth canvas width
+     * @param canvasHeight canvas height
+     * @param selection selection, whose aspect ratio is respected
+     * @return <code>false</code> if the image can't be analyzed and the selection isn't changed
+     */
+    static boolean apply(ImageElement image, int canvasWidth, int canvasHeight, SelectionModel selection) {
+
+        final Canvas canvas = Canvas.createIfSupported();
+        if (null == canvas || canvasWidth <= 0 || canvasHeight <= 0) return false;
+
+        final double scale = Math.min(1, (double) SAMPLE_SIZE / Math.max(canvasWidth, canvasHeight));
+        final int width = Math.max(1, (int) Math.round(canvasWidth * scale));
+        final int height = Math.max(1, (int) Math.round(canvasHeight * scale));
+
+        canvas.setCoordinateSpaceWidth(width);
+        canvas.setCoordinateSpaceHeight(height);
+        final Context2d context = canvas.getContext2d();
+
+        final CanvasPixelArray data;
+        try {
+            context.drawImage(image, 0, 0, width, height);
+            data = context.getImageData(0, 0, width, height).getData();
+        } catch (JavaScriptException e) {
+            // the canvas is tainted by the image from another origin
+            return false;
+        }
+
+        final int[] rgb = new int[width * height];
+        for (int i = 0, p = 0; i < rgb.length; i++, p += 4) {
+            rgb[i] = data.get(p) << 16 | data.get(p + 1) << 8 | data.get(p + 2);
+        }
+
+        if (null == smartCrop) {
+            smartCrop = new SmartCrop();
+            smartCrop.setScaleRange(SmartCrop.DEFAULT_MIN_SCALE, MAX_SCALE);
+        }
+        final double aspectRatio = selection.getAspectRatio();
+        smartCrop.setPixels(rgb, width, height);
+        smartCrop.find(aspectRatio);
+
+        final int x = (int) (smartCrop.getX() / scale);
+        final int y = (int) (smartCrop.getY() / scale);
+        final int w = Math.min(canvasWidth - x, (int) Math.round(smartCrop.getWidth() / scale));
+        final int h = Math.min(canvasHeight - y,
+                (aspectRatio > 0) ? (int) (w / aspectRatio) : (int) Math.round(smartCrop.getHeight() / scale));
+
+        selection.setSelection(x, y, w, h);
+        return true;
+    }
+}
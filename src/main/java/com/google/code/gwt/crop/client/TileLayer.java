@@ -0,0 +1,174 @@
+package com.google.code.gwt.crop.client;
+
+import com.google.code.gwt.crop.client.common.LruCache;
+import com.google.code.gwt.crop.client.common.TileGrid;
+import com.google.gwt.dom.client.Document;
+import com.google.gwt.dom.client.Element;
+import com.google.gwt.dom.client.ImageElement;
+import com.google.gwt.dom.client.Style;
+import com.google.gwt.dom.client.Style.Display;
+import com.google.gwt.dom.client.Style.Position;
+import com.google.gwt.dom.client.Style.Unit;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * <p>Shows the tiles of an image pyramid, that are in view at the current zoom.</p>
+ *
+ * <p>Only the tiles of one level, that intersect the viewport, are shown. Tiles, which went out of view, are hidden
+ * and stay in the LRU cache, so panning back doesn't load them again; the least recently used ones are removed
+ * from DOM, when the cache is full. The whole image from the single tile level is stretched under the tiles,
+ * so a blurred picture is shown, while the tiles are loading.</p>
+ *
+ * @author ilja.hamalainen@gmail.com (Ilja Hämäläinen)
+ */
+class TileLayer {
+
+    private final TileSource source;
+    private final TileGrid grid;
+
+    private Element element;
+    private ImageElement backdrop;
+
+    private final LruCache<String, ImageElement> cache;
+    private List<ImageElement> shown = new ArrayList<ImageElement>();
+
+    /**
+     * @param source tile source
+     * @param width full resolution image width in px
+     * @param height full resolution image height in px
+     */
+    TileLayer(TileSource source, int width, int height) {
+        this.source = source;
+        this.grid = new TileGrid(width, height, source.getTileSize(), source.getOverlap());
+        this.cache = new LruCache<String, ImageElement>(256) {
+
+            @Override
+            protected void onEvicted(String key, ImageElement tile) {
+                tile.removeAttribute("src");
+                tile.removeFromParent();
+            }
+        };
+    }
+
+    /**
+     * @return URL of the whole image at the single tile level
+     */
+    String getThumbnailURL() {
+        return this.source.getTileURL(this.grid, this.grid.getSingleTileLevel(), 0, 0);
+    }
+
+    /**
+     * @param capacity maximal number of the tiles, that are kept in DOM
+     */
+    void setCacheSize(int capacity) {
+        this.cache.setCapacity(capacity);
+    }
+
+    /**
+     * Creates the layer inside of the given element.
+     *
+     * @param parent element of the zoomed image
+     * @return layer element
+     */
+    Element attach(Element parent) {
+
+        this.element = Document.get().createDivElement();
+        final Style s = this.element.getStyle();
+        s.setPosition(Position.ABSOLUTE);
+        s.setLeft(0, Unit.PX);
+        s.setTop(0, Unit.PX);
+        s.setWidth(100, Unit.PCT);
+        s.setHeight(100, Unit.PCT);
+
+        this.backdrop = this.createImage(this.getThumbnailURL());
+        this.backdrop.getStyle().setLeft(0, Unit.PX);
+        this.backdrop.getStyle().setTop(0, Unit.PX);
+        this.backdrop.getStyle().setWidth(100, Unit.PCT);
+        this.backdrop.getStyle().setHeight(100, Unit.PCT);
+        this.element.appendChild(this.backdrop);
+
+        parent.insertFirst(this.element);
+        return this.element;
+    }
+
+    /**
+     * Removes the layer and all the tiles.
+     */
+    void detach() {
+        this.cache.clear();
+        this.shown.clear();
+        if (null != this.element) this.element.removeFromParent();
+        this.element = null;
+        this.backdrop = null;
+    }
+
+    /**
+     * Shows the tiles, that are in view.
+     *
+     * @param zoom displayed size relatively the full resolution image
+     * @param viewX left side of the viewport in px of the zoomed image
+     * @param viewY top side of the viewport in px of the zoomed image
+     * @param viewWidth viewport width in px
+     * @param viewHeight viewport height in px
+     */
+    void update(double zoom, int viewX, int viewY, int viewWidth, int viewHeight) {
+
+        if (null == this.element) return;
+
+        final TileGrid g = this.grid;
+        final int level = g.getLevelFor(zoom);
+
+        // size of one px of the level on the screen
+        final double f = zoom / g.getLevelScale(level);
+
+        final int firstColumn = g.getColumnAt(level, (int) (viewX / f));
+        final int lastColumn = g.getColumnAt(level, (int) ((viewX + viewWidth - 1) / f));
+        final int firstRow = g.getRowAt(level, (int) (viewY / f));
+        final int lastRow = g.getRowAt(level, (int) ((viewY + viewHeight - 1) / f));
+
+        final int count = (lastColumn - firstColumn + 1) * (lastRow - firstRow + 1);
+        if (count * 2 > this.cache.getCapacity()) this.cache.setCapacity(count * 2);
+
+        final List<ImageElement> next = new ArrayList<ImageElement>(count);
+
+        for (int row = firstRow; row <= lastRow; row++) {
+            for (int column = firstColumn; column <= lastColumn; column++) {
+
+                final String key = level + "/" + column + "/" + row;
+                ImageElement tile = this.cache.get(key);
+                if (null == tile) {
+                    tile = this.createImage(this.source.getTileURL(g, level, column, row));
+                    this.element.appendChild(tile);
+                    this.cache.put(key, tile);
+                }
+
+                final Style s = tile.getStyle();
+                s.setLeft(g.getTileX(level, column) * f, Unit.PX);
+                s.setTop(g.getTileY(level, row) * f, Unit.PX);
+                s.setWidth(g.getTileWidth(level, column) * f, Unit.PX);
+                s.setHeight(g.getTileHeight(level, row) * f, Unit.PX);
+                s.clearDisplay();
+                next.add(tile);
+            }
+        }
+
+        // hide the tiles, which went out of view; they stay in the cache
+        final Set<ImageElement> visible = new HashSet<ImageElement>(next);
+        for (ImageElement tile : this.shown) {
+            if (!visible.contains(tile)) tile.getStyle().setDisplay(Display.NONE);
+        }
+        this.shown = next;
+    }
+
+    private ImageElement createImage(String url) {
+        final ImageElement image = Document.get().createImageElement();
+        image.setSrc(url);
+        image.setAttribute("draggable", "false");
+        image.getStyle().setPosition(Position.ABSOLUTE);
+        return image;
+    }
+}
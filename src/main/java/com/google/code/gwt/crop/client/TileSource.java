@@ -0,0 +1,94 @@
+package com.google.code.gwt.crop.client;
+
+import com.google.code.gwt.crop.client.common.TileGrid;
+
+/**
+ * <p>Source of the image tiles for the zoomable cropper: the tile size and the URL of every tile.</p>
+ *
+ * <p>Two common layouts are supported out of the box:
+ * <ul>
+ * <li>Deep Zoom (DZI): <code>TileSource.dzi("image_files/", "jpg", 254, 1)</code> gives URLs like
+ * <code>image_files/12/3_4.jpg</code></li>
+ * <li>URL template with <code>{z}</code>, <code>{x}</code> and <code>{y}</code> placeholders:
+ * <code>TileSource.template("tiles/{z}/{x}/{y}.png", 256)</code>, where <code>{z}</code> is 0 for the level,
+ * that fits into a single tile. The placeholder <code>{level}</code> gives the Deep Zoom level number.</li>
+ * </ul>
+ * Other layouts are supported by extending this class.</p>
+ *
+ * @author ilja.hamalainen@gmail.com (Ilja Hämäläinen)
+ * @see GWTCropper#createTiled(TileSource, int, int)
+ * @since 0.5.6
+ */
+public abstract class TileSource {
+
+    private final int tileSize;
+    private final int overlap;
+
+    /**
+     * @param tileSize tile size in px without the overlap
+     * @param overlap overlap of the neighbouring tiles in px
+     */
+    protected TileSource(int tileSize, int overlap) {
+        this.tileSize = tileSize;
+        this.overlap = overlap;
+    }
+
+    public int getTileSize() {
+        return this.tileSize;
+    }
+
+    public int getOverlap() {
+        return this.overlap;
+    }
+
+    /**
+     * Returns URL of the tile.
+     *
+     * @param grid geometry of the pyramid
+     * @param level Deep Zoom level, where the full resolution image is {@link TileGrid#getMaxLevel()}
+     * @param column tile column
+     * @param row tile row
+     * @return tile URL
+     */
+    public abstract String getTileURL(TileGrid grid, int level, int column, int row);
+
+    /**
+     * Tiles in the Deep Zoom layout.
+     *
+     * @param filesURL URL of the tiles folder (<code>*_files/</code>) ending with a slash
+     * @param format file extension, for example <code>jpg</code>
+     * @param tileSize tile size from the <code>.dzi</code> descriptor
+     * @param overlap overlap from the <code>.dzi</code> descriptor
+     * @return tile source
+     */
+    public static TileSource dzi(final String filesURL, final String format, int tileSize, int overlap) {
+        return new TileSource(tileSize, overlap) {
+
+            @Override
+            public String getTileURL(TileGrid grid, int level, int column, int row) {
+                return filesURL + level + "/" + column + "_" + row + "." + format;
+            }
+        };
+    }
+
+    /**
+     * Tiles without overlap, whose URLs are built from the template.
+     *
+     * @param template URL with <code>{z}</code> (or <code>{level}</code>), <code>{x}</code> and <code>{y}</code> placeholders
+     * @param tileSize tile size in px
+     * @return tile source
+     */
+    public static TileSource template(final String template, int tileSize) {
+        return new TileSource(tileSize, 0) {
+
+            @Override
+            public String getTileURL(TileGrid grid, int level, int column, int row) {
+                return template
+                        .replace("{z}", String.valueOf(level - grid.getSingleTileLevel()))
+                        .replace("{level}", String.valueOf(level))
+                        .replace("{x}", String.valueOf(column))
+                        .replace("{y}", String.valueOf(row));
+            }
+        };
+    }
+}
@@ -0,0 +1,105 @@
+package com.google.code.gwt.crop.client;
+
+import com.google.gwt.core.client.JavaScriptObject;
+import com.google.gwt.dom.client.Element;
+
+/**
+ * <p>Tells the lazy croppers, when they come near the viewport and when they go far away from it.</p>
+ *
+ * <p>It is built on <code>IntersectionObserver</code>, so the browser computes the intersections
+ * off the scrolling path and no scroll listeners are needed. Observers are shared: all the croppers
+ * with the same scroll root and distances are served by one pair of observers, no matter how many of
+ * them are on the page.</p>
+ *
+ * @author ilja.hamalainen@gmail.com (Ilja Hämäläinen)
+ * @see GWTCropper#createLazy(String, String...)
+ */
+class ViewportObserver {
+
+    /**
+     * Receives the changes of the distance to the viewport.
+     */
+    interface Listener {
+
+        /**
+         * The element came closer to the viewport than the near distance.
+         */
+        void onNear();
+
+        /**
+         * The element went farther from the viewport than the far distance.
+         */
+        void onFar();
+    }
+
+    // observers for the whole window, keyed by the distances
+    private static JavaScriptObject windowObservers;
+
+    private ViewportObserver() {
+    }
+
+    /**
+     * @return <code>true</code> if the browser supports <code>IntersectionObserver</code>
+     */
+    static native boolean isSupported() /*-{
+        return !!$wnd.IntersectionObserver;
+    }-*/;
+
+    /**
+     * Starts observing the element.
+     *
+     * @param element observed element
+     * @param root scrolling element, which contains the observed element; <code>null</code> means the browser window
+     * @param nearDistance distance to the viewport in px, when the element is considered to be near
+     * @param farDistance distance to the viewport in px, when the element is considered to be far
+     * @param listener receiver of the changes
+     */
+    static native void observe(Element element, Element root, int nearDistance, int farDistance, Listener listener) /*-{
+
+        var observers;
+        if (root) {
+            observers = root.__gwtCropperRootObservers || (root.__gwtCropperRootObservers = {});
+        } else {
+            observers = @com.google.code.gwt.crop.client.ViewportObserver::windowObservers
+                    || (@com.google.code.gwt.crop.client.ViewportObserver::windowObservers = {});
+        }
+
+        var get = function (distance, isNear) {
+            var key = (isNear ? 'near' : 'far') + distance;
+            if (!observers[key]) {
+                observers[key] = new $wnd.IntersectionObserver(function (entries) {
+                    for (var i = 0; i < entries.length; i++) {
+                        var l = entries[i].target.__gwtCropperListener;
+                        if (!l) continue;
+                        if (isNear && entries[i].isIntersecting) {
+                            l.@com.google.code.gwt.crop.client.ViewportObserver.Listener::onNear()();
+                        } else if (!isNear && !entries[i].isIntersecting) {
+                            l.@com.google.code.gwt.crop.client.ViewportObserver.Listener::onFar()();
+                        }
+                    }
+                }, { root: root || null, rootMargin: distance + 'px' });
+            }
+            return observers[key];
+        };
+
+        element.__gwtCropperListener = listener;
+        element.__gwtCropperObservers = [get(nearDistance, true), get(farDistance, false)];
+        element.__gwtCropperObservers[0].observe(element);
+        element.__gwtCropperObservers[1].observe(element);
+    }-*/;
+
+    /**
+     * Stops observing the element.
+     *
+     * @param element observed element
+     */
+    static native void unobserve(Element element) /*-{
+        var observers = element.__gwtCropperObservers;
+        if (!observers) return;
+
+        observers[0].unobserve(element);
+        observers[1].unobserve(element);
+        delete element.__gwtCropperObservers;
+        delete element.__gwtCropperListener;
+    }-*/;
+}
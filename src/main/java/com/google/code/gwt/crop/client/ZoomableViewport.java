@@ -0,0 +1,306 @@
+package com.google.code.gwt.crop.client;
+
+import com.google.code.gwt.crop.client.common.SelectionModel;
+import com.google.gwt.dom.client.Element;
+import com.google.gwt.dom.client.Style;
+import com.google.gwt.dom.client.Style.Overflow;
+import com.google.gwt.dom.client.Style.Unit;
+import com.google.gwt.user.client.ui.AbsolutePanel;
+
+/**
+ * <p>Viewport of the zoomable cropper: the zoomed image with the tiles in it, the zoom and the pan.</p>
+ *
+ * <p>The selection model works in px of the zoomed image, while the selection itself is kept here in px
+ * of the full resolution image, so it doesn't lose precision, when the image is zoomed out and back.
+ * The selection model is updated with the projection of the full resolution selection on every zoom.</p>
+ *
+ * @author ilja.hamalainen@gmail.com (Ilja Hämäläinen)
+ */
+class ZoomableViewport {
+
+    static final double MAX_ZOOM = 1;
+    static final double ZOOM_STEP = 1.25;
+
+    private final TileLayer tileLayer;
+    private final SelectionModel selection;
+
+    private AbsolutePanel zoomedImage;
+    private int originalWidth;
+    private int originalHeight;
+    private int viewWidth;
+    private int viewHeight;
+
+    private double zoom = 1;
+    private double minZoom = 1;
+    private int panX = 0;
+    private int panY = 0;
+    private int panCursorX = -1;
+    private int panCursorY = -1;
+    private int panStartX;
+    private int panStartY;
+
+    // the selection in px of the original image, the selection model keeps its projection to the zoomed image
+    private double fullX;
+    private double fullY;
+    private double fullWidth = -1;
+    private double fullHeight;
+
+    /**
+     * @param tileLayer tiles of the image
+     * @param selection selection model in px of the zoomed image
+     */
+    ZoomableViewport(TileLayer tileLayer, SelectionModel selection) {
+        this.tileLayer = tileLayer;
+        this.selection = selection;
+    }
+
+    /**
+     * Creates the zoomed image with the whole image in the viewport. The full resolution selection,
+     * if it was kept, is projected to the selection model.
+     *
+     * @param viewWidth viewport width in px
+     * @param viewHeight viewport height in px
+     * @param originalWidth full resolution image width in px
+     * @param originalHeight full resolution image height in px
+     * @return element of the tiles
+     */
+    Element build(int viewWidth, int viewHeight, int originalWidth, int originalHeight) {
+
+        this.viewWidth = viewWidth;
+        this.viewHeight = viewHeight;
+        this.originalWidth = originalWidth;
+        this.originalHeight = originalHeight;
+
+        this.minZoom = Math.min((double) viewWidth / originalWidth, (double) viewHeight / originalHeight);
+        this.zoom = this.minZoom;
+
+        this.zoomedImage = new AbsolutePanel();
+        this.zoomedImage.getElement().getStyle().setOverflow(Overflow.VISIBLE);
+        final Element tiles = this.tileLayer.attach(this.zoomedImage.getElement());
+
+        this.resizeZoomedImage();
+        if (this.isFullSelectionKept()) this.projectSelection();
+        return tiles;
+    }
+
+    /**
+     * Removes the zoomed image and the tiles. The full resolution selection is kept.
+     */
+    void release() {
+        this.zoom = this.minZoom;
+        this.tileLayer.detach();
+        this.zoomedImage = null;
+        this.panX = 0;
+        this.panY = 0;
+    }
+
+    /**
+     * @return zoomed image or <code>null</code> if it isn't built yet
+     */
+    AbsolutePanel getZoomedImage() {
+        return this.zoomedImage;
+    }
+
+    /**
+     * @return displayed size relatively the full resolution image
+     */
+    double getZoom() {
+        return this.zoom;
+    }
+
+    /**
+     * @return left side of the viewport in px of the zoomed image
+     */
+    int getPanX() {
+        return this.panX;
+    }
+
+    /**
+     * @return top side of the viewport in px of the zoomed image
+     */
+    int getPanY() {
+        return this.panY;
+    }
+
+    /**
+     * @param newZoom requested zoom
+     * @return <code>true</code> if the zoom would change
+     */
+    boolean isZoomChanged(double newZoom) {
+        return null != this.zoomedImage && this.limitZoom(newZoom) != this.zoom;
+    }
+
+    /**
+     * Changes the zoom, keeping the given point of the viewport on the same place of the image.
+     *
+     * @param newZoom requested zoom
+     * @param anchorX X coordinate in the viewport
+     * @param anchorY Y coordinate in the viewport
+     */
+    void zoomAt(double newZoom, int anchorX, int anchorY) {
+
+        // point of the full resolution image under the anchor
+        final double imageX = (anchorX + this.panX) / this.zoom;
+        final double imageY = (anchorY + this.panY) / this.zoom;
+
+        this.zoom = this.limitZoom(newZoom);
+        this.resizeZoomedImage();
+        this.projectSelection();
+
+        this.setPan((int) Math.round(imageX * this.zoom) - anchorX, (int) Math.round(imageY * this.zoom) - anchorY);
+    }
+
+    /**
+     * Moves the zoomed image within the viewport and shows the tiles in view.
+     *
+     * @param x left side of the viewport in px of the zoomed image
+     * @param y top side of the viewport in px of the zoomed image
+     */
+    void setPan(int x, int y) {
+
+        this.panX = Math.max(0, Math.min(x, this.selection.getCanvasWidth() - this.viewWidth));
+        this.panY = Math.max(0, Math.min(y, this.selection.getCanvasHeight() - this.viewHeight));
+
+        final Style s = this.zoomedImage.getElement().getStyle();
+        s.setLeft(-this.panX, Unit.PX);
+        s.setTop(-this.panY, Unit.PX);
+
+        this.tileLayer.update(this.zoom, this.panX, this.panY, this.viewWidth, this.viewHeight);
+    }
+
+    /**
+     * Pans the zoomed image, that is dragged by the cursor.
+     *
+     * @param cursorX - cursor X-position relatively the viewport
+     * @param cursorY - cursor Y-position relatively the viewport
+     */
+    void pan(int cursorX, int cursorY) {
+
+        if (this.panCursorX == -1) {
+            this.panCursorX = cursorX;
+            this.panCursorY = cursorY;
+            this.panStartX = this.panX;
+            this.panStartY = this.panY;
+        }
+
+        this.setPan(this.panStartX - (cursorX - this.panCursorX), this.panStartY - (cursorY - this.panCursorY));
+    }
+
+    /**
+     * Finishes the panning, the next drag starts from the cursor position again.
+     */
+    void stopPanning() {
+        this.panCursorX = -1;
+        this.panCursorY = -1;
+    }
+
+    /**
+     * @return <code>true</code> if the full resolution selection is known
+     */
+    boolean isFullSelectionKept() {
+        return this.fullWidth >= 0;
+    }
+
+    /**
+     * Forgets the full resolution selection, it is taken from the selection model again, when the image is built.
+     */
+    void forgetFullSelection() {
+        this.fullWidth = -1;
+    }
+
+    int getFullX() {
+        return (int) Math.round(this.fullX);
+    }
+
+    int getFullY() {
+        return (int) Math.round(this.fullY);
+    }
+
+    int getFullWidth() {
+        return (int) Math.round(this.fullWidth);
+    }
+
+    int getFullHeight() {
+        return (int) Math.round(this.fullHeight);
+    }
+
+    /**
+     * <p>Takes the changes of the selection model to the full resolution selection.</p>
+     *
+     * <p>Only the values, that differ from their projection, are taken, so a side, that wasn't dragged,
+     * keeps its sub-pixel precision on any zoom.</p>
+     */
+    void storeFullSelection() {
+
+        final SelectionModel s = this.selection;
+        if (this.fullWidth < 0) {
+            this.fullX = s.getX() / this.zoom;
+            this.fullY = s.getY() / this.zoom;
+            this.fullWidth = s.getWidth() / this.zoom;
+            this.fullHeight = s.getHeight() / this.zoom;
+            return;
+        }
+
+        final int width = this.projectSize(this.fullWidth);
+        final int height = this.projectSize(this.fullHeight);
+        final int x = this.projectPosition(this.fullX, width, s.getCanvasWidth());
+        final int y = this.projectPosition(this.fullY, height, s.getCanvasHeight());
+        final double aspectRatio = s.getAspectRatio();
+
+        if (s.getWidth() != width) {
+            this.fullWidth = s.getWidth() / this.zoom;
+            if (aspectRatio > 0) this.fullHeight = this.fullWidth / aspectRatio;
+        }
+        if (s.getHeight() != height && (aspectRatio <= 0 || s.getWidth() == width)) {
+            this.fullHeight = s.getHeight() / this.zoom;
+            if (aspectRatio > 0) this.fullWidth = this.fullHeight * aspectRatio;
+        }
+        if (s.getX() != x) this.fullX = s.getX() / this.zoom;
+        if (s.getY() != y) this.fullY = s.getY() / this.zoom;
+
+        this.fullX = Math.max(0, Math.min(this.fullX, this.originalWidth - this.fullWidth));
+        this.fullY = Math.max(0, Math.min(this.fullY, this.originalHeight - this.fullHeight));
+    }
+
+    // --------- private methods ------------
+
+    private double limitZoom(double newZoom) {
+        return Math.max(this.minZoom, Math.min(MAX_ZOOM, newZoom));
+    }
+
+    /**
+     * Projects the full resolution selection to the selection model in px of the zoomed image.
+     */
+    private void projectSelection() {
+
+        final SelectionModel s = this.selection;
+        final int width = this.projectSize(this.fullWidth);
+        final int height = this.projectSize(this.fullHeight);
+
+        s.setSelection(this.projectPosition(this.fullX, width, s.getCanvasWidth()),
+                this.projectPosition(this.fullY, height, s.getCanvasHeight()), width, height);
+    }
+
+    private int projectSize(double fullSize) {
+        return Math.max(1, (int) Math.round(fullSize * this.zoom));
+    }
+
+    /**
+     * Rounding could move the projected selection out of the zoomed image by a pixel
+     */
+    private int projectPosition(double fullPosition, int size, int canvasSize) {
+        return Math.max(0, Math.min((int) Math.round(fullPosition * this.zoom), canvasSize - size));
+    }
+
+    /**
+     * Applies the zoom to the size of the zoomed image.
+     */
+    private void resizeZoomedImage() {
+
+        final int width = (int) Math.round(this.originalWidth * this.zoom);
+        final int height = (int) Math.round(this.originalHeight * this.zoom);
+
+        this.zoomedImage.setPixelSize(width, height);
+        this.selection.setCanvasSize(width, height);
+    }
+}
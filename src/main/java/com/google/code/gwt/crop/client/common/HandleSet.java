@@ -0,0 +1,47 @@
+package com.google.code.gwt.crop.client.common;
+
+/**
+ * Handles, that are shown on the selection and could be dragged to resize it.
+ *
+ * @author ilja.hamalainen@gmail.com (Ilja Hämäläinen)
+ * @since 0.5.6
+ */
+public enum HandleSet {
+
+    /**
+     * Four corner handles (default)
+     */
+    CORNERS(true, false),
+
+    /**
+     * Four handles in the middle of the selection sides
+     */
+    EDGES(false, true),
+
+    /**
+     * All eight handles
+     */
+    ALL(true, true);
+
+    private final boolean hasCorners;
+    private final boolean hasEdges;
+
+    HandleSet(boolean hasCorners, boolean hasEdges) {
+        this.hasCorners = hasCorners;
+        this.hasEdges = hasEdges;
+    }
+
+    /**
+     * @return <code>true</code> if the corner handles are shown
+     */
+    public boolean hasCorners() {
+        return this.hasCorners;
+    }
+
+    /**
+     * @return <code>true</code> if the edge handles are shown
+     */
+    public boolean hasEdges() {
+        return this.hasEdges;
+    }
+}
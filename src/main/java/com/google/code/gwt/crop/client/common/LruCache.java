@@ -0,0 +1,89 @@
+package com.google.code.gwt.crop.client.common;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * <p>Map of a limited size, that forgets the least recently used entries.</p>
+ *
+ * <p>Both {@link #get(Object)} and {@link #put(Object, Object)} make the entry the most recent one.
+ * When the cache grows over its capacity, the oldest entries are removed and passed to
+ * {@link #onEvicted(Object, Object)}, for example to release the DOM elements of the tiles.</p>
+ *
+ * @author ilja.hamalainen@gmail.com (Ilja Hämäläinen)
+ * @since 0.5.6
+ */
+public class LruCache<K, V> {
+
+    private final LinkedHashMap<K, V> map = new LinkedHashMap<K, V>(16, 0.75f, true);
+    private int capacity;
+
+    /**
+     * @param capacity maximal number of the entries
+     */
+    public LruCache(int capacity) {
+        this.capacity = Math.max(1, capacity);
+    }
+
+    /**
+     * @return value or <code>null</code> if the key is not cached
+     */
+    public V get(K key) {
+        return this.map.get(key);
+    }
+
+    /**
+     * Puts the value and evicts the oldest entries, if the capacity is exceeded.
+     */
+    public void put(K key, V value) {
+        this.map.put(key, value);
+        this.trim();
+    }
+
+    /**
+     * Removes all the entries, each of them is passed to {@link #onEvicted(Object, Object)}.
+     */
+    public void clear() {
+        final int capacity = this.capacity;
+        this.capacity = 0;
+        this.trim();
+        this.capacity = capacity;
+    }
+
+    public int size() {
+        return this.map.size();
+    }
+
+    public int getCapacity() {
+        return this.capacity;
+    }
+
+    /**
+     * Changes the capacity, the oldest entries are evicted, if it becomes smaller.
+     *
+     * @param capacity maximal number of the entries
+     */
+    public void setCapacity(int capacity) {
+        this.capacity = Math.max(1, capacity);
+        this.trim();
+    }
+
+    /**
+     * Called for every entry, that is removed from the cache.
+     *
+     * @param key key of the entry
+     * @param value value of the entry
+     */
+    protected void onEvicted(K key, V value) {
+    }
+
+    private void trim() {
+        final Iterator<Map.Entry<K, V>> i = this.map.entrySet().iterator();
+        while (this.map.size() > this.capacity && i.hasNext()) {
+            final Map.Entry<K, V> eldest = i.next();
+            i.remove();
+            this.onEvicted(eldest.getKey(), eldest.getValue());
+        }
+    }
+}
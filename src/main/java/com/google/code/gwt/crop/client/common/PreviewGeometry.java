@@ -0,0 +1,144 @@
+package com.google.code.gwt.crop.client.common;
+
+/**
+ * <p>Geometry of the preview widgets: size of the preview panel and the size and offset
+ * of the scaled image inside it for the current selection.</p>
+ *
+ * <p>The class doesn't touch DOM, so it could be used (and benchmarked) outside of the browser.
+ * Results are stored in fields and are replaced on every call, nothing is allocated.</p>
+ *
+ * @author ilja.hamalainen@gmail.com (Ilja Hämäläinen)
+ * @since 0.5.6
+ */
+public class PreviewGeometry {
+
+    private int containerWidth;
+    private int containerHeight;
+    private int imageWidth;
+    private int imageHeight;
+    private double imageLeft;
+    private double imageTop;
+
+    /**
+     * Computes preview, where one side has a fixed length and another one follows
+     * the selection proportion (used by the {@link com.google.code.gwt.crop.client.GWTCropperPreview}).
+     *
+     * @param fixedSide side, that remains constantly
+     * @param fixedValue length of the fixed side in px
+     * @param isSquare <code>true</code> if the selection has a square shape
+     * @param canvasWidth cropper canvas width
+     * @param canvasHeight cropper canvas height
+     * @param cropShapeWidth selection width
+     * @param cropShapeHeight selection height
+     * @param cropLeft selection X coordinate
+     * @param cropTop selection Y coordinate
+     */
+    public void fitFixedSide(Dimension fixedSide, int fixedValue, boolean isSquare, int canvasWidth, int canvasHeight,
+                             int cropShapeWidth, int cropShapeHeight, int cropLeft, int cropTop) {
+
+        final double proportion;
+
+        switch (fixedSide) {
+            case WIDTH:
+                proportion = (double) fixedValue / (double) cropShapeWidth;
+
+                this.imageWidth = (int) (canvasWidth * proportion);
+                this.imageHeight = this.imageWidth * canvasHeight / canvasWidth;
+                this.containerWidth = fixedValue;
+                this.containerHeight = isSquare ? fixedValue : (int) (cropShapeHeight * proportion);
+                break;
+
+            case HEIGHT:
+            default:
+                proportion = (double) fixedValue / (double) cropShapeHeight;
+
+                this.imageHeight = (int) (canvasHeight * proportion);
+                this.imageWidth = this.imageHeight * canvasWidth / canvasHeight;
+                this.containerHeight = fixedValue;
+                this.containerWidth = isSquare ? fixedValue : (int) (cropShapeWidth * proportion);
+                break;
+        }
+
+        this.imageLeft = proportion * cropLeft;
+        this.imageTop = proportion * cropTop;
+    }
+
+    /**
+     * Computes preview, that scales the selection into a panel whose size won't exceed the given
+     * dimensions (used by the {@link com.google.code.gwt.crop.client.GWTConstrainedCropperPreview}).
+     *
+     * @param maxWidth maximum preview width in px
+     * @param maxHeight maximum preview height in px
+     * @param canvasWidth cropper canvas width
+     * @param canvasHeight cropper canvas height
+     * @param selectionWidth selection width
+     * @param selectionHeight selection height
+     * @param cropLeft selection X coordinate
+     * @param cropTop selection Y coordinate
+     */
+    public void fitConstrained(int maxWidth, int maxHeight, int canvasWidth, int canvasHeight,
+                               int selectionWidth, int selectionHeight, int cropLeft, int cropTop) {
+
+        double selectionRatio = (double) selectionWidth / selectionHeight;
+        double containerRatio = (double) maxWidth / maxHeight;
+
+        double scale = selectionRatio < containerRatio
+                ? (double) selectionHeight / maxHeight
+                : (double) selectionWidth / maxWidth;
+
+        this.containerWidth = (int) (selectionWidth / scale);
+        this.containerHeight = (int) (selectionHeight / scale);
+
+        double dimensionRatioX = (double) canvasWidth / selectionWidth;
+        double dimensionRatioY = (double) canvasHeight / selectionHeight;
+        double positionRatioX = (double) selectionWidth / this.containerWidth;
+        double positionRatioY = (double) selectionHeight / this.containerHeight;
+
+        this.imageWidth = (int) (this.containerWidth * dimensionRatioX);
+        this.imageHeight = (int) (this.containerHeight * dimensionRatioY);
+        this.imageLeft = (int) (cropLeft / positionRatioX);
+        this.imageTop = (int) (cropTop / positionRatioY);
+    }
+
+    /**
+     * @return width of the preview panel in px
+     */
+    public int getContainerWidth() {
+        return this.containerWidth;
+    }
+
+    /**
+     * @return height of the preview panel in px
+     */
+    public int getContainerHeight() {
+        return this.containerHeight;
+    }
+
+    /**
+     * @return width of the scaled image in px
+     */
+    public int getImageWidth() {
+        return this.imageWidth;
+    }
+
+    /**
+     * @return height of the scaled image in px
+     */
+    public int getImageHeight() {
+        return this.imageHeight;
+    }
+
+    /**
+     * @return how far the scaled image should be shifted to the left, in px
+     */
+    public double getImageLeft() {
+        return this.imageLeft;
+    }
+
+    /**
+     * @return how far the scaled image should be shifted to the top, in px
+     */
+    public double getImageTop() {
+        return this.imageTop;
+    }
+}
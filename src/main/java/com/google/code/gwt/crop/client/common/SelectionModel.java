@@ -0,0 +1,648 @@
+package com.google.code.gwt.crop.client.common;
+
+import com.google.code.gwt.crop.client.Constants;
+
+/**
+ * <p>Geometry of the selection area: resizing, aspect ratio compensation and
+ * keeping the selection within the canvas.</p>
+ *
+ * <p>The class doesn't touch DOM at all, thus it could be used outside of the browser,
+ * for example on the server side or in benchmarks. All coordinates are in canvas pixels.
+ * The model is mutable and doesn't allocate anything during the dragging.</p>
+ *
+ * <p>Usage example:
+ * <pre>
+ * SelectionModel selection = new SelectionModel();
+ * selection.setCanvasSize(800, 600);
+ * selection.setSelection(100, 100, 200, 150);
+ *
+ * // user drags the bottom right corner
+ * selection.drag(Constants.DRAG_BOTTOM_RIGHT_CORNER, 320, 260);
+ * selection.drag(Constants.DRAG_BOTTOM_RIGHT_CORNER, 350, 280);
+ * selection.reset(); // dragging is finished
+ * </pre>
+ * </p>
+ *
+ * @author ilja.hamalainen@gmail.com (Ilja Hämäläinen)
+ * @since 0.5.6
+ */
+public class SelectionModel {
+
+    // canvas sizes
+    private int canvasWidth = -1;
+    private int canvasHeight = -1;
+
+    // selection coordinates
+    private int x = -1;
+    private int y = -1;
+    private int width = -1;
+    private int height = -1;
+
+    // settings
+    private double aspectRatio = 0;
+    private int minWidth = 0;
+    private int minHeight = 0;
+
+    // initials to provide crop actions
+    private int initW = -1;
+    private int initH = -1;
+
+    // X and Y coordinates of cursor before dragging
+    private int initX = -1;
+    private int initY = -1;
+
+    private int offsetX = -1;
+    private int offsetY = -1;
+
+    // ---------- settings ------------------
+
+    /**
+     * Sets the canvas size. The selection can't be dragged out of the canvas.
+     *
+     * @param width canvas width in px
+     * @param height canvas height in px
+     */
+    public void setCanvasSize(int width, int height) {
+        this.canvasWidth = width;
+        this.canvasHeight = height;
+    }
+
+    public int getCanvasWidth() {
+        return this.canvasWidth;
+    }
+
+    public int getCanvasHeight() {
+        return this.canvasHeight;
+    }
+
+    /**
+     * Sets the fixed aspect ratio (width/height) for the selection; 0 means any shape.
+     *
+     * @param aspectRatio proportion width/height
+     */
+    public void setAspectRatio(double aspectRatio) {
+        this.aspectRatio = aspectRatio;
+    }
+
+    public double getAspectRatio() {
+        return this.aspectRatio;
+    }
+
+    /**
+     * Sets the minimal selection size. Dragging, that makes the selection smaller, is ignored.
+     *
+     * @param width minimal width in px
+     * @param height minimal height in px
+     */
+    public void setMinimalSize(int width, int height) {
+        this.minWidth = width;
+        this.minHeight = height;
+    }
+
+    public int getMinimalWidth() {
+        return this.minWidth;
+    }
+
+    public int getMinimalHeight() {
+        return this.minHeight;
+    }
+
+    /**
+     * Sets the selection rectangle as it is, without any validation.
+     *
+     * @param x left coordinate in px
+     * @param y top coordinate in px
+     * @param width width in px
+     * @param height height in px
+     */
+    public void setSelection(int x, int y, int width, int height) {
+        this.x = x;
+        this.y = y;
+        this.width = width;
+        this.height = height;
+    }
+
+    public void setX(int x) {
+        this.x = x;
+    }
+
+    public void setY(int y) {
+        this.y = y;
+    }
+
+    public void setWidth(int width) {
+        this.width = width;
+    }
+
+    public void setHeight(int height) {
+        this.height = height;
+    }
+
+    public int getX() {
+        return this.x;
+    }
+
+    public int getY() {
+        return this.y;
+    }
+
+    public int getWidth() {
+        return this.width;
+    }
+
+    public int getHeight() {
+        return this.height;
+    }
+
+    // ---------- dragging ------------------
+
+    /**
+     * Finds the dragging action for the point, where user starts dragging.
+     * Handles are squares of the given size, centered on the selection corners.
+     *
+     * @param pointX X coordinate relatively the canvas
+     * @param pointY Y coordinate relatively the canvas
+     * @param handleSize handle size in px
+     * @return one of the <code>Constants.DRAG_*</code> values; <code>DRAG_NONE</code> if the point is out of the selection
+     */
+    public byte getActionAt(int pointX, int pointY, int handleSize) {
+        return this.getActionAt(pointX, pointY, handleSize, HandleSet.CORNERS);
+    }
+
+    /**
+     * Finds the dragging action for the point, where user starts dragging.
+     * Handles are squares of the given size, centered on the selection corners
+     * and on the middle of the selection sides.
+     *
+     * @param pointX X coordinate relatively the canvas
+     * @param pointY Y coordinate relatively the canvas
+     * @param handleSize handle size in px
+     * @param handles handles, that are shown on the selection
+     * @return one of the <code>Constants.DRAG_*</code> values; <code>DRAG_NONE</code> if the point is out of the selection
+     */
+    public byte getActionAt(int pointX, int pointY, int handleSize, HandleSet handles) {
+
+        final int h = handleSize / 2;
+        final int right = this.x + this.width;
+        final int bottom = this.y + this.height;
+
+        final boolean isLeft = abs(pointX - this.x) <= h;
+        final boolean isRight = abs(pointX - right) <= h;
+        final boolean isTop = abs(pointY - this.y) <= h;
+        final boolean isBottom = abs(pointY - bottom) <= h;
+
+        if (handles.hasCorners()) {
+            if (isTop && isLeft) return Constants.DRAG_TOP_LEFT_CORNER;
+            if (isTop && isRight) return Constants.DRAG_TOP_RIGHT_CORNER;
+            if (isBottom && isLeft) return Constants.DRAG_BOTTOM_LEFT_CORNER;
+            if (isBottom && isRight) return Constants.DRAG_BOTTOM_RIGHT_CORNER;
+        }
+
+        if (handles.hasEdges()) {
+            final boolean isCenterX = abs(pointX - (this.x + this.width / 2)) <= h;
+            final boolean isCenterY = abs(pointY - (this.y + this.height / 2)) <= h;
+
+            if (isTop && isCenterX) return Constants.DRAG_TOP_EDGE;
+            if (isBottom && isCenterX) return Constants.DRAG_BOTTOM_EDGE;
+            if (isLeft && isCenterY) return Constants.DRAG_LEFT_EDGE;
+            if (isRight && isCenterY) return Constants.DRAG_RIGHT_EDGE;
+        }
+
+        if (pointX >= this.x && pointX <= right && pointY >= this.y && pointY <= bottom) {
+            return Constants.DRAG_BACKGROUND;
+        }
+
+        return Constants.DRAG_NONE;
+    }
+
+    /**
+     * Resets the dragging state. Should be called, when the dragging action is finished.
+     */
+    public void reset() {
+        this.initX = -1;
+        this.initY = -1;
+        this.initW = -1;
+        this.initH = -1;
+        this.offsetX = -1;
+        this.offsetY = -1;
+    }
+
+    /**
+     * Changes the selection according to the dragging action and the current cursor position.
+     * The first call after {@link #reset()} remembers the initial state of the dragging.
+     *
+     * @param action one of the <code>Constants.DRAG_*</code> values
+     * @param cursorX - cursor X-position relatively the canvas
+     * @param cursorY - cursor Y-position relatively the canvas
+     * @return <code>false</code> if the selection was not changed
+     * (for example, it would become smaller than minimal size)
+     */
+    public boolean drag(byte action, int cursorX, int cursorY) {
+
+        switch (action) {
+
+            case Constants.DRAG_BACKGROUND:
+                this.dragBackground(cursorX, cursorY);
+                return true;
+
+            case Constants.DRAG_TOP_LEFT_CORNER:
+                return this.dragTopLeftCorner(cursorX, cursorY);
+
+            case Constants.DRAG_TOP_RIGHT_CORNER:
+                return this.dragTopRightCorner(cursorX, cursorY);
+
+            case Constants.DRAG_BOTTOM_LEFT_CORNER:
+                return this.dragBottomLeftCorner(cursorX, cursorY);
+
+            case Constants.DRAG_BOTTOM_RIGHT_CORNER:
+                return this.dragBottomRightCorner(cursorX, cursorY);
+
+            case Constants.DRAG_TOP_EDGE:
+                return this.dragTopEdge(cursorY);
+
+            case Constants.DRAG_RIGHT_EDGE:
+                return this.dragRightEdge(cursorX);
+
+            case Constants.DRAG_BOTTOM_EDGE:
+                return this.dragBottomEdge(cursorY);
+
+            case Constants.DRAG_LEFT_EDGE:
+                return this.dragLeftEdge(cursorX);
+
+            default:
+                return false;
+        }
+    }
+
+    private void dragBackground(int cursorX, int cursorY) {
+
+        if (offsetX == -1) {
+            offsetX = cursorX - this.x;
+        }
+        if (offsetY == -1) {
+            offsetY = cursorY - this.y;
+        }
+
+        this.x = cursorX - offsetX;
+        this.y = cursorY - offsetY;
+
+        // don't drag selection out of the canvas borders
+        if (this.x < 0) this.x = 0;
+        if (this.y < 0) this.y = 0;
+        if (this.x + this.width > this.canvasWidth) this.x = this.canvasWidth - this.width;
+        if (this.y + this.height > this.canvasHeight) this.y = this.canvasHeight - this.height;
+    }
+
+    private boolean dragTopLeftCorner(int cursorX, int cursorY) {
+
+        if (initX == -1) {
+            initX = this.x;
+            initW = this.width;
+        }
+        if (initY == -1) {
+            initY = this.y;
+            initH = this.height;
+        }
+
+        final int futureWidth = initW + (initX - cursorX);
+        final int futureHeight = initH + (initY - cursorY);
+
+        if (futureWidth < this.minWidth || futureHeight < this.minHeight) {
+            return false;
+        }
+
+        this.width = futureWidth;
+        this.height = futureHeight;
+
+        this.x = cursorX;
+        this.y = cursorY;
+
+        // compensation for specified aspect ratio
+        if (this.aspectRatio != 0) {
+            if (abs(this.initX - this.x) > abs(this.initY - this.y)) {
+                int newHeight = (int) (this.width / this.aspectRatio);
+                this.y -= newHeight - this.height;
+
+                // to prevent resizing out of the canvas on the Y axes
+                if (this.y <= 0) {
+                    this.y = 0;
+                    newHeight = this.initY + this.initH;
+                    this.width = (int) (newHeight * this.aspectRatio);
+                    this.x = this.initX - (int) (this.initY * this.aspectRatio);
+                }
+
+                this.height = newHeight;
+            }
+            else {
+                int newWidth = (int) (this.height * this.aspectRatio);
+                this.x -= newWidth - this.width;
+
+                // to prevent resizing out of the canvas on the X axis
+                if (this.x < 0) {
+                    this.x = 0;
+                    newWidth = this.initX + this.initW;
+                    this.height = (int) (newWidth / this.aspectRatio);
+                    this.y = this.initY - (int) (this.initX / this.aspectRatio);
+                }
+
+                this.width = newWidth;
+            }
+        }
+
+        return true;
+    }
+
+    private boolean dragTopRightCorner(int cursorX, int cursorY) {
+
+        if (initX == -1) {
+            initX = this.x + this.width;
+            initW = this.width;
+        }
+        if (initY == -1) {
+            initY = this.y;
+            initH = this.height;
+        }
+
+        final int futureWidth = initW + (cursorX - initX);
+        final int futureHeight = initH + (initY - cursorY);
+
+        if (futureWidth < this.minWidth || futureHeight < this.minHeight) {
+            return false;
+        }
+
+        this.width = futureWidth;
+        this.height = futureHeight;
+
+        // compensation for specified aspect ratio
+        if (this.aspectRatio != 0) {
+            if (abs(initX - cursorX) > abs(initY - cursorY)) {
+                // move cursor right, top side has been adjusted automatically
+
+                int newHeight = (int) (this.width / this.aspectRatio);
+                cursorY -= newHeight - this.height;
+
+                // to prevent resizing out of the canvas on the Y axes
+                if (cursorY <= 0) {
+                    cursorY = 0;
+                    newHeight = this.initY + this.initH;
+                    this.width = (int) (newHeight * this.aspectRatio);
+                }
+
+                this.height = newHeight;
+            }
+            else {
+                // move cursor up, right side has been adjusted automatically
+
+                this.width = (int) (this.height * this.aspectRatio);
+
+                // to prevent resizing out of the canvas on the X axis
+                if ((this.width + this.x) >= this.canvasWidth) {
+                    this.width = this.canvasWidth - this.x;
+                    this.height = (int) (this.width / this.aspectRatio);
+                    this.y = this.initY - (int) ((this.canvasWidth - this.x - this.initW) / this.aspectRatio);
+                    cursorY = this.y;
+                }
+            }
+        }
+
+        this.y = cursorY;
+        return true;
+    }
+
+    private boolean dragBottomLeftCorner(int cursorX, int cursorY) {
+
+        if (initX == -1) {
+            initX = this.x;
+            initW = this.width;
+        }
+        if (initY == -1) {
+            initY = this.y + this.height;
+            initH = this.height;
+        }
+
+        final int futureWidth = initW + (initX - cursorX);
+        final int futureHeight = initH + (cursorY - initY);
+
+        if (futureWidth < this.minWidth || futureHeight < this.minHeight) {
+            return false;
+        }
+
+        this.width = futureWidth;
+        this.height = futureHeight;
+
+        // compensation for specified aspect ratio
+        if (this.aspectRatio != 0) {
+            if (abs(initX - cursorX) > abs(initY - cursorY)) {
+                // cursor goes left, bottom side goes down...
+
+                this.height = (int) (this.width / this.aspectRatio);
+
+                // to prevent resizing out of the canvas on the Y axis
+                if ((this.height + this.y) >= this.canvasHeight) {
+                    this.height = this.canvasHeight - this.y;
+                    this.width = (int) (this.height * this.aspectRatio);
+                    this.y = this.canvasHeight - this.height;
+                    cursorX = this.initX - (int) ((this.canvasHeight - this.initY) * this.aspectRatio);
+                }
+
+            }
+            else {
+                // cursor goes down, left side goes to left
+
+                int newWidth = (int) (this.height * this.aspectRatio);
+                cursorX -= newWidth - this.width;
+
+                // to prevent resizing out of the canvas on the X axis
+                if (cursorX <= 0) {
+                    newWidth = this.width + this.initX;
+                    this.height = (int) (newWidth / this.aspectRatio);
+                    cursorX = 0;
+                }
+
+                this.width = newWidth;
+            }
+        }
+
+        this.x = cursorX;
+        return true;
+    }
+
+    private boolean dragBottomRightCorner(int cursorX, int cursorY) {
+
+        if (initX == -1) {
+            initX = this.x + this.width;
+            initW = this.width;
+        }
+        if (initY == -1) {
+            initY = this.y + this.height;
+            initH = this.height;
+        }
+
+        final int futureWidth = initW + (cursorX - initX);
+        final int futureHeight = initH + (cursorY - initY);
+
+        if (futureWidth < this.minWidth || futureHeight < this.minHeight) {
+            return false;
+        }
+
+        this.width = futureWidth;
+        this.height = futureHeight;
+
+        // compensation for specified aspect ratio
+        if (this.aspectRatio != 0) {
+            if (abs(initX - cursorX) > abs(initY - cursorY)) {
+                // cursor goes right, bottom side goes down...
+
+                this.height = (int) (this.width / this.aspectRatio);
+
+                // to prevent resizing out of the canvas on the Y axis
+                if ((this.height + this.y) >= this.canvasHeight) {
+                    this.height = this.canvasHeight - this.y;
+                    this.width = (int) (this.height * this.aspectRatio);
+                    this.y = this.canvasHeight - this.height;
+                }
+
+            }
+            else {
+                // cursor goes down, right side goes to right
+                this.width = (int) (this.height * this.aspectRatio);
+
+                // to prevent resizing out of the canvas on the X axis
+                if (this.width + this.x >= this.canvasWidth) {
+                    this.width = this.canvasWidth - this.x;
+                    this.height = (int) (this.width / this.aspectRatio);
+                }
+            }
+        }
+
+        return true;
+    }
+
+    private boolean dragTopEdge(int cursorY) {
+
+        if (initY == -1) {
+            initY = this.y + this.height;
+            initH = this.height;
+        }
+
+        final int futureHeight = initY - cursorY;
+
+        if (futureHeight < this.minHeight) {
+            return false;
+        }
+
+        this.height = futureHeight;
+
+        // compensation for specified aspect ratio: left side stays, right side follows the height
+        if (this.aspectRatio != 0) {
+            this.width = (int) (this.height * this.aspectRatio);
+
+            // to prevent resizing out of the canvas on the X axis
+            if (this.width + this.x >= this.canvasWidth) {
+                this.width = this.canvasWidth - this.x;
+                this.height = (int) (this.width / this.aspectRatio);
+            }
+        }
+
+        this.y = initY - this.height;
+        return true;
+    }
+
+    private boolean dragBottomEdge(int cursorY) {
+
+        if (initY == -1) {
+            initY = this.y;
+            initH = this.height;
+        }
+
+        final int futureHeight = cursorY - initY;
+
+        if (futureHeight < this.minHeight) {
+            return false;
+        }
+
+        this.height = futureHeight;
+
+        // compensation for specified aspect ratio: left side stays, right side follows the height
+        if (this.aspectRatio != 0) {
+            this.width = (int) (this.height * this.aspectRatio);
+
+            // to prevent resizing out of the canvas on the X axis
+            if (this.width + this.x >= this.canvasWidth) {
+                this.width = this.canvasWidth - this.x;
+                this.height = (int) (this.width / this.aspectRatio);
+            }
+        }
+
+        return true;
+    }
+
+    private boolean dragLeftEdge(int cursorX) {
+
+        if (initX == -1) {
+            initX = this.x + this.width;
+            initW = this.width;
+        }
+
+        final int futureWidth = initX - cursorX;
+
+        if (futureWidth < this.minWidth) {
+            return false;
+        }
+
+        this.width = futureWidth;
+
+        // compensation for specified aspect ratio: top side stays, bottom side follows the width
+        if (this.aspectRatio != 0) {
+            this.height = (int) (this.width / this.aspectRatio);
+
+            // to prevent resizing out of the canvas on the Y axis
+            if (this.height + this.y >= this.canvasHeight) {
+                this.height = this.canvasHeight - this.y;
+                this.width = (int) (this.height * this.aspectRatio);
+            }
+        }
+
+        this.x = initX - this.width;
+        return true;
+    }
+
+    private boolean dragRightEdge(int cursorX) {
+
+        if (initX == -1) {
+            initX = this.x;
+            initW = this.width;
+        }
+
+        final int futureWidth = cursorX - initX;
+
+        if (futureWidth < this.minWidth) {
+            return false;
+        }
+
+        this.width = futureWidth;
+
+        // compensation for specified aspect ratio: top side stays, bottom side follows the width
+        if (this.aspectRatio != 0) {
+            this.height = (int) (this.width / this.aspectRatio);
+
+            // to prevent resizing out of the canvas on the Y axis
+            if (this.height + this.y >= this.canvasHeight) {
+                this.height = this.canvasHeight - this.y;
+                this.width = (int) (this.height * this.aspectRatio);
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Returns absolute value
+     *
+     * @param value
+     * @return absolute value
+     */
+    private static int abs(int value) {
+        return value >= 0 ? value : -value;
+    }
+}
@@ -0,0 +1,221 @@
+package com.google.code.gwt.crop.client.common;
+
+/**
+ * <p>Finds the most detailed area of an image, that is used as the automatic initial selection.</p>
+ *
+ * <p>Every pixel gets the edge energy: the gradient of the luminance. The energies are summed into a
+ * summed-area table, so the energy of any rectangle is taken from four table cells in O(1). Then windows
+ * of the requested aspect ratio are tried at several scales and positions, and the window with the best
+ * score <code>energy / sqrt(area)</code> wins. The score prefers the bigger windows for an evenly
+ * detailed image and tightens around the details, when they are concentrated in one place.</p>
+ *
+ * <p>The class doesn't touch DOM, so the same engine runs in the browser on a downscaled copy of the
+ * image and on the server. The work is proportional to the number of pixels, so the image should be
+ * downscaled to a couple of hundreds px first. Buffers are reused for the images of the same or smaller
+ * size, and results are stored in fields and replaced on every call.</p>
+ *
+ * <p>Usage example:
+ * <pre>
+ * SmartCrop smartCrop = new SmartCrop();
+ * smartCrop.setPixels(rgb, 160, 120); // pixels of the downscaled image
+ * smartCrop.find(1.5);
+ * int x = smartCrop.getX() * originalWidth / 160;
+ * </pre>
+ * </p>
+ *
+ * @author ilja.hamalainen@gmail.com (Ilja Hämäläinen)
+ * @since 0.5.6
+ */
+public class SmartCrop {
+
+    public static final double DEFAULT_MIN_SCALE = 0.5;
+    public static final double DEFAULT_MAX_SCALE = 1.0;
+
+    // scales are tried from the biggest one down with this step
+    private static final double SCALE_STEP = 0.1;
+
+    // windows are moved by this part of their shorter side
+    private static final int POSITIONS_PER_SIDE = 16;
+
+    private int imageWidth;
+    private int imageHeight;
+    private int[] luminance = new int[0];
+
+    // summed-area table of (imageWidth + 1) x (imageHeight + 1) cells, the first row and column are zeros
+    private double[] integral = new double[0];
+
+    private double minScale = DEFAULT_MIN_SCALE;
+    private double maxScale = DEFAULT_MAX_SCALE;
+
+    // the best window
+    private int x;
+    private int y;
+    private int width;
+    private int height;
+    private double score;
+
+    /**
+     * Sets the range of the window sizes relatively the biggest window, that fits into the image.
+     *
+     * @param minScale the smallest scale, greater than 0
+     * @param maxScale the biggest scale, not greater than 1
+     */
+    public void setScaleRange(double minScale, double maxScale) {
+        if (minScale <= 0 || maxScale > 1 || minScale > maxScale) {
+            throw new IllegalArgumentException("Invalid scale range " + minScale + " - " + maxScale);
+        }
+        this.minScale = minScale;
+        this.maxScale = maxScale;
+    }
+
+    /**
+     * Computes the energy map of the image.
+     *
+     * @param rgb pixels in the <code>0xRRGGBB</code> form row by row, the alpha channel is ignored
+     * @param width image width
+     * @param height image height
+     */
+    public void setPixels(int[] rgb, int width, int height) {
+
+        if (width <= 0 || height <= 0 || rgb.length < width * height) {
+            throw new IllegalArgumentException("Invalid image " + width + "x" + height + " of " + rgb.length + " pixels");
+        }
+
+        this.imageWidth = width;
+        this.imageHeight = height;
+
+        final int size = width * height;
+        if (this.luminance.length < size) this.luminance = new int[size];
+        final int[] lum = this.luminance;
+        for (int i = 0; i < size; i++) {
+            final int p = rgb[i];
+            lum[i] = (((p >> 16) & 0xFF) * 299 + ((p >> 8) & 0xFF) * 587 + (p & 0xFF) * 114) / 1000;
+        }
+
+        final int stride = width + 1;
+        if (this.integral.length < stride * (height + 1)) this.integral = new double[stride * (height + 1)];
+        final double[] sat = this.integral;
+        for (int i = 0; i < stride; i++) sat[i] = 0;
+
+        for (int row = 0; row < height; row++) {
+            final int up = Math.max(row - 1, 0) * width;
+            final int down = Math.min(row + 1, height - 1) * width;
+            final int line = row * width;
+            final int cell = (row + 1) * stride;
+
+            double rowSum = 0;
+            sat[cell] = 0;
+            for (int col = 0; col < width; col++) {
+                final int dx = lum[line + Math.min(col + 1, width - 1)] - lum[line + Math.max(col - 1, 0)];
+                final int dy = lum[down + col] - lum[up + col];
+                rowSum += Math.abs(dx) + Math.abs(dy);
+                sat[cell + col + 1] = sat[cell - stride + col + 1] + rowSum;
+            }
+        }
+    }
+
+    /**
+     * @return sum of the energy of the rectangle, that should be within the image
+     */
+    public double getEnergy(int x, int y, int width, int height) {
+        final int stride = this.imageWidth + 1;
+        final int top = y * stride;
+        final int bottom = (y + height) * stride;
+        final double[] sat = this.integral;
+        return sat[bottom + x + width] - sat[bottom + x] - sat[top + x + width] + sat[top + x];
+    }
+
+    /**
+     * Finds the best window. When the image has no details at all, the biggest window in the center is chosen.
+     *
+     * @param aspectRatio width/height of the window; 0 means the proportion of the image
+     */
+    public void find(double aspectRatio) {
+
+        final double ratio = (aspectRatio > 0) ? aspectRatio : (double) this.imageWidth / this.imageHeight;
+
+        // the biggest window of this proportion, that fits into the image
+        double baseWidth = this.imageWidth;
+        double baseHeight = this.imageWidth / ratio;
+        if (baseHeight > this.imageHeight) {
+            baseHeight = this.imageHeight;
+            baseWidth = this.imageHeight * ratio;
+        }
+
+        final double centerX = this.imageWidth / 2.0;
+        final double centerY = this.imageHeight / 2.0;
+        double bestDistance = Double.MAX_VALUE;
+        this.score = -1;
+
+        for (double scale = this.maxScale; scale >= this.minScale - 1e-9; scale -= SCALE_STEP) {
+            final int w = clamp((int) Math.round(baseWidth * scale), 1, this.imageWidth);
+            final int h = clamp((int) Math.round(baseHeight * scale), 1, this.imageHeight);
+            final double norm = Math.sqrt((double) w * h);
+            final int step = Math.max(1, Math.min(w, h) / POSITIONS_PER_SIDE);
+            final int lastX = this.imageWidth - w;
+            final int lastY = this.imageHeight - h;
+
+            for (int top = 0; top <= lastY; top = next(top, step, lastY)) {
+                for (int left = 0; left <= lastX; left = next(left, step, lastX)) {
+
+                    final double windowScore = this.getEnergy(left, top, w, h) / norm;
+                    if (windowScore < this.score) continue;
+
+                    // equal windows: the one closer to the center
+                    final double dx = left + w / 2.0 - centerX;
+                    final double dy = top + h / 2.0 - centerY;
+                    final double distance = dx * dx + dy * dy;
+                    if (windowScore == this.score && distance >= bestDistance) continue;
+
+                    this.score = windowScore;
+                    bestDistance = distance;
+                    this.x = left;
+                    this.y = top;
+                    this.width = w;
+                    this.height = h;
+                }
+            }
+        }
+    }
+
+    /**
+     * @return X coordinate of the best window
+     */
+    public int getX() {
+        return this.x;
+    }
+
+    /**
+     * @return Y coordinate of the best window
+     */
+    public int getY() {
+        return this.y;
+    }
+
+    public int getWidth() {
+        return this.width;
+    }
+
+    public int getHeight() {
+        return this.height;
+    }
+
+    /**
+     * @return score of the best window, energy per px of its side
+     */
+    public double getScore() {
+        return this.score;
+    }
+
+    /**
+     * Next window position; the last position is always tried, so the windows reach the right and bottom edges
+     */
+    private static int next(int position, int step, int last) {
+        if (position == last) return last + 1;
+        return Math.min(position + step, last);
+    }
+
+    private static int clamp(int value, int min, int max) {
+        return value < min ? min : (value > max ? max : value);
+    }
+}
@@ -0,0 +1,175 @@
+package com.google.code.gwt.crop.client.common;
+
+/**
+ * <p>Geometry of an image pyramid in the Deep Zoom (DZI) layout.</p>
+ *
+ * <p>The level <code>maxLevel</code> is the full resolution image, every lower level is twice smaller,
+ * down to the level 0 of 1x1 px. Every level is cut into square tiles of <code>tileSize</code> px,
+ * the last tiles in a row or column could be smaller. Neighbouring tiles overlap by <code>overlap</code>
+ * px on each side, that is shared with another tile.</p>
+ *
+ * <p>The class doesn't touch DOM, so the same geometry is used by the browser, that shows the tiles,
+ * and by the server, that cuts them.</p>
+ *
+ * @author ilja.hamalainen@gmail.com (Ilja Hämäläinen)
+ * @since 0.5.6
+ */
+public class TileGrid {
+
+    private final int width;
+    private final int height;
+    private final int tileSize;
+    private final int overlap;
+    private final int maxLevel;
+
+    /**
+     * @param width full resolution image width in px
+     * @param height full resolution image height in px
+     * @param tileSize tile size in px without the overlap
+     * @param overlap overlap of the neighbouring tiles in px
+     */
+    public TileGrid(int width, int height, int tileSize, int overlap) {
+
+        if (width <= 0 || height <= 0 || tileSize <= 0 || overlap < 0) {
+            throw new IllegalArgumentException("Invalid pyramid " + width + "x" + height
+                    + ", tile " + tileSize + ", overlap " + overlap);
+        }
+
+        this.width = width;
+        this.height = height;
+        this.tileSize = tileSize;
+        this.overlap = overlap;
+
+        final int longest = Math.max(width, height);
+        int level = 0;
+        while ((1L << level) < longest) level++;
+        this.maxLevel = level;
+    }
+
+    public int getWidth() {
+        return this.width;
+    }
+
+    public int getHeight() {
+        return this.height;
+    }
+
+    public int getTileSize() {
+        return this.tileSize;
+    }
+
+    public int getOverlap() {
+        return this.overlap;
+    }
+
+    /**
+     * @return level of the full resolution image
+     */
+    public int getMaxLevel() {
+        return this.maxLevel;
+    }
+
+    /**
+     * @return the biggest level, that fits into a single tile
+     */
+    public int getSingleTileLevel() {
+        int level = this.maxLevel;
+        while (level > 0 && (this.getLevelWidth(level) > this.tileSize || this.getLevelHeight(level) > this.tileSize)) {
+            level--;
+        }
+        return level;
+    }
+
+    /**
+     * @param level pyramid level
+     * @return scale of the level relatively the full resolution image
+     */
+    public double getLevelScale(int level) {
+        return 1.0 / (1L << (this.maxLevel - level));
+    }
+
+    public int getLevelWidth(int level) {
+        return (int) Math.ceil(this.width * this.getLevelScale(level));
+    }
+
+    public int getLevelHeight(int level) {
+        return (int) Math.ceil(this.height * this.getLevelScale(level));
+    }
+
+    /**
+     * Finds the level, that should be shown at the given scale: the smallest one, which is not
+     * less detailed, than the screen. Levels below the single tile one are never chosen.
+     *
+     * @param scale displayed size relatively the full resolution image
+     * @return pyramid level
+     */
+    public int getLevelFor(double scale) {
+        int level = this.getSingleTileLevel();
+        while (level < this.maxLevel && this.getLevelScale(level) < scale) level++;
+        return level;
+    }
+
+    public int getColumns(int level) {
+        return (this.getLevelWidth(level) + this.tileSize - 1) / this.tileSize;
+    }
+
+    public int getRows(int level) {
+        return (this.getLevelHeight(level) + this.tileSize - 1) / this.tileSize;
+    }
+
+    /**
+     * @param level pyramid level
+     * @param x X coordinate in px of the level
+     * @return column of the tile, that contains the point, within the level bounds
+     */
+    public int getColumnAt(int level, int x) {
+        return clamp(x / this.tileSize, 0, this.getColumns(level) - 1);
+    }
+
+    /**
+     * @param level pyramid level
+     * @param y Y coordinate in px of the level
+     * @return row of the tile, that contains the point, within the level bounds
+     */
+    public int getRowAt(int level, int y) {
+        return clamp(y / this.tileSize, 0, this.getRows(level) - 1);
+    }
+
+    /**
+     * @return X coordinate of the tile image (including the overlap) in px of the level
+     */
+    public int getTileX(int level, int column) {
+        return column * this.tileSize - (column > 0 ? this.overlap : 0);
+    }
+
+    /**
+     * @return Y coordinate of the tile image (including the overlap) in px of the level
+     */
+    public int getTileY(int level, int row) {
+        return row * this.tileSize - (row > 0 ? this.overlap : 0);
+    }
+
+    /**
+     * @return width of the tile image (including the overlap) in px
+     */
+    public int getTileWidth(int level, int column) {
+        return this.tileSpan(this.getLevelWidth(level), this.getColumns(level), column);
+    }
+
+    /**
+     * @return height of the tile image (including the overlap) in px
+     */
+    public int getTileHeight(int level, int row) {
+        return this.tileSpan(this.getLevelHeight(level), this.getRows(level), row);
+    }
+
+    private int tileSpan(int levelSize, int count, int index) {
+        final int start = index * this.tileSize;
+        final int size = Math.min(this.tileSize, levelSize - start);
+        return size + (index > 0 ? this.overlap : 0) + (index < count - 1 ? this.overlap : 0);
+    }
+
+    private static int clamp(int value, int min, int max) {
+        return value < min ? min : (value > max ? max : value);
+    }
+}
@@ -0,0 +1,120 @@
+package com.google.code.gwt.crop.client.common;
+
+/**
+ * <p>Histogram of durations in milliseconds with fixed exponential buckets.</p>
+ *
+ * <p>Buckets are chosen around the frame budget (16ms at 60Hz), so it is easy to see how many
+ * frames of the dragging were too slow. Adding a value doesn't allocate anything.</p>
+ *
+ * @author ilja.hamalainen@gmail.com (Ilja Hämäläinen)
+ * @since 0.5.6
+ */
+public class TimingHistogram {
+
+    // upper bounds of the buckets in ms, the last bucket has no upper bound
+    private static final double[] BOUNDS = {0.25, 0.5, 1, 2, 4, 8, 16, 33, 66};
+
+    private final int[] buckets = new int[BOUNDS.length + 1];
+    private int count;
+    private double total;
+    private double max;
+
+    /**
+     * Adds one measurement.
+     *
+     * @param milliseconds duration
+     */
+    public void add(double milliseconds) {
+
+        int i = 0;
+        while (i < BOUNDS.length && milliseconds > BOUNDS[i]) i++;
+
+        this.buckets[i]++;
+        this.count++;
+        this.total += milliseconds;
+        if (milliseconds > this.max) this.max = milliseconds;
+    }
+
+    /**
+     * Removes all the measurements.
+     */
+    public void reset() {
+        for (int i = 0; i < this.buckets.length; i++) this.buckets[i] = 0;
+        this.count = 0;
+        this.total = 0;
+        this.max = 0;
+    }
+
+    /**
+     * @return number of measurements
+     */
+    public int getCount() {
+        return this.count;
+    }
+
+    /**
+     * @return sum of all the measurements in ms
+     */
+    public double getTotal() {
+        return this.total;
+    }
+
+    /**
+     * @return average duration in ms, 0 if there are no measurements
+     */
+    public double getMean() {
+        return (this.count == 0) ? 0 : this.total / this.count;
+    }
+
+    /**
+     * @return the longest duration in ms
+     */
+    public double getMax() {
+        return this.max;
+    }
+
+    /**
+     * @return number of buckets
+     */
+    public int getBucketCount() {
+        return this.buckets.length;
+    }
+
+    /**
+     * @param bucket bucket index
+     * @return number of measurements in the bucket
+     */
+    public int getBucketValue(int bucket) {
+        return this.buckets[bucket];
+    }
+
+    /**
+     * @param bucket bucket index
+     * @return upper bound of the bucket in ms (inclusive), {@link Double#POSITIVE_INFINITY} for the last one
+     */
+    public double getBucketUpperBound(int bucket) {
+        return (bucket < BOUNDS.length) ? BOUNDS[bucket] : Double.POSITIVE_INFINITY;
+    }
+
+    /**
+     * Estimates the percentile with the precision of the buckets.
+     *
+     * @param percent value between 0 and 100
+     * @return upper bound of the bucket, that contains the percentile (but not more than the maximum),
+     * 0 if there are no measurements
+     */
+    public double getPercentile(double percent) {
+
+        if (this.count == 0) return 0;
+
+        final double rank = Math.ceil(this.count * percent / 100);
+        int seen = 0;
+        for (int i = 0; i < this.buckets.length; i++) {
+            seen += this.buckets[i];
+            if (seen >= rank && seen > 0) {
+                return Math.min(this.getBucketUpperBound(i), this.max);
+            }
+        }
+        return this.max;
+    }
+}
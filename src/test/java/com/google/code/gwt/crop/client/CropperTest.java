@@ -1,13 +1,20 @@
 package com.google.code.gwt.crop.client;
 
 import com.google.gwt.dom.client.Element;
+import com.google.gwt.event.dom.client.MouseMoveEvent;
 import com.google.gwt.event.dom.client.MouseOutEvent;
+import com.google.gwt.event.dom.client.MouseUpEvent;
 import com.google.gwtmockito.GwtMock;
 import com.google.gwtmockito.GwtMockitoTestRunner;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
 import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.spy;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
@@ -23,6 +30,12 @@ public class CropperTest {
     @GwtMock
     private MouseOutEvent mouseOutEvent;
 
+    @GwtMock
+    private MouseMoveEvent mouseMoveEvent;
+
+    @GwtMock
+    private MouseUpEvent mouseUpEvent;
+
     /**
      * If mouse coordinates are within canvas area, then coordinates are not modified
      */
@@ -135,4 +148,300 @@ public class CropperTest {
 
     }
 
+    /**
+     * When frame coalescing is switched off, every mouse move is applied immediately
+     */
+    @Test
+    public void should_drag_immediately_without_frame_coalescing() {
+
+        GWTCropper cropper = spy(new GWTCropper(""));
+
+        // given
+        cropper.setFrameCoalescing(false);
+        cropper.isDown = true;
+
+        // and
+        when(mouseMoveEvent.getRelativeX(any(Element.class))).thenReturn(15);
+        when(mouseMoveEvent.getRelativeY(any(Element.class))).thenReturn(25);
+
+        // when
+        cropper.onMouseMove(mouseMoveEvent);
+
+        // then
+        verify(cropper).provideDragging(15, 25);
+    }
+
+    /**
+     * With frame coalescing, mouse moves are postponed to the next animation frame,
+     * but the latest position is applied, when user releases the mouse button
+     */
+    @Test
+    public void should_apply_only_latest_position_with_frame_coalescing() {
+
+        GWTCropper cropper = spy(new GWTCropper(""));
+
+        // given
+        cropper.isDown = true;
+
+        // and
+        when(mouseMoveEvent.getRelativeX(any(Element.class))).thenReturn(15, 17);
+        when(mouseMoveEvent.getRelativeY(any(Element.class))).thenReturn(25, 28);
+
+        // when
+        cropper.onMouseMove(mouseMoveEvent);
+        cropper.onMouseMove(mouseMoveEvent);
+
+        // then nothing is dragged yet
+        verify(cropper, never()).provideDragging(anyInt(), anyInt());
+
+        // when
+        cropper.onMouseUp(mouseUpEvent);
+
+        // then expected only the latest position
+        verify(cropper).provideDragging(17, 28);
+        verify(cropper, never()).provideDragging(15, 25);
+    }
+
+
+    /**
+     * When the displayed image is a downscaled copy, the selection is reported in pixels of the original
+     */
+    @Test
+    public void should_map_selection_of_proxy_image_to_original() {
+
+        GWTCropper cropper = new GWTCropper("");
+
+        // given 400x250 proxy of the 4000x2500 image, shown 800px wide
+        cropper.setOriginalSize(4000, 2500);
+        cropper.setWidth(800);
+        cropper.setInitialSelection(100, 50, 200, 100);
+
+        // when
+        cropper.computeCanvasSize(400, 250);
+
+        // then
+        assertEquals(800, cropper.getCanvasWidth());
+        assertEquals(500, cropper.getCanvasHeight());
+        assertEquals(500, cropper.getSelectionXCoordinate());
+        assertEquals(250, cropper.getSelectionYCoordinate());
+        assertEquals(1000, cropper.getSelectionWidth());
+        assertEquals(500, cropper.getSelectionHeight());
+    }
+
+    /**
+     * In the progressive mode the selection is available before any version of the image is loaded,
+     * if the original size and the widget size are known
+     */
+    @Test
+    public void should_build_progressive_canvas_before_image_is_loaded() {
+
+        GWTCropper cropper = new GWTCropper("full.jpg", "placeholder.jpg", "medium.jpg");
+
+        // given
+        cropper.setOriginalSize(4000, 2500);
+        cropper.setWidth(800);
+        cropper.setInitialSelection(100, 50, 200, 100);
+
+        // when widget is attached
+        cropper.onLoad();
+
+        // then
+        assertEquals(800, cropper.getCanvasWidth());
+        assertEquals(500, cropper.getCanvasHeight());
+        assertEquals(500, cropper.getSelectionXCoordinate());
+        assertEquals(1000, cropper.getSelectionWidth());
+    }
+
+    /**
+     * Without the widget size the placeholder doesn't give the canvas size: the original size is used,
+     * or the image itself is waited for
+     */
+    @Test
+    public void should_not_size_progressive_canvas_by_placeholder() {
+
+        GWTCropper cropper = new GWTCropper("full.jpg", "placeholder.jpg");
+
+        // when the placeholder is loaded, but nothing tells the original size
+        boolean isSized = cropper.computeTierCanvasSize(40, 25, false);
+
+        // then
+        assertFalse(isSized);
+        assertEquals(-1, cropper.getCanvasWidth());
+
+        // when the image itself is loaded
+        isSized = cropper.computeTierCanvasSize(4000, 2500, true);
+
+        // then
+        assertTrue(isSized);
+        assertEquals(4000, cropper.getCanvasWidth());
+        assertEquals(2500, cropper.getCanvasHeight());
+
+        // given the original size
+        cropper = new GWTCropper("full.jpg", "placeholder.jpg");
+        cropper.setOriginalSize(4000, 2500);
+
+        // when the placeholder is loaded
+        isSized = cropper.computeTierCanvasSize(40, 25, false);
+
+        // then the canvas is of the original size
+        assertTrue(isSized);
+        assertEquals(4000, cropper.getCanvasWidth());
+        assertEquals(2500, cropper.getCanvasHeight());
+    }
+
+    /**
+     * The widget size alone doesn't let the placeholder build the canvas, otherwise the selection
+     * would be reported in pixels of the placeholder
+     */
+    @Test
+    public void should_wait_for_image_when_only_widget_size_is_given() {
+
+        GWTCropper cropper = new GWTCropper("full.jpg", "placeholder.jpg", "medium.jpg");
+
+        // given
+        cropper.setWidth(800);
+
+        // when the placeholder and the medium version are loaded
+        assertFalse(cropper.computeTierCanvasSize(40, 25, false));
+        assertFalse(cropper.computeTierCanvasSize(400, 250, false));
+
+        // then
+        assertEquals(-1, cropper.getCanvasHeight());
+
+        // when the image itself is loaded
+        assertTrue(cropper.computeTierCanvasSize(4000, 2500, true));
+        cropper.setInitialSelection(100, 50, 200, 100);
+
+        // then the selection is in pixels of the image
+        assertEquals(800, cropper.getCanvasWidth());
+        assertEquals(500, cropper.getCanvasHeight());
+        assertEquals(500, cropper.getSelectionXCoordinate());
+        assertEquals(250, cropper.getSelectionYCoordinate());
+        assertEquals(1000, cropper.getSelectionWidth());
+    }
+
+    /**
+     * Lazy cropper creates nothing until it is activated, and keeps the selection, when it is released
+     */
+    @Test
+    public void should_keep_selection_of_released_lazy_cropper() {
+
+        GWTCropper cropper = GWTCropper.createLazy("full.jpg", "placeholder.jpg");
+
+        // given
+        cropper.setOriginalSize(4000, 2500);
+        cropper.setWidth(800);
+        cropper.setInitialSelection(100, 50, 200, 100);
+        assertFalse(cropper.isActive());
+
+        // when widget is attached (IntersectionObserver is not available here, so it is activated right away)
+        cropper.onLoad();
+
+        // then
+        assertTrue(cropper.isActive());
+        assertEquals(500, cropper.getCanvasHeight());
+
+        // when it goes far away from the viewport
+        cropper.release();
+
+        // then the selection is kept
+        assertFalse(cropper.isActive());
+        assertEquals(500, cropper.getSelectionXCoordinate());
+        assertEquals(250, cropper.getSelectionYCoordinate());
+        assertEquals(1000, cropper.getSelectionWidth());
+    }
+
+    /**
+     * The image could be replaced with or without resetting the selection
+     */
+    @Test
+    public void should_replace_image_and_reset_selection() {
+
+        GWTCropper cropper = new GWTCropper("first.jpg");
+
+        // given
+        cropper.setInitialSelection(10, 20, 100, 50);
+
+        // when the selection is kept
+        cropper.setImageURL("second.jpg", false);
+
+        // then
+        assertEquals("second.jpg", cropper.getImageURL());
+        assertEquals(10, cropper.getSelectionXCoordinate());
+        assertEquals(100, cropper.getSelectionWidth());
+
+        // when the selection is reset, then default one will be shown on the load
+        cropper.setImageURL("third.jpg");
+
+        // then
+        assertEquals(-1, cropper.getSelectionXCoordinate());
+        assertEquals(-1, cropper.getSelectionWidth());
+    }
+
+    /**
+     * In the zoomable mode the selection is given in pixels of the full resolution image at any zoom
+     */
+    @Test
+    public void should_keep_full_resolution_selection_when_zooming() {
+
+        GWTCropper cropper = GWTCropper.createTiled(TileSource.template("tiles/{z}/{x}/{y}.png", 256), 4000, 2000);
+
+        // given
+        cropper.setSize(800, 400);
+        cropper.setInitialSelection(100, 50, 200, 100);
+
+        // when widget is attached
+        cropper.onLoad();
+
+        // then the whole image fits into the viewport
+        assertEquals(0.2, cropper.getZoom(), 1e-9);
+        assertEquals(500, cropper.getSelectionXCoordinate());
+        assertEquals(1000, cropper.getSelectionWidth());
+
+        // when
+        cropper.setZoom(0.4);
+
+        // then
+        assertEquals(0.4, cropper.getZoom(), 1e-9);
+        assertEquals(500, cropper.getSelectionXCoordinate());
+        assertEquals(250, cropper.getSelectionYCoordinate());
+        assertEquals(1000, cropper.getSelectionWidth());
+        assertEquals(500, cropper.getSelectionHeight());
+
+        // zoom is limited by the full resolution
+        cropper.setZoom(5);
+        assertEquals(1, cropper.getZoom(), 1e-9);
+    }
+
+    @Test
+    public void should_keep_selection_when_zooming_out_and_back() {
+
+        GWTCropper cropper = GWTCropper.createTiled(TileSource.template("tiles/{z}/{x}/{y}.png", 256), 60000, 30000);
+
+        // given the small selection at the full resolution
+        cropper.setSize(800, 400);
+        cropper.onLoad();
+        cropper.setZoom(1);
+        cropper.setInitialSelection(1003, 501, 107, 61);
+
+        // when the selection is a pixel in the viewport
+        cropper.setZoom(0);
+
+        // then
+        assertEquals(800.0 / 60000, cropper.getZoom(), 1e-9);
+        assertSelection(cropper, 1003, 501, 107, 61);
+
+        // when
+        cropper.setZoom(1);
+
+        // then
+        assertSelection(cropper, 1003, 501, 107, 61);
+    }
+
+    private static void assertSelection(GWTCropper cropper, int x, int y, int width, int height) {
+        assertEquals(x, cropper.getSelectionXCoordinate());
+        assertEquals(y, cropper.getSelectionYCoordinate());
+        assertEquals(width, cropper.getSelectionWidth());
+        assertEquals(height, cropper.getSelectionHeight());
+    }
 }
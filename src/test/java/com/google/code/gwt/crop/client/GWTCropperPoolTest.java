@@ -0,0 +1,51 @@
+package com.google.code.gwt.crop.client;
+
+import com.google.gwtmockito.GwtMockitoTestRunner;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+/**
+ * Tests for recycling of the cropper widgets
+ */
+@RunWith(GwtMockitoTestRunner.class)
+public class GWTCropperPoolTest {
+
+    @Test
+    public void should_reuse_recycled_cropper() {
+
+        // given
+        GWTCropperPool pool = new GWTCropperPool(2);
+        GWTCropper first = pool.obtain("first.jpg");
+
+        // when
+        pool.recycle(first);
+        GWTCropper second = pool.obtain("second.jpg");
+
+        // then the same widget shows another image
+        assertSame(first, second);
+        assertEquals("second.jpg", second.getImageURL());
+        assertEquals(0, pool.size());
+    }
+
+    @Test
+    public void should_keep_no_more_than_max_size() {
+
+        // given
+        GWTCropperPool pool = new GWTCropperPool(1);
+        GWTCropper first = pool.obtain("first.jpg");
+        GWTCropper second = pool.obtain("second.jpg");
+        assertNotSame(first, second);
+
+        // when
+        pool.recycle(first);
+        pool.recycle(first);
+        pool.recycle(second);
+
+        // then
+        assertEquals(1, pool.size());
+    }
+}
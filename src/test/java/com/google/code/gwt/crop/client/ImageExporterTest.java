@@ -0,0 +1,44 @@
+package com.google.code.gwt.crop.client;
+
+import com.google.gwtmockito.GwtMockitoTestRunner;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+
+/**
+ * Tests for the export of the selected area
+ */
+@RunWith(GwtMockitoTestRunner.class)
+public class ImageExporterTest {
+
+    @Test
+    public void should_fit_into_max_size_without_enlarging() {
+
+        // wide area is limited by width
+        assertEquals(0.25, ImageExporter.fitScale(1600, 800, 400, 400), 1e-9);
+
+        // tall area is limited by height
+        assertEquals(0.5, ImageExporter.fitScale(300, 800, 400, 400), 1e-9);
+
+        // small area and no limits
+        assertEquals(1, ImageExporter.fitScale(300, 200, 400, 400), 1e-9);
+        assertEquals(1, ImageExporter.fitScale(3000, 2000, 0, 0), 1e-9);
+    }
+
+    @Test
+    public void should_fail_before_image_is_loaded() {
+
+        // given
+        GWTCropper cropper = new GWTCropper("image.jpg");
+        ICropperExportCallback callback = mock(ICropperExportCallback.class);
+
+        // when
+        cropper.exportSelection(400, callback);
+
+        // then
+        verify(callback).onFailure("Image is not loaded yet");
+    }
+}
@@ -0,0 +1,165 @@
+package com.google.code.gwt.crop.client;
+
+import com.google.gwtmockito.GwtMockitoTestRunner;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+/**
+ * Tests for the delivery of the selection to the preview widget
+ */
+@RunWith(GwtMockitoTestRunner.class)
+public class PreviewUpdaterTest {
+
+    private IGWTCropperPreview preview;
+    private PreviewUpdater updater;
+    private double time;
+
+    @Before
+    public void setUp() {
+        preview = mock(IGWTCropperPreview.class);
+        time = 1000;
+
+        updater = new PreviewUpdater() {
+
+            @Override
+            double now() {
+                return time;
+            }
+        };
+        updater.add(preview);
+    }
+
+    @Test
+    public void should_skip_unchanged_selection() {
+
+        // when
+        updater.update(50, 40, 10, 20);
+        updater.update(50, 40, 10, 20);
+
+        // then
+        verify(preview, times(1)).updatePreview(50, 40, 10, 20);
+    }
+
+    @Test
+    public void should_update_again_after_init() {
+
+        // given
+        updater.update(50, 40, 10, 20);
+
+        // when image is replaced
+        updater.init("medium.jpg", 400, 300, 0);
+        updater.update(50, 40, 10, 20);
+
+        // then
+        verify(preview, times(2)).updatePreview(50, 40, 10, 20);
+    }
+
+    @Test
+    public void should_postpone_updates_within_refresh_interval() {
+
+        // given
+        updater.setRefreshInterval(100);
+        updater.update(50, 40, 10, 20);
+
+        // when
+        time += 30;
+        updater.update(50, 40, 11, 20);
+        time += 30;
+        updater.update(50, 40, 12, 20);
+
+        // then
+        verify(preview, never()).updatePreview(50, 40, 11, 20);
+        verify(preview, never()).updatePreview(50, 40, 12, 20);
+
+        // when dragging is finished
+        updater.flush();
+
+        // then only the latest selection is delivered
+        verify(preview).updatePreview(50, 40, 12, 20);
+        verify(preview, never()).updatePreview(50, 40, 11, 20);
+    }
+
+    @Test
+    public void should_update_after_refresh_interval() {
+
+        // given
+        updater.setRefreshInterval(100);
+        updater.update(50, 40, 10, 20);
+
+        // when
+        time += 100;
+        updater.update(50, 40, 11, 20);
+
+        // then
+        verify(preview).updatePreview(50, 40, 11, 20);
+    }
+
+    @Test
+    public void should_drop_postponed_selection_when_it_returns_back() {
+
+        // given
+        updater.setRefreshInterval(100);
+        updater.update(50, 40, 10, 20);
+        time += 10;
+        updater.update(50, 40, 11, 20);
+
+        // when
+        updater.update(50, 40, 10, 20);
+        updater.flush();
+
+        // then
+        verify(preview, times(1)).updatePreview(anyInt(), anyInt(), anyInt(), anyInt());
+    }
+
+    @Test
+    public void should_deliver_selection_to_all_previews() {
+
+        // given
+        IGWTCropperPreview second = mock(IGWTCropperPreview.class);
+        updater.add(second);
+
+        // when
+        updater.init("image.jpg", 400, 300, 1);
+        updater.update(50, 40, 10, 20);
+
+        // then
+        verify(preview).init("image.jpg", 400, 300, 1);
+        verify(preview).updatePreview(50, 40, 10, 20);
+        verify(second).init("image.jpg", 400, 300, 1);
+        verify(second).updatePreview(50, 40, 10, 20);
+    }
+
+    @Test
+    public void should_show_current_selection_in_late_preview() {
+
+        // given
+        updater.init("image.jpg", 400, 300, 0);
+        updater.update(50, 40, 10, 20);
+
+        // when
+        IGWTCropperPreview late = mock(IGWTCropperPreview.class);
+        updater.add(late);
+
+        // then
+        verify(late).init("image.jpg", 400, 300, 0);
+        verify(late).updatePreview(50, 40, 10, 20);
+    }
+
+    @Test
+    public void should_not_update_removed_preview() {
+
+        // when
+        updater.remove(preview);
+        updater.update(50, 40, 10, 20);
+
+        // then
+        verify(preview, never()).updatePreview(anyInt(), anyInt(), anyInt(), anyInt());
+    }
+}
@@ -0,0 +1,112 @@
+package com.google.code.gwt.crop.client;
+
+import com.google.code.gwt.crop.client.SelectionChangeEvent.Delivery;
+import com.google.gwt.event.shared.GwtEvent;
+import com.google.gwt.event.shared.HandlerRegistration;
+import com.google.gwt.event.shared.HasHandlers;
+import com.google.gwtmockito.GwtMockitoTestRunner;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+/**
+ * Tests for the selection change events
+ */
+@RunWith(GwtMockitoTestRunner.class)
+public class SelectionChangeDispatcherTest {
+
+    private HasHandlers source;
+    private SelectionChangeDispatcher dispatcher;
+
+    @Before
+    public void setUp() {
+        source = mock(HasHandlers.class);
+        dispatcher = new SelectionChangeDispatcher(source);
+
+        // initial selection
+        dispatcher.update(10, 20, 100, 50);
+    }
+
+    @Test
+    public void should_not_fire_without_handlers() {
+
+        // when
+        dispatcher.update(11, 20, 100, 50);
+        dispatcher.draggingFinished();
+
+        // then
+        verify(source, never()).fireEvent(any(GwtEvent.class));
+    }
+
+    @Test
+    public void should_fire_on_every_change_for_frame_handlers() {
+
+        // given
+        dispatcher.register(mock(HandlerRegistration.class), Delivery.FRAME);
+
+        // when
+        dispatcher.update(11, 20, 100, 50);
+        dispatcher.update(11, 20, 100, 50);
+        dispatcher.update(12, 20, 100, 50);
+
+        // then unchanged selection is not reported
+        List<SelectionChangeEvent> events = firedEvents(2);
+        assertEquals(11, events.get(0).getX());
+        assertEquals(12, events.get(1).getX());
+        assertEquals(Delivery.FRAME, events.get(1).getDelivery());
+    }
+
+    @Test
+    public void should_fire_once_at_drag_end() {
+
+        // given
+        dispatcher.register(mock(HandlerRegistration.class), Delivery.DRAG_END);
+
+        // when
+        dispatcher.update(11, 20, 100, 50);
+        dispatcher.update(12, 21, 100, 50);
+        dispatcher.draggingFinished();
+        dispatcher.draggingFinished();
+
+        // then
+        SelectionChangeEvent event = firedEvents(1).get(0);
+        assertEquals(Delivery.DRAG_END, event.getDelivery());
+        assertEquals(12, event.getX());
+        assertEquals(21, event.getY());
+        assertEquals(100, event.getWidth());
+        assertEquals(50, event.getHeight());
+    }
+
+    @Test
+    public void should_stop_firing_after_handler_is_removed() {
+
+        // given
+        HandlerRegistration widgetRegistration = mock(HandlerRegistration.class);
+        HandlerRegistration registration = dispatcher.register(widgetRegistration, Delivery.FRAME);
+
+        // when
+        registration.removeHandler();
+        dispatcher.update(11, 20, 100, 50);
+
+        // then
+        verify(widgetRegistration).removeHandler();
+        verify(source, never()).fireEvent(any(GwtEvent.class));
+    }
+
+    @SuppressWarnings("unchecked")
+    private List<SelectionChangeEvent> firedEvents(int count) {
+        ArgumentCaptor<SelectionChangeEvent> captor = ArgumentCaptor.forClass(SelectionChangeEvent.class);
+        verify(source, times(count)).fireEvent(captor.capture());
+        return captor.getAllValues();
+    }
+}
@@ -0,0 +1,67 @@
+package com.google.code.gwt.crop.client.common;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+/**
+ * Tests for the least recently used cache
+ */
+public class LruCacheTest {
+
+    private final List<String> evicted = new ArrayList<String>();
+
+    private final LruCache<String, Integer> cache = new LruCache<String, Integer>(2) {
+
+        @Override
+        protected void onEvicted(String key, Integer value) {
+            evicted.add(key);
+        }
+    };
+
+    @Test
+    public void should_evict_least_recently_used() {
+
+        // given
+        cache.put("a", 1);
+        cache.put("b", 2);
+
+        // when "a" is used again and one more entry comes
+        cache.get("a");
+        cache.put("c", 3);
+
+        // then
+        assertEquals(Arrays.asList("b"), evicted);
+        assertNull(cache.get("b"));
+        assertEquals(Integer.valueOf(1), cache.get("a"));
+    }
+
+    @Test
+    public void should_evict_on_shrinking_and_clear() {
+
+        // given
+        cache.setCapacity(3);
+        cache.put("a", 1);
+        cache.put("b", 2);
+        cache.put("c", 3);
+
+        // when
+        cache.setCapacity(1);
+
+        // then
+        assertEquals(Arrays.asList("a", "b"), evicted);
+
+        // when
+        cache.clear();
+
+        // then
+        assertEquals(Arrays.asList("a", "b", "c"), evicted);
+        assertEquals(0, cache.size());
+        assertEquals(1, cache.getCapacity());
+    }
+}
@@ -0,0 +1,215 @@
+package com.google.code.gwt.crop.client.common;
+
+import com.google.code.gwt.crop.client.Constants;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for the DOM-free selection geometry
+ */
+public class SelectionModelTest {
+
+    private SelectionModel selection;
+
+    @Before
+    public void setUp() {
+        selection = new SelectionModel();
+        selection.setCanvasSize(400, 300);
+        selection.setMinimalSize(10, 10);
+        selection.setSelection(100, 100, 50, 40);
+    }
+
+    @Test
+    public void should_move_selection_with_background() {
+
+        // when user grabs the selection at (110, 110) and moves it by (+20, +5)
+        selection.drag(Constants.DRAG_BACKGROUND, 110, 110);
+        selection.drag(Constants.DRAG_BACKGROUND, 130, 115);
+
+        // then
+        assertSelection(120, 105, 50, 40);
+    }
+
+    @Test
+    public void should_not_move_selection_out_of_canvas() {
+
+        // when
+        selection.drag(Constants.DRAG_BACKGROUND, 110, 110);
+        selection.drag(Constants.DRAG_BACKGROUND, 1000, -50);
+
+        // then selection sticks to the top right corner
+        assertSelection(350, 0, 50, 40);
+    }
+
+    @Test
+    public void should_resize_with_bottom_right_corner() {
+
+        // when
+        selection.drag(Constants.DRAG_BOTTOM_RIGHT_CORNER, 150, 140);
+        selection.drag(Constants.DRAG_BOTTOM_RIGHT_CORNER, 170, 150);
+
+        // then
+        assertSelection(100, 100, 70, 50);
+    }
+
+    @Test
+    public void should_resize_with_top_left_corner() {
+
+        // when
+        selection.drag(Constants.DRAG_TOP_LEFT_CORNER, 100, 100);
+        selection.drag(Constants.DRAG_TOP_LEFT_CORNER, 90, 80);
+
+        // then
+        assertSelection(90, 80, 60, 60);
+    }
+
+    @Test
+    public void should_ignore_resizing_smaller_than_minimal_size() {
+
+        // when
+        selection.drag(Constants.DRAG_BOTTOM_RIGHT_CORNER, 150, 140);
+        boolean isChanged = selection.drag(Constants.DRAG_BOTTOM_RIGHT_CORNER, 105, 140);
+
+        // then
+        assertFalse(isChanged);
+        assertSelection(100, 100, 50, 40);
+    }
+
+    @Test
+    public void should_keep_aspect_ratio() {
+
+        // given
+        selection.setAspectRatio(2);
+        selection.setSelection(100, 100, 60, 30);
+
+        // when cursor goes mostly right
+        selection.drag(Constants.DRAG_BOTTOM_RIGHT_CORNER, 160, 130);
+        selection.drag(Constants.DRAG_BOTTOM_RIGHT_CORNER, 200, 135);
+
+        // then height follows the width
+        assertSelection(100, 100, 100, 50);
+    }
+
+    @Test
+    public void should_keep_aspect_ratio_within_canvas() {
+
+        // given
+        selection.setAspectRatio(1);
+        selection.setSelection(320, 200, 50, 50);
+
+        // when cursor goes far down
+        selection.drag(Constants.DRAG_BOTTOM_RIGHT_CORNER, 370, 250);
+        selection.drag(Constants.DRAG_BOTTOM_RIGHT_CORNER, 372, 300);
+
+        // then width is limited by the right canvas border
+        assertSelection(320, 200, 80, 80);
+    }
+
+    @Test
+    public void should_remember_initial_state_until_reset() {
+
+        // given
+        selection.drag(Constants.DRAG_BACKGROUND, 110, 110);
+        selection.drag(Constants.DRAG_BACKGROUND, 120, 110);
+        selection.reset();
+
+        // when next dragging starts at another point of selection
+        assertTrue(selection.drag(Constants.DRAG_BACKGROUND, 140, 120));
+        selection.drag(Constants.DRAG_BACKGROUND, 150, 120);
+
+        // then
+        assertSelection(120, 100, 50, 40);
+    }
+
+    @Test
+    public void should_find_action_under_the_point() {
+
+        // selection is (100, 100, 50, 40), handle size is 10px
+        assertEquals(Constants.DRAG_TOP_LEFT_CORNER, selection.getActionAt(97, 104, 10));
+        assertEquals(Constants.DRAG_TOP_RIGHT_CORNER, selection.getActionAt(150, 100, 10));
+        assertEquals(Constants.DRAG_BOTTOM_LEFT_CORNER, selection.getActionAt(100, 140, 10));
+        assertEquals(Constants.DRAG_BOTTOM_RIGHT_CORNER, selection.getActionAt(155, 145, 10));
+        assertEquals(Constants.DRAG_BACKGROUND, selection.getActionAt(120, 120, 10));
+        assertEquals(Constants.DRAG_NONE, selection.getActionAt(50, 120, 10));
+    }
+
+    @Test
+    public void should_find_edge_action_only_if_edges_are_shown() {
+
+        // selection is (100, 100, 50, 40), handle size is 10px
+        assertEquals(Constants.DRAG_TOP_EDGE, selection.getActionAt(125, 102, 10, HandleSet.ALL));
+        assertEquals(Constants.DRAG_RIGHT_EDGE, selection.getActionAt(150, 120, 10, HandleSet.ALL));
+        assertEquals(Constants.DRAG_BOTTOM_EDGE, selection.getActionAt(122, 141, 10, HandleSet.ALL));
+        assertEquals(Constants.DRAG_LEFT_EDGE, selection.getActionAt(96, 118, 10, HandleSet.ALL));
+
+        // corners are not dragged, when only edges are shown
+        assertEquals(Constants.DRAG_BACKGROUND, selection.getActionAt(101, 101, 10, HandleSet.EDGES));
+        assertEquals(Constants.DRAG_BACKGROUND, selection.getActionAt(125, 102, 10, HandleSet.CORNERS));
+    }
+
+    @Test
+    public void should_resize_with_edges() {
+
+        // when top edge goes up
+        selection.drag(Constants.DRAG_TOP_EDGE, 125, 100);
+        selection.drag(Constants.DRAG_TOP_EDGE, 140, 80);
+        selection.reset();
+
+        // then only the height is changed
+        assertSelection(100, 80, 50, 60);
+
+        // when left edge goes right
+        selection.drag(Constants.DRAG_LEFT_EDGE, 100, 110);
+        selection.drag(Constants.DRAG_LEFT_EDGE, 120, 90);
+
+        // then
+        assertSelection(120, 80, 30, 60);
+
+        // when it goes too far
+        assertFalse(selection.drag(Constants.DRAG_LEFT_EDGE, 145, 90));
+        assertSelection(120, 80, 30, 60);
+    }
+
+    @Test
+    public void should_keep_aspect_ratio_with_edges() {
+
+        // given
+        selection.setAspectRatio(2);
+        selection.setSelection(100, 100, 60, 30);
+
+        // when bottom edge goes down
+        selection.drag(Constants.DRAG_BOTTOM_EDGE, 130, 130);
+        selection.drag(Constants.DRAG_BOTTOM_EDGE, 130, 150);
+        selection.reset();
+
+        // then width follows the height
+        assertSelection(100, 100, 100, 50);
+
+        // when right edge goes far right
+        selection.drag(Constants.DRAG_RIGHT_EDGE, 200, 125);
+        selection.drag(Constants.DRAG_RIGHT_EDGE, 399, 125);
+        selection.reset();
+
+        // then
+        assertSelection(100, 100, 299, 149);
+
+        // when the top edge goes up, the right side hits the canvas border
+        selection.setSelection(300, 100, 60, 30);
+        selection.drag(Constants.DRAG_TOP_EDGE, 330, 100);
+        selection.drag(Constants.DRAG_TOP_EDGE, 330, 60);
+
+        // then height is limited by the canvas width, bottom side stays
+        assertSelection(300, 80, 100, 50);
+    }
+
+    private void assertSelection(int x, int y, int width, int height) {
+        assertEquals("x", x, selection.getX());
+        assertEquals("y", y, selection.getY());
+        assertEquals("width", width, selection.getWidth());
+        assertEquals("height", height, selection.getHeight());
+    }
+}
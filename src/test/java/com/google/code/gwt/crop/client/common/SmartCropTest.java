@@ -0,0 +1,101 @@
+package com.google.code.gwt.crop.client.common;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for the automatic selection of the detailed area
+ */
+public class SmartCropTest {
+
+    private static final int WIDTH = 200;
+    private static final int HEIGHT = 100;
+
+    private SmartCrop smartCrop;
+    private int[] pixels;
+
+    @Before
+    public void setUp() {
+        smartCrop = new SmartCrop();
+        pixels = new int[WIDTH * HEIGHT];
+    }
+
+    @Test
+    public void should_sum_energy_of_rectangle() {
+
+        // given vertical black and white stripes
+        for (int i = 0; i < pixels.length; i++) {
+            pixels[i] = (i % 2 == 0) ? 0 : 0xFFFFFF;
+        }
+
+        // when
+        smartCrop.setPixels(pixels, WIDTH, HEIGHT);
+
+        // then inner pixels have horizontal gradient 0, their neighbours are of the same color
+        assertEquals(0, smartCrop.getEnergy(10, 10, 20, 20), 0);
+        assertEquals(255 * 20, smartCrop.getEnergy(0, 0, 1, 20), 0);
+    }
+
+    @Test
+    public void should_find_detailed_area_with_aspect_ratio() {
+
+        // given a checkered 40x40 square in the flat image
+        fill(140, 30, 40, 40);
+        smartCrop.setPixels(pixels, WIDTH, HEIGHT);
+
+        // when
+        smartCrop.find(1);
+
+        // then the window is square and contains the details
+        assertEquals(smartCrop.getWidth(), smartCrop.getHeight());
+        assertTrue(smartCrop.getX() <= 140 && smartCrop.getX() + smartCrop.getWidth() >= 180);
+        assertTrue(smartCrop.getY() <= 30 && smartCrop.getY() + smartCrop.getHeight() >= 70);
+
+        // and it is tightened around them
+        assertTrue(smartCrop.getWidth() < HEIGHT);
+    }
+
+    @Test
+    public void should_keep_window_within_image() {
+
+        // given details in the bottom right corner
+        fill(170, 70, 30, 30);
+        smartCrop.setPixels(pixels, WIDTH, HEIGHT);
+
+        // when
+        smartCrop.find(2);
+
+        // then
+        assertEquals(2.0, (double) smartCrop.getWidth() / smartCrop.getHeight(), 0.05);
+        assertEquals(WIDTH, smartCrop.getX() + smartCrop.getWidth());
+        assertEquals(HEIGHT, smartCrop.getY() + smartCrop.getHeight());
+    }
+
+    @Test
+    public void should_center_window_on_flat_image() {
+
+        // given
+        smartCrop.setPixels(pixels, WIDTH, HEIGHT);
+        smartCrop.setScaleRange(0.5, 0.8);
+
+        // when any shape is allowed
+        smartCrop.find(0);
+
+        // then the biggest window of the image proportion is in the center
+        assertEquals(160, smartCrop.getWidth());
+        assertEquals(80, smartCrop.getHeight());
+        assertEquals(20, smartCrop.getX());
+        assertEquals(10, smartCrop.getY());
+    }
+
+    private void fill(int left, int top, int width, int height) {
+        for (int y = top; y < top + height; y++) {
+            for (int x = left; x < left + width; x++) {
+                pixels[y * WIDTH + x] = ((x / 4 + y / 4) % 2 == 0) ? 0xFFFFFF : 0x202020;
+            }
+        }
+    }
+}
@@ -0,0 +1,65 @@
+package com.google.code.gwt.crop.client.common;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Tests for the geometry of the image pyramid
+ */
+public class TileGridTest {
+
+    private final TileGrid grid = new TileGrid(1000, 600, 256, 1);
+
+    @Test
+    public void should_compute_levels() {
+
+        assertEquals(10, grid.getMaxLevel());
+        assertEquals(1000, grid.getLevelWidth(10));
+        assertEquals(600, grid.getLevelHeight(10));
+        assertEquals(500, grid.getLevelWidth(9));
+        assertEquals(300, grid.getLevelHeight(9));
+        assertEquals(1, grid.getLevelWidth(0));
+        assertEquals(8, grid.getSingleTileLevel());
+    }
+
+    @Test
+    public void should_choose_level_for_scale() {
+
+        assertEquals(9, grid.getLevelFor(0.3));
+        assertEquals(10, grid.getLevelFor(1));
+        assertEquals(10, grid.getLevelFor(4));
+
+        // levels below the single tile are never shown
+        assertEquals(8, grid.getLevelFor(0.01));
+    }
+
+    @Test
+    public void should_compute_tiles_with_overlap() {
+
+        assertEquals(4, grid.getColumns(10));
+        assertEquals(3, grid.getRows(10));
+
+        // first tile overlaps the next one only
+        assertEquals(0, grid.getTileX(10, 0));
+        assertEquals(257, grid.getTileWidth(10, 0));
+
+        // middle tile overlaps both neighbours
+        assertEquals(255, grid.getTileX(10, 1));
+        assertEquals(258, grid.getTileWidth(10, 1));
+
+        // last tile is smaller
+        assertEquals(767, grid.getTileX(10, 3));
+        assertEquals(233, grid.getTileWidth(10, 3));
+        assertEquals(600 - 512 + 1, grid.getTileHeight(10, 2));
+    }
+
+    @Test
+    public void should_find_tile_under_point() {
+
+        assertEquals(0, grid.getColumnAt(10, 0));
+        assertEquals(1, grid.getColumnAt(10, 256));
+        assertEquals(3, grid.getColumnAt(10, 5000));
+        assertEquals(0, grid.getRowAt(10, -10));
+    }
+}
@@ -0,0 +1,65 @@
+package com.google.code.gwt.crop.client.common;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Tests for the timing histogram
+ */
+public class TimingHistogramTest {
+
+    private static final double DELTA = 0.0001;
+
+    @Test
+    public void should_put_values_to_buckets() {
+
+        // given
+        TimingHistogram histogram = new TimingHistogram();
+
+        // when
+        histogram.add(0.1);
+        histogram.add(1);
+        histogram.add(1.5);
+        histogram.add(100);
+
+        // then
+        assertEquals(4, histogram.getCount());
+        assertEquals(1, histogram.getBucketValue(0));
+        assertEquals(1, histogram.getBucketValue(2));
+        assertEquals(1, histogram.getBucketValue(3));
+        assertEquals(1, histogram.getBucketValue(histogram.getBucketCount() - 1));
+        assertEquals(100, histogram.getMax(), DELTA);
+        assertEquals(102.6 / 4, histogram.getMean(), DELTA);
+    }
+
+    @Test
+    public void should_estimate_percentile() {
+
+        // given 9 fast frames and 1 slow one
+        TimingHistogram histogram = new TimingHistogram();
+        for (int i = 0; i < 9; i++) histogram.add(3);
+        histogram.add(20);
+
+        // then
+        assertEquals(4, histogram.getPercentile(50), DELTA);
+        assertEquals(4, histogram.getPercentile(90), DELTA);
+        assertEquals(20, histogram.getPercentile(99), DELTA);
+    }
+
+    @Test
+    public void should_be_empty_after_reset() {
+
+        // given
+        TimingHistogram histogram = new TimingHistogram();
+        histogram.add(5);
+
+        // when
+        histogram.reset();
+
+        // then
+        assertEquals(0, histogram.getCount());
+        assertEquals(0, histogram.getMax(), DELTA);
+        assertEquals(0, histogram.getPercentile(50), DELTA);
+    }
+}